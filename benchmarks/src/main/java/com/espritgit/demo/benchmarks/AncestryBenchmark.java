@@ -0,0 +1,83 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.services.GitService;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reachability queries over a long history, with and without commit-graph.
+ * <p>
+ * {@code isAncestorOfRoot} asks whether the root commit is an ancestor of {@code main}, which without generation
+ * numbers walks the whole history. {@code mergeBaseOfBranches} computes the merge base of two branches pointing at
+ * random commits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AncestryBenchmark {
+
+    @Param({"true", "false"})
+    public boolean commitGraph;
+
+    @Param({"5000"})
+    public int commits;
+
+    private BenchmarkServer server;
+    private GitService gitService;
+    private String repoName;
+    private String rootCommit;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticRepository.Shape shape = new SyntheticRepository.Shape(commits, 1000, 512, 0, 10, commitGraph);
+        Path dir = SyntheticRepository.create(BenchmarkSupport.repositoriesDir(commitGraph), shape);
+        repoName = shape.name();
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(dir.toFile()).build();
+             RevWalk walk = new RevWalk(repository)) {
+            walk.markStart(walk.parseCommit(repository.resolve(SyntheticRepository.MAIN_BRANCH)));
+            walk.sort(RevSort.REVERSE);
+            RevCommit root = walk.next();
+            rootCommit = root.getName();
+        }
+        server = BenchmarkServer.start(BenchmarkSupport.repositoriesDir(commitGraph), commitGraph, false);
+        gitService = server.getBean(GitService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> isAncestorOfRoot() throws Exception {
+        return gitService.isAncestor(repoName, rootCommit, SyntheticRepository.MAIN_BRANCH);
+    }
+
+    @Benchmark
+    public Map<String, Object> mergeBaseOfBranches() throws Exception {
+        return gitService.getMergeBase(repoName, "branch-0", "branch-1");
+    }
+}
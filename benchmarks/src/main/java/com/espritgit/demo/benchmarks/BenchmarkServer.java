@@ -0,0 +1,65 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.EspritApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Runs the application in the benchmark JVM against a directory of generated repositories.
+ * <p>
+ * The embedded server listens on a random port. Background jobs (maintenance, mirror refresh, registry and status
+ * watchers) are switched off so they don't compete with the measured code.
+ */
+final class BenchmarkServer implements AutoCloseable {
+
+    private final ConfigurableApplicationContext context;
+    private final int port;
+
+    private BenchmarkServer(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port", "0"));
+    }
+
+    /**
+     * @param basePath         Used as {@code git.repositories.base-path}.
+     * @param commitGraph      Value of {@code git.commit-graph.enabled}.
+     * @param uploadPackCache  Value of {@code git.upload-pack-cache.enabled}.
+     */
+    static BenchmarkServer start(Path basePath, boolean commitGraph, boolean uploadPackCache) throws IOException {
+        Path cacheDir = basePath.resolveSibling(basePath.getFileName() + "-upload-pack-cache");
+        BenchmarkSupport.deleteRecursively(cacheDir);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(EspritApplication.class)
+                .properties(
+                        "server.port=0",
+                        "git.repositories.base-path=" + basePath,
+                        "git.commit-graph.enabled=" + commitGraph,
+                        "git.upload-pack-cache.enabled=" + uploadPackCache,
+                        "git.upload-pack-cache.directory=" + cacheDir,
+                        "git.maintenance.enabled=false",
+                        "git.mirror-refresh.enabled=false",
+                        "git.status.watch-enabled=false",
+                        "git.repository-registry.watch-enabled=false",
+                        "logging.level.root=WARN")
+                .run();
+        return new BenchmarkServer(context);
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Smart HTTP URL of a hosted repository.
+     */
+    String gitUrl(String repoName) {
+        return "http://localhost:" + port + "/gitserver/" + repoName + ".git";
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,55 @@
+package com.espritgit.demo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * File helpers shared by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Directory holding generated repositories and scratch clones, {@code target/benchmark-data} unless overridden
+     * with {@code -Dbenchmark.dir=...} (e.g. to keep generated repositories across {@code mvn clean}).
+     */
+    static Path workDir() throws IOException {
+        Path dir = Paths.get(System.getProperty("benchmark.dir", "target/benchmark-data")).toAbsolutePath().normalize();
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * Base path for a server run. Repositories with and without commit-graph live apart, because a server with
+     * {@code git.commit-graph.enabled=true} writes graphs for every repository it finds at startup.
+     */
+    static Path repositoriesDir(boolean commitGraph) throws IOException {
+        return workDir().resolve(commitGraph ? "repositories-cg" : "repositories-nocg");
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static void copyRecursively(Path source, Path target) throws IOException {
+        try (Stream<Path> stream = Files.walk(source)) {
+            for (Path path : stream.toList()) {
+                Files.copy(path, target.resolve(source.relativize(path).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.services.GitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commit log pages of increasing depth, with and without commit-graph.
+ * <p>
+ * {@code logPage} walks the first {@code depth} commits of {@code main}; {@code logPageAfterCursor} walks the same
+ * number of commits starting deep in the history, from a keyset cursor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitLogBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    @Param({"true", "false"})
+    public boolean commitGraph;
+
+    @Param({"5000"})
+    public int commits;
+
+    private BenchmarkServer server;
+    private GitService gitService;
+    private String repoName;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticRepository.Shape shape = new SyntheticRepository.Shape(commits, 1000, 512, 0, 0, commitGraph);
+        SyntheticRepository.create(BenchmarkSupport.repositoriesDir(commitGraph), shape);
+        repoName = shape.name();
+        server = BenchmarkServer.start(BenchmarkSupport.repositoriesDir(commitGraph), commitGraph, false);
+        gitService = server.getBean(GitService.class);
+        deepCursor = gitService.walkCommitLog(repoName, SyntheticRepository.MAIN_BRANCH, null, commits / 2, 0, commit -> { });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public String logPage(Blackhole blackhole) throws Exception {
+        return gitService.walkCommitLog(repoName, SyntheticRepository.MAIN_BRANCH, null, depth, 0, blackhole::consume);
+    }
+
+    @Benchmark
+    public String logPageAfterCursor(Blackhole blackhole) throws Exception {
+        return gitService.walkCommitLog(repoName, SyntheticRepository.MAIN_BRANCH, deepCursor, depth, 0, blackhole::consume);
+    }
+}
@@ -0,0 +1,127 @@
+package com.espritgit.demo.benchmarks;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clone and fetch over smart HTTP against the embedded Git server, with the JGit client in the same JVM.
+ * <p>
+ * {@code fullClone} clones {@code main} into an empty bare repository, with and without the upload-pack response
+ * cache. {@code incrementalFetch} fetches the last {@value SyntheticRepository#BEHIND_COMMITS} commits of
+ * {@code main} into a copy of a client that cloned the {@code behind} branch; the copy is made outside the
+ * measured time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class FetchBenchmark {
+
+    private static final String MAIN_REF = Constants.R_HEADS + SyntheticRepository.MAIN_BRANCH;
+
+    @Param({"true", "false"})
+    public boolean uploadPackCache;
+
+    @Param({"2000"})
+    public int commits;
+
+    private BenchmarkServer server;
+    private String url;
+    private Path scratch;
+    private Path behindTemplate;
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticRepository.Shape shape = new SyntheticRepository.Shape(commits, 2000, 2048, 0, 0, true);
+        SyntheticRepository.create(BenchmarkSupport.repositoriesDir(true), shape);
+        server = BenchmarkServer.start(BenchmarkSupport.repositoriesDir(true), true, uploadPackCache);
+        url = server.gitUrl(shape.name());
+
+        scratch = BenchmarkSupport.workDir().resolve("fetch-scratch");
+        BenchmarkSupport.deleteRecursively(scratch);
+        Files.createDirectories(scratch);
+        behindTemplate = scratch.resolve("behind-template");
+        Git.cloneRepository()
+                .setURI(url)
+                .setDirectory(behindTemplate.toFile())
+                .setBare(true)
+                .setBranchesToClone(List.of(Constants.R_HEADS + SyntheticRepository.BEHIND_BRANCH))
+                .setBranch(SyntheticRepository.BEHIND_BRANCH)
+                .call()
+                .close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.close();
+        BenchmarkSupport.deleteRecursively(scratch);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTarget() throws Exception {
+        target = scratch.resolve("target");
+        BenchmarkSupport.deleteRecursively(target);
+    }
+
+    @Benchmark
+    public Path fullClone() throws Exception {
+        Git.cloneRepository()
+                .setURI(url)
+                .setDirectory(target.toFile())
+                .setBare(true)
+                .setBranchesToClone(List.of(MAIN_REF))
+                .setBranch(SyntheticRepository.MAIN_BRANCH)
+                .call()
+                .close();
+        return target;
+    }
+
+    @Benchmark
+    public FetchResult incrementalFetch(IncrementalState state) throws Exception {
+        try (Git git = Git.open(state.client.toFile())) {
+            return git.fetch()
+                    .setRemote(url)
+                    .setRefSpecs(new RefSpec("+" + MAIN_REF + ":" + MAIN_REF))
+                    .call();
+        }
+    }
+
+    /**
+     * Fresh copy of the {@code behind} client for each fetch, so every invocation transfers the same objects.
+     */
+    @State(Scope.Thread)
+    public static class IncrementalState {
+
+        private Path client;
+
+        @Setup(Level.Invocation)
+        public void copyClient(FetchBenchmark benchmark) throws Exception {
+            client = benchmark.scratch.resolve("incremental");
+            BenchmarkSupport.deleteRecursively(client);
+            BenchmarkSupport.copyRecursively(benchmark.behindTemplate, client);
+        }
+    }
+}
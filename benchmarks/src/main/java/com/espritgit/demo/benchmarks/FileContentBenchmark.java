@@ -0,0 +1,67 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.services.GitService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File reads at a branch: a small source-like file and an 8 MiB file, read whole ({@code getFileContent}) and
+ * streamed ({@code resolveBlob} + {@code writeBlob}, as the raw content endpoint does).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileContentBenchmark {
+
+    @Param({"small", "large"})
+    public String file;
+
+    private BenchmarkServer server;
+    private GitService gitService;
+    private String repoName;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticRepository.Shape shape = new SyntheticRepository.Shape(100, 1000, 4096, 8 * 1024 * 1024, 0, true);
+        SyntheticRepository.create(BenchmarkSupport.repositoriesDir(true), shape);
+        repoName = shape.name();
+        path = file.equals("large") ? SyntheticRepository.LARGE_FILE : SyntheticRepository.Shape.smallFile(517);
+        server = BenchmarkServer.start(BenchmarkSupport.repositoriesDir(true), true, false);
+        gitService = server.getBean(GitService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public String readContent() throws Exception {
+        return gitService.getFileContent(repoName, path, SyntheticRepository.MAIN_BRANCH);
+    }
+
+    @Benchmark
+    public GitService.BlobInfo streamContent() throws Exception {
+        GitService.BlobInfo blob = gitService.resolveBlob(repoName, path, SyntheticRepository.MAIN_BRANCH);
+        gitService.writeBlob(repoName, blob.blobId(), 0, blob.size(), OutputStream.nullOutputStream());
+        return blob;
+    }
+}
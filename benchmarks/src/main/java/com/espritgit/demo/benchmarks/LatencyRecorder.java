@@ -0,0 +1,90 @@
+package com.espritgit.demo.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies of one client thread, by operation. Each thread records into its own instance, so recording is not
+ * contended; the instances are merged once the run is over.
+ */
+final class LatencyRecorder {
+
+    private final Map<String, Samples> samples = new TreeMap<>();
+
+    private static final class Samples {
+        long[] nanos = new long[1024];
+        int count;
+        int errors;
+
+        void add(long value) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = value;
+        }
+    }
+
+    void record(String operation, long nanos) {
+        samples.computeIfAbsent(operation, key -> new Samples()).add(nanos);
+    }
+
+    void recordError(String operation) {
+        samples.computeIfAbsent(operation, key -> new Samples()).errors++;
+    }
+
+    /**
+     * Merges the recorders of all threads and summarizes each operation, plus a {@code total} row.
+     *
+     * @param seconds Measured wall-clock time, for throughput.
+     */
+    static Map<String, Map<String, Object>> summarize(List<LatencyRecorder> recorders, double seconds) {
+        Map<String, Samples> merged = new TreeMap<>();
+        Samples total = new Samples();
+        for (LatencyRecorder recorder : recorders) {
+            recorder.samples.forEach((operation, s) -> {
+                Samples target = merged.computeIfAbsent(operation, key -> new Samples());
+                for (int i = 0; i < s.count; i++) {
+                    target.add(s.nanos[i]);
+                    total.add(s.nanos[i]);
+                }
+                target.errors += s.errors;
+                total.errors += s.errors;
+            });
+        }
+        Map<String, Map<String, Object>> summary = new LinkedHashMap<>();
+        merged.forEach((operation, s) -> summary.put(operation, summarize(s, seconds)));
+        summary.put("total", summarize(total, seconds));
+        return summary;
+    }
+
+    private static Map<String, Object> summarize(Samples s, double seconds) {
+        long[] sorted = Arrays.copyOf(s.nanos, s.count);
+        Arrays.sort(sorted);
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("count", s.count);
+        row.put("errors", s.errors);
+        row.put("throughputPerSec", round(s.count / seconds));
+        row.put("meanMs", round(sorted.length == 0 ? 0 : Arrays.stream(sorted).average().orElse(0) / 1e6));
+        row.put("p50Ms", percentileMs(sorted, 0.50));
+        row.put("p90Ms", percentileMs(sorted, 0.90));
+        row.put("p99Ms", percentileMs(sorted, 0.99));
+        row.put("p999Ms", percentileMs(sorted, 0.999));
+        row.put("maxMs", sorted.length == 0 ? 0.0 : round(sorted[sorted.length - 1] / 1e6));
+        return row;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6);
+    }
+
+    static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,365 @@
+package com.espritgit.demo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * End-to-end load test: starts the application in its own JVM over generated repositories and drives it with
+ * concurrent JGit smart HTTP clients and REST reads.
+ * <p>
+ * Each client thread repeatedly picks an operation by the weights of {@code --mix}:
+ * <ul>
+ *     <li>{@code clone}: full bare clone of a repository into a scratch directory.</li>
+ *     <li>{@code fetch}: incremental fetch of all branches into the client's own clone, which picks up the other
+ *     clients' pushes.</li>
+ *     <li>{@code push}: one new commit, changing one file, pushed to the client's own branch (so pushes don't
+ *     reject each other).</li>
+ *     <li>{@code rest}: one of the {@code /api/git} reads (log page, file, merge-base, repository listing).</li>
+ * </ul>
+ * After a warmup, operations are timed for {@code --duration}. The report (throughput and latency percentiles per
+ * operation, server CPU, heap and GC pauses) is printed and written to {@code report.json} in the output
+ * directory. Run it once per server configuration with the same options to compare them, e.g.
+ * {@code --server-arg=--git.upload-pack-cache.enabled=false}. See {@link LoadTestOptions} for all options.
+ */
+public final class LoadTest {
+
+    enum Operation { CLONE, FETCH, PUSH, REST }
+
+    private static final String[] REST_READS = {"log", "file", "merge-base", "local-repos"};
+
+    private final LoadTestOptions options;
+    private final List<String> repoNames = new ArrayList<>();
+    private final HttpClient http = HttpClient.newHttpClient();
+    private ServerProcess server;
+    private volatile long measureStart;
+    private volatile long deadline;
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Files.createDirectories(options.output());
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        // Repositories are regenerated per run: pushes from earlier runs would change their size
+        Path basePath = options.output().resolve("repositories");
+        Path scratch = options.output().resolve("clients");
+        BenchmarkSupport.deleteRecursively(basePath);
+        BenchmarkSupport.deleteRecursively(scratch);
+        BenchmarkSupport.deleteRecursively(options.output().resolve("upload-pack-cache"));
+        Files.createDirectories(basePath);
+        Path templates = BenchmarkSupport.workDir().resolve("load-test-templates");
+        for (int i = 0; i < options.repositories(); i++) {
+            // Same shape, distinct histories: the seed depends on the commit count
+            SyntheticRepository.Shape shape = new SyntheticRepository.Shape(options.commits() + i, options.files(),
+                    1024, 0, 20, true);
+            Path template = SyntheticRepository.create(templates, shape);
+            BenchmarkSupport.copyRecursively(template, basePath.resolve(shape.name()));
+            repoNames.add(shape.name());
+        }
+
+        log("Starting server (%s)", String.join(" ", options.serverArgs()));
+        try (ServerProcess started = ServerProcess.start(options, basePath)) {
+            server = started;
+            ExecutorService executor = Executors.newFixedThreadPool(options.clients());
+            try {
+                List<Client> clients = new ArrayList<>();
+                for (int i = 0; i < options.clients(); i++) {
+                    clients.add(new Client(i, scratch.resolve("client-" + i)));
+                }
+                log("Preparing %d clients", clients.size());
+                await(clients.stream().map(client -> executor.submit(() -> {
+                    client.prepare();
+                    return null;
+                })).toList());
+
+                long now = System.nanoTime();
+                measureStart = now + options.warmup().toNanos();
+                deadline = measureStart + options.duration().toNanos();
+                log("Warming up for %ds, then measuring for %ds", options.warmup().toSeconds(), options.duration().toSeconds());
+                List<Future<Object>> running = clients.stream().map(client -> executor.submit(() -> {
+                    client.runUntilDeadline();
+                    return (Object) null;
+                })).toList();
+                Thread.sleep(options.warmup().toMillis());
+                server.startSampling();
+                await(running);
+                double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("options", describeOptions());
+                report.put("operations", LatencyRecorder.summarize(clients.stream().map(c -> c.recorder).toList(), seconds));
+                report.put("server", server.resourceSummary());
+                printReport(report);
+                new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                        .writeValue(options.output().resolve("report.json").toFile(), report);
+                log("Report written to %s", options.output().resolve("report.json"));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void await(List<? extends Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * One simulated user, with its own clone of each repository for fetches and pushes.
+     */
+    private final class Client {
+
+        private final int id;
+        private final Path dir;
+        private final Random random;
+        private final LatencyRecorder recorder = new LatencyRecorder();
+        private final UsernamePasswordCredentialsProvider credentials =
+                new UsernamePasswordCredentialsProvider(options.user(), options.password());
+        private int cloneCount;
+        private int pushCount;
+
+        Client(int id, Path dir) {
+            this.id = id;
+            this.dir = dir;
+            this.random = new Random(id);
+        }
+
+        void prepare() throws Exception {
+            for (String repoName : repoNames) {
+                clone(repoName, dir.resolve(repoName));
+            }
+        }
+
+        void runUntilDeadline() {
+            int totalWeight = options.mix().values().stream().mapToInt(Integer::intValue).sum();
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                Operation operation = pick(totalWeight);
+                String repoName = repoNames.get(random.nextInt(repoNames.size()));
+                String label = operation.name().toLowerCase(Locale.ROOT);
+                if (operation == Operation.REST) {
+                    label += "." + REST_READS[random.nextInt(REST_READS.length)];
+                }
+                long start = System.nanoTime();
+                try {
+                    execute(operation, label, repoName);
+                    if (start >= measureStart) {
+                        recorder.record(label, System.nanoTime() - start);
+                    }
+                } catch (Exception e) {
+                    if (start >= measureStart) {
+                        recorder.recordError(label);
+                    }
+                }
+            }
+        }
+
+        private Operation pick(int totalWeight) {
+            int value = random.nextInt(totalWeight);
+            for (Map.Entry<Operation, Integer> entry : options.mix().entrySet()) {
+                value -= entry.getValue();
+                if (value < 0) {
+                    return entry.getKey();
+                }
+            }
+            throw new IllegalStateException("Unreachable");
+        }
+
+        private void execute(Operation operation, String label, String repoName) throws Exception {
+            switch (operation) {
+                case CLONE -> {
+                    Path target = dir.resolve("clone-" + cloneCount++);
+                    try {
+                        clone(repoName, target);
+                    } finally {
+                        BenchmarkSupport.deleteRecursively(target);
+                    }
+                }
+                case FETCH -> fetch(repoName);
+                case PUSH -> push(repoName);
+                case REST -> rest(label.substring("rest.".length()), repoName);
+            }
+        }
+
+        private void clone(String repoName, Path target) throws Exception {
+            Git.cloneRepository()
+                    .setURI(gitUrl(repoName))
+                    .setDirectory(target.toFile())
+                    .setBare(true)
+                    .call()
+                    .close();
+        }
+
+        private void fetch(String repoName) throws Exception {
+            try (Git git = Git.open(dir.resolve(repoName).toFile())) {
+                git.fetch()
+                        .setRemote(gitUrl(repoName))
+                        .setRefSpecs(new RefSpec("+refs/heads/*:refs/remotes/origin/*"))
+                        .call();
+            }
+        }
+
+        private void push(String repoName) throws Exception {
+            String branch = Constants.R_HEADS + "load-" + id;
+            try (Git git = Git.open(dir.resolve(repoName).toFile())) {
+                Repository repository = git.getRepository();
+                ObjectId parent = repository.resolve(branch);
+                if (parent == null) {
+                    parent = repository.resolve(Constants.R_HEADS + SyntheticRepository.MAIN_BRANCH);
+                }
+                ObjectId commit = commitOneFile(repository, parent,
+                        SyntheticRepository.Shape.smallFile(random.nextInt(Math.max(1, options.files()))));
+                RefUpdate update = repository.updateRef(branch);
+                update.setNewObjectId(commit);
+                update.forceUpdate();
+
+                for (PushResult result : git.push()
+                        .setRemote(gitUrl(repoName))
+                        .setRefSpecs(new RefSpec(branch + ":" + branch))
+                        .setCredentialsProvider(credentials)
+                        .call()) {
+                    RemoteRefUpdate remote = result.getRemoteUpdate(branch);
+                    if (remote == null || remote.getStatus() != RemoteRefUpdate.Status.OK) {
+                        throw new IOException("Push of " + branch + " failed: "
+                                + (remote != null ? remote.getStatus() : "no result"));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes a commit on top of {@code parent} that rewrites one file.
+         */
+        private ObjectId commitOneFile(Repository repository, ObjectId parent, String path) throws IOException {
+            try (ObjectInserter inserter = repository.newObjectInserter();
+                 ObjectReader reader = repository.newObjectReader();
+                 RevWalk walk = new RevWalk(reader)) {
+                RevCommit parentCommit = walk.parseCommit(parent);
+                DirCache index = DirCache.newInCore();
+                DirCacheBuilder builder = index.builder();
+                builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, parentCommit.getTree());
+                builder.finish();
+
+                byte[] content = ("client " + id + " push " + pushCount++ + "\n").repeat(16).getBytes(StandardCharsets.UTF_8);
+                ObjectId blob = inserter.insert(Constants.OBJ_BLOB, content);
+                DirCacheEditor editor = index.editor();
+                editor.add(new DirCacheEditor.PathEdit(path) {
+                    @Override
+                    public void apply(DirCacheEntry entry) {
+                        entry.setFileMode(FileMode.REGULAR_FILE);
+                        entry.setObjectId(blob);
+                    }
+                });
+                editor.finish();
+
+                PersonIdent ident = new PersonIdent("Load client " + id, "client" + id + "@example.com");
+                CommitBuilder commit = new CommitBuilder();
+                commit.setTreeId(index.writeTree(inserter));
+                commit.setParentId(parentCommit);
+                commit.setAuthor(ident);
+                commit.setCommitter(ident);
+                commit.setMessage("Load test push " + pushCount + "\n");
+                ObjectId commitId = inserter.insert(commit);
+                inserter.flush();
+                return commitId;
+            }
+        }
+
+        private void rest(String read, String repoName) throws Exception {
+            String api = server.baseUrl() + "/api/git/";
+            String url = switch (read) {
+                case "log" -> api + repoName + "/log?branch=" + SyntheticRepository.MAIN_BRANCH + "&maxCount=50";
+                case "file" -> api + repoName + "/file?ref=" + SyntheticRepository.MAIN_BRANCH + "&path="
+                        + URLEncoder.encode(SyntheticRepository.Shape.smallFile(random.nextInt(Math.max(1, options.files()))),
+                        StandardCharsets.UTF_8);
+                case "merge-base" -> api + repoName + "/merge-base?first=branch-" + random.nextInt(20)
+                        + "&second=branch-" + random.nextInt(20);
+                default -> api + "local-repos?limit=50";
+            };
+            HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException(url + " returned " + response.statusCode());
+            }
+        }
+    }
+
+    private String gitUrl(String repoName) {
+        return server.baseUrl() + "/gitserver/" + repoName + ".git";
+    }
+
+    private Map<String, Object> describeOptions() {
+        Map<String, Object> described = new LinkedHashMap<>();
+        described.put("clients", options.clients());
+        described.put("warmupSeconds", options.warmup().toSeconds());
+        described.put("durationSeconds", options.duration().toSeconds());
+        described.put("repositories", options.repositories());
+        described.put("commits", options.commits());
+        described.put("files", options.files());
+        described.put("mix", options.mix());
+        described.put("serverJvmArgs", options.serverJvmArgs());
+        described.put("serverArgs", options.serverArgs());
+        return described;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printReport(Map<String, Object> report) {
+        System.out.printf("%n%-22s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        ((Map<String, Map<String, Object>>) report.get("operations")).forEach((operation, row) ->
+                System.out.printf("%-22s %8s %7s %9s %9s %9s %9s %9s %9s%n", operation, row.get("count"), row.get("errors"),
+                        row.get("throughputPerSec"), row.get("p50Ms"), row.get("p90Ms"), row.get("p99Ms"),
+                        row.get("p999Ms"), row.get("maxMs")));
+        System.out.println();
+        ((Map<String, Object>) report.get("server")).forEach((name, value) -> System.out.printf("server %-17s %s%n", name, value));
+        System.out.println();
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.printf("[load-test] " + format + "%n", args);
+    }
+}
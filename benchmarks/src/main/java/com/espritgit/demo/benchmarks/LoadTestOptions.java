@@ -0,0 +1,107 @@
+package com.espritgit.demo.benchmarks;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line options of {@link LoadTest}, given as {@code --name=value}.
+ *
+ * @param clients       Concurrent client threads ({@code --clients=32}).
+ * @param warmup        Warmup before measuring, results discarded ({@code --warmup=15s}).
+ * @param duration      Measured run time ({@code --duration=60s}).
+ * @param repositories  Number of hosted repositories; each operation picks one at random ({@code --repos=4}).
+ * @param commits       Commits per repository ({@code --commits=2000}).
+ * @param files         Files per repository ({@code --files=2000}).
+ * @param mix           Relative weight of each operation ({@code --mix=clone:1,fetch:4,push:1,rest:4}).
+ * @param user          User for pushes ({@code --user=gituser}).
+ * @param password      Password for pushes ({@code --password=gitpassword}).
+ * @param serverJvmArgs JVM options of the server process, space separated ({@code --server-jvm="-Xmx2g"}).
+ * @param serverArgs    Extra application properties for the server, repeatable
+ *                      ({@code --server-arg=--git.upload-pack-cache.enabled=false}).
+ * @param output        Directory for the report, server log and GC log ({@code --output=target/load-test}).
+ */
+record LoadTestOptions(int clients, Duration warmup, Duration duration, int repositories, int commits, int files,
+                       Map<LoadTest.Operation, Integer> mix, String user, String password, List<String> serverJvmArgs,
+                       List<String> serverArgs, Path output) {
+
+    static LoadTestOptions parse(String[] args) {
+        int clients = 32;
+        Duration warmup = Duration.ofSeconds(15);
+        Duration duration = Duration.ofSeconds(60);
+        int repositories = 4;
+        int commits = 2000;
+        int files = 2000;
+        Map<LoadTest.Operation, Integer> mix = parseMix("clone:1,fetch:4,push:1,rest:4");
+        String user = "gituser";
+        String password = "gitpassword";
+        List<String> serverJvmArgs = List.of("-Xmx1g");
+        List<String> serverArgs = new ArrayList<>();
+        Path output = Paths.get("target/load-test");
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "clients" -> clients = Integer.parseInt(value);
+                case "warmup" -> warmup = parseDuration(value);
+                case "duration" -> duration = parseDuration(value);
+                case "repos" -> repositories = Integer.parseInt(value);
+                case "commits" -> commits = Integer.parseInt(value);
+                case "files" -> files = Integer.parseInt(value);
+                case "mix" -> mix = parseMix(value);
+                case "user" -> user = value;
+                case "password" -> password = value;
+                case "server-jvm" -> serverJvmArgs = value.isBlank() ? List.of() : List.of(value.trim().split("\\s+"));
+                case "server-arg" -> serverArgs.add(value);
+                case "output" -> output = Paths.get(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        if (clients < 1 || repositories < 1 || commits < 1) {
+            throw new IllegalArgumentException("--clients, --repos and --commits must be at least 1");
+        }
+        return new LoadTestOptions(clients, warmup, duration, repositories, commits, files, mix, user, password,
+                serverJvmArgs, List.copyOf(serverArgs), output.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Parses {@code 90s}, {@code 5m} or plain seconds.
+     */
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("s")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+
+    private static Map<LoadTest.Operation, Integer> parseMix(String value) {
+        Map<LoadTest.Operation, Integer> mix = new EnumMap<>(LoadTest.Operation.class);
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid --mix entry: " + part);
+            }
+            int weight = Integer.parseInt(pair[1]);
+            if (weight > 0) {
+                mix.put(LoadTest.Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("--mix has no operation with a positive weight");
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,72 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.gitserver.GitServerRepositoryResolver;
+import com.espritgit.demo.services.RepositoryCache;
+import com.espritgit.demo.services.RepositoryRegistry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resolving and opening a repository per Git request: the GitServlet resolver (registry lookup plus
+ * shared handle cache) against building a fresh {@link Repository} each time. Both read {@code HEAD}, as every
+ * request does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolverBenchmark {
+
+    private BenchmarkServer server;
+    private GitServerRepositoryResolver resolver;
+    private String repoName;
+    private File gitDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticRepository.Shape shape = new SyntheticRepository.Shape(100, 100, 512, 0, 100, true);
+        gitDir = SyntheticRepository.create(BenchmarkSupport.repositoriesDir(true), shape).toFile();
+        repoName = shape.name();
+        server = BenchmarkServer.start(BenchmarkSupport.repositoriesDir(true), true, false);
+        resolver = new GitServerRepositoryResolver(server.getBean(RepositoryCache.class),
+                server.getBean(RepositoryRegistry.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public Ref resolverOpen() throws Exception {
+        try (Repository repository = resolver.open(null, repoName + ".git")) {
+            return repository.exactRef(Constants.HEAD);
+        }
+    }
+
+    @Benchmark
+    public Ref uncachedOpen() throws Exception {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(gitDir).setMustExist(true).build()) {
+            return repository.exactRef(Constants.HEAD);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.espritgit.demo.benchmarks;
+
+import com.espritgit.demo.EspritApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application under load, in its own JVM so its CPU, heap and GC figures are not mixed with the clients'.
+ * <p>
+ * Resource usage is sampled from the actuator {@code metrics} endpoint; the JVM also writes a GC log to the output
+ * directory for pause details beyond the summary.
+ */
+final class ServerProcess implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final Process process;
+    private final int port;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<Double> cpuSamples = new ArrayList<>();
+    private double maxHeapUsed;
+    private double gcCountAtStart;
+    private double gcTimeAtStart;
+    private double gcMaxPause;
+    private Thread sampler;
+
+    private ServerProcess(Process process, int port) {
+        this.process = process;
+        this.port = port;
+    }
+
+    /**
+     * Starts the server on the test's classpath and waits until it reports healthy.
+     */
+    static ServerProcess start(LoadTestOptions options, Path basePath) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options.serverJvmArgs());
+        command.add("-Xlog:gc:file=" + options.output().resolve("server-gc.log"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(EspritApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--git.repositories.base-path=" + basePath);
+        command.add("--git.upload-pack-cache.directory=" + options.output().resolve("upload-pack-cache"));
+        command.add("--git.mirror-refresh.enabled=false");
+        command.addAll(options.serverArgs());
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(options.output().resolve("server.log").toFile())
+                .start();
+        ServerProcess server = new ServerProcess(process, port);
+        try {
+            server.awaitHealthy();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + port;
+    }
+
+    private void awaitHealthy() throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Server exited with status " + process.exitValue() + ", see server.log");
+            }
+            try {
+                HttpResponse<Void> response = http.send(
+                        HttpRequest.newBuilder(URI.create(baseUrl() + "/actuator/health")).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IOException("Server did not become healthy within " + STARTUP_TIMEOUT);
+    }
+
+    /**
+     * Starts sampling CPU and heap once a second, and takes the GC baseline for {@link #resourceSummary()}.
+     */
+    void startSampling() throws IOException, InterruptedException {
+        gcCountAtStart = metric("jvm.gc.pause", null, "COUNT");
+        gcTimeAtStart = metric("jvm.gc.pause", null, "TOTAL_TIME");
+        sampler = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    double cpu = metric("process.cpu.usage", null, "VALUE");
+                    double heap = metric("jvm.memory.used", "area:heap", "VALUE");
+                    // MAX decays over a couple of minutes, so track the highest value seen
+                    double pause = metric("jvm.gc.pause", null, "MAX");
+                    synchronized (this) {
+                        cpuSamples.add(cpu);
+                        maxHeapUsed = Math.max(maxHeapUsed, heap);
+                        gcMaxPause = Math.max(gcMaxPause, pause);
+                    }
+                    Thread.sleep(1000);
+                }
+            } catch (InterruptedException e) {
+                // Run over
+            } catch (IOException e) {
+                System.err.println("Stopped sampling server metrics: " + e.getMessage());
+            }
+        }, "server-metrics-sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stops sampling and summarizes server resource usage over the measured run.
+     */
+    Map<String, Object> resourceSummary() throws IOException, InterruptedException {
+        sampler.interrupt();
+        sampler.join(TimeUnit.SECONDS.toMillis(5));
+        double gcCount = metric("jvm.gc.pause", null, "COUNT") - gcCountAtStart;
+        double gcTime = metric("jvm.gc.pause", null, "TOTAL_TIME") - gcTimeAtStart;
+        Map<String, Object> summary = new LinkedHashMap<>();
+        synchronized (this) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            double meanCpu = cpuSamples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double maxCpu = cpuSamples.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+            // process.cpu.usage is a fraction of all cores
+            summary.put("cpuMeanCores", LatencyRecorder.round(meanCpu * cpus));
+            summary.put("cpuMaxCores", LatencyRecorder.round(maxCpu * cpus));
+            summary.put("heapUsedMaxMb", LatencyRecorder.round(maxHeapUsed / (1024 * 1024)));
+            summary.put("gcPauses", (long) gcCount);
+            summary.put("gcPauseTotalMs", LatencyRecorder.round(gcTime * 1000));
+            summary.put("gcPauseMaxMs", LatencyRecorder.round(gcMaxPause * 1000));
+        }
+        summary.put("heapCommittedMb", LatencyRecorder.round(metric("jvm.memory.committed", "area:heap", "VALUE") / (1024 * 1024)));
+        summary.put("liveThreads", (long) metric("jvm.threads.live", null, "VALUE"));
+        return summary;
+    }
+
+    /**
+     * Reads one statistic of an actuator metric; times are in seconds, sizes in bytes. Missing metrics read as 0.
+     */
+    private double metric(String name, String tag, String statistic) throws IOException, InterruptedException {
+        String url = baseUrl() + "/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : "");
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return 0;
+        }
+        for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.espritgit.demo.benchmarks;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.ReceiveCommand;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Generates deterministic bare repositories of a given shape for the benchmarks.
+ * <p>
+ * Files are spread over directories of {@value #FILES_PER_DIRECTORY} so that each commit, which rewrites a few
+ * random files, only rebuilds the touched directory trees. The result is repacked with bitmaps, like a maintained
+ * hosted repository. Generated repositories are reused across benchmark runs with the same shape.
+ */
+public final class SyntheticRepository {
+
+    static final int FILES_PER_DIRECTORY = 100;
+    static final int FILES_CHANGED_PER_COMMIT = 3;
+    static final String LARGE_FILE = "large.bin";
+    static final String MAIN_BRANCH = "main";
+    static final String BEHIND_BRANCH = "behind";
+    static final int BEHIND_COMMITS = 10;
+    private static final String COMPLETE_MARKER = "synthetic-complete";
+
+    /**
+     * Shape of a synthetic repository.
+     *
+     * @param commits        Number of commits on {@code main} (linear history).
+     * @param files          Number of small files in the tree.
+     * @param smallBlobBytes Size of each small file.
+     * @param largeBlobBytes Size of {@value #LARGE_FILE} in the root directory, 0 for none.
+     * @param refs           Number of extra branches, pointing at random commits. {@value #BEHIND_BRANCH} always
+     *                       points {@value #BEHIND_COMMITS} commits behind {@code main}, as a base for fetches.
+     * @param commitGraph    Write a commit-graph and enable {@code core.commitGraph}.
+     */
+    public record Shape(int commits, int files, int smallBlobBytes, int largeBlobBytes, int refs, boolean commitGraph) {
+
+        /**
+         * Repository name, unique per shape.
+         */
+        public String name() {
+            return "c" + commits + "-f" + files + "-s" + smallBlobBytes + "-l" + largeBlobBytes + "-r" + refs
+                    + (commitGraph ? "-cg" : "-nocg");
+        }
+
+        /**
+         * Path of small file {@code index}.
+         */
+        static String smallFile(int index) {
+            return "dir" + (index / FILES_PER_DIRECTORY) + "/file" + (index % FILES_PER_DIRECTORY) + ".txt";
+        }
+    }
+
+    private SyntheticRepository() {
+    }
+
+    /**
+     * Returns the repository for the shape under {@code baseDir}, named {@link Shape#name()}, generating it first
+     * if needed.
+     */
+    public static Path create(Path baseDir, Shape shape) throws IOException {
+        Path dir = baseDir.resolve(shape.name());
+        if (Files.exists(dir.resolve(COMPLETE_MARKER))) {
+            return dir;
+        }
+        if (Files.exists(dir)) {
+            BenchmarkSupport.deleteRecursively(dir); // Left over from an interrupted run
+        }
+        Files.createDirectories(dir);
+
+        try (Repository repository = FileRepositoryBuilder.create(dir.toFile())) {
+            repository.create(true);
+            StoredConfig config = repository.getConfig();
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, "commitGraph", shape.commitGraph());
+            config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, "writeCommitGraph", shape.commitGraph());
+            config.save();
+
+            List<ObjectId> commits = writeHistory(repository, shape);
+            writeRefs(repository, shape, commits);
+
+            GC gc = new GC((FileRepository) repository);
+            PackConfig packConfig = new PackConfig(repository);
+            packConfig.setBuildBitmaps(true);
+            gc.setPackConfig(packConfig);
+            gc.setProgressMonitor(NullProgressMonitor.INSTANCE);
+            gc.gc().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while packing " + dir, e);
+        } catch (ExecutionException | ParseException e) {
+            throw new IOException("Could not pack " + dir, e);
+        }
+
+        Files.createFile(dir.resolve(COMPLETE_MARKER));
+        return dir;
+    }
+
+    private static List<ObjectId> writeHistory(Repository repository, Shape shape) throws IOException {
+        // Same seed with and without commit-graph, so both variants have identical history
+        Random random = new Random(Objects.hash(shape.commits(), shape.files(), shape.smallBlobBytes(), shape.largeBlobBytes()));
+        int directories = Math.max(1, (shape.files() + FILES_PER_DIRECTORY - 1) / FILES_PER_DIRECTORY);
+        ObjectId[] blobs = new ObjectId[shape.files()];
+        ObjectId[] directoryTrees = new ObjectId[directories];
+        List<ObjectId> commits = new ArrayList<>(shape.commits());
+
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            for (int i = 0; i < shape.files(); i++) {
+                blobs[i] = inserter.insert(Constants.OBJ_BLOB, content(random, shape.smallBlobBytes()));
+            }
+            for (int d = 0; d < directories; d++) {
+                directoryTrees[d] = writeDirectory(inserter, blobs, d);
+            }
+            ObjectId largeBlob = shape.largeBlobBytes() > 0
+                    ? inserter.insert(Constants.OBJ_BLOB, content(random, shape.largeBlobBytes()))
+                    : null;
+
+            Instant start = Instant.parse("2020-01-01T00:00:00Z");
+            ObjectId parent = null;
+            for (int c = 0; c < shape.commits(); c++) {
+                if (c > 0 && shape.files() > 0) {
+                    for (int k = 0; k < FILES_CHANGED_PER_COMMIT; k++) {
+                        int file = random.nextInt(shape.files());
+                        blobs[file] = inserter.insert(Constants.OBJ_BLOB, content(random, shape.smallBlobBytes()));
+                        directoryTrees[file / FILES_PER_DIRECTORY] = writeDirectory(inserter, blobs, file / FILES_PER_DIRECTORY);
+                    }
+                }
+                ObjectId treeId = inserter.insert(rootTree(directoryTrees, largeBlob, shape.files() > 0));
+
+                PersonIdent ident = new PersonIdent("Bench", "bench@example.com", start.plusSeconds(60L * c), ZoneOffset.UTC);
+                CommitBuilder commit = new CommitBuilder();
+                commit.setTreeId(treeId);
+                if (parent != null) {
+                    commit.setParentId(parent);
+                }
+                commit.setAuthor(ident);
+                commit.setCommitter(ident);
+                commit.setMessage("Synthetic commit " + c + "\n");
+                parent = inserter.insert(commit);
+                commits.add(parent);
+            }
+            inserter.flush();
+        }
+        return commits;
+    }
+
+    private static TreeFormatter rootTree(ObjectId[] directoryTrees, ObjectId largeBlob, boolean hasFiles) {
+        List<String> names = new ArrayList<>();
+        for (int d = 0; d < directoryTrees.length && hasFiles; d++) {
+            names.add("dir" + d);
+        }
+        if (largeBlob != null) {
+            names.add(LARGE_FILE);
+        }
+        // Git sorts tree entries by name, with directories compared as if they ended in '/'
+        names.sort((a, b) -> (a.startsWith("dir") ? a + "/" : a).compareTo(b.startsWith("dir") ? b + "/" : b));
+        TreeFormatter tree = new TreeFormatter();
+        for (String name : names) {
+            if (name.equals(LARGE_FILE)) {
+                tree.append(name, FileMode.REGULAR_FILE, largeBlob);
+            } else {
+                tree.append(name, FileMode.TREE, directoryTrees[Integer.parseInt(name.substring(3))]);
+            }
+        }
+        return tree;
+    }
+
+    private static ObjectId writeDirectory(ObjectInserter inserter, ObjectId[] blobs, int directory) throws IOException {
+        int from = directory * FILES_PER_DIRECTORY;
+        int to = Math.min(blobs.length, from + FILES_PER_DIRECTORY);
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            names.add("file" + (i - from) + ".txt");
+        }
+        names.sort(null);
+        TreeFormatter tree = new TreeFormatter();
+        for (String name : names) {
+            int index = from + Integer.parseInt(name.substring(4, name.length() - 4));
+            tree.append(name, FileMode.REGULAR_FILE, blobs[index]);
+        }
+        return inserter.insert(tree);
+    }
+
+    private static void writeRefs(Repository repository, Shape shape, List<ObjectId> commits) throws IOException {
+        RefUpdate main = repository.updateRef(Constants.R_HEADS + MAIN_BRANCH);
+        main.setNewObjectId(commits.get(commits.size() - 1));
+        main.forceUpdate();
+        repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + MAIN_BRANCH);
+        RefUpdate behind = repository.updateRef(Constants.R_HEADS + BEHIND_BRANCH);
+        behind.setNewObjectId(commits.get(Math.max(0, commits.size() - 1 - BEHIND_COMMITS)));
+        behind.forceUpdate();
+
+        if (shape.refs() > 0) {
+            Random random = new Random(shape.refs());
+            BatchRefUpdate batch = repository.getRefDatabase().newBatchUpdate();
+            for (int i = 0; i < shape.refs(); i++) {
+                ObjectId target = commits.get(random.nextInt(commits.size()));
+                batch.addCommand(new ReceiveCommand(ObjectId.zeroId(), target, Constants.R_HEADS + "branch-" + i));
+            }
+            try (RevWalk walk = new RevWalk(repository)) {
+                batch.execute(walk, NullProgressMonitor.INSTANCE);
+            }
+        }
+    }
+
+    private static byte[] content(Random random, int size) {
+        // Printable text so blobs compress and delta like source files rather than random noise
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + random.nextInt(26));
+        }
+        return bytes;
+    }
+}
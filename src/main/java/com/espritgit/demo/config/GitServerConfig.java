@@ -1,11 +1,24 @@
 package com.espritgit.demo.config;
 
 
-import com.example.jgitpersistentdemo.gitserver.GitServerRepositoryResolver;
+import com.espritgit.demo.gitserver.GitAdmissionController;
+import com.espritgit.demo.gitserver.GitAdmissionFilter;
+import com.espritgit.demo.gitserver.GitReceivePackFactory;
+import com.espritgit.demo.gitserver.GitRequestMetricsFilter;
+import com.espritgit.demo.gitserver.GitServerRepositoryResolver;
+import com.espritgit.demo.gitserver.GitUploadPackFactory;
+import com.espritgit.demo.gitserver.RefUpdateLockFilter;
+import com.espritgit.demo.gitserver.ShallowCutoffFilter;
+import com.espritgit.demo.gitserver.UploadPackCache;
+import com.espritgit.demo.gitserver.UploadPackCacheFilter;
+import com.espritgit.demo.services.CodeSearchService;
+import com.espritgit.demo.services.CommitGraphService;
+import com.espritgit.demo.services.GitMetrics;
+import com.espritgit.demo.services.MaintenanceService;
+import com.espritgit.demo.services.PostReceiveQueue;
+import com.espritgit.demo.services.RepositoryCache;
+import com.espritgit.demo.services.RepositoryRegistry;
 import org.eclipse.jgit.http.server.GitServlet;
-import org.eclipse.jgit.http.server.resolver.DefaultReceivePackFactory;
-import org.eclipse.jgit.http.server.resolver.DefaultUploadPackFactory;
-import org.eclipse.jgit.transport.ReceivePack;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -25,27 +38,49 @@ import static org.springframework.security.config.Customizer.withDefaults;
 @EnableWebSecurity // Enable Spring Security's web security support
 public class GitServerConfig {
 
-    @Value("${git.repositories.base-path}")
-    private String repositoriesBasePath;
-
     @Value("${git.server.servlet-path}")
     private String gitServletPath; // e.g., /gitserver/*
 
     @Bean
-    public ServletRegistrationBean<GitServlet> gitServletRegistrationBean() {
+    public ServletRegistrationBean<GitServlet> gitServletRegistrationBean(RepositoryCache repositoryCache,
+                                                                          CommitGraphService commitGraphService,
+                                                                          MaintenanceService maintenanceService,
+                                                                          UploadPackCache uploadPackCache,
+                                                                          RepositoryRegistry repositoryRegistry,
+                                                                          GitMetrics gitMetrics,
+                                                                          GitAdmissionController admissionController,
+                                                                          CodeSearchService codeSearchService,
+                                                                          GitUploadPackFactory gitUploadPackFactory,
+                                                                          GitReceivePackFactory gitReceivePackFactory,
+                                                                          PostReceiveQueue postReceiveQueue) {
         GitServlet servlet = new GitServlet();
 
-        // Set the custom repository resolver
-        servlet.setRepositoryResolver(new GitServerRepositoryResolver(repositoriesBasePath));
-
-        // Configure UploadPack (for clone/fetch) - allow all by default
-        servlet.setUploadPackFactory(new DefaultUploadPackFactory());
-
-        // Configure ReceivePack (for push)
-        // This factory will be used to create ReceivePack instances for each push.
-        // We enable pushes by default here.
-        servlet.setReceivePackFactory(new DefaultReceivePackFactory());
-
+        // Set the custom repository resolver (shares open repository handles with GitService)
+        servlet.setRepositoryResolver(new GitServerRepositoryResolver(repositoryCache, repositoryRegistry));
+
+        // Configure UploadPack (for clone/fetch): protocol v2, partial clone filters and shallow fetches per policy
+        servlet.setUploadPackFactory(gitUploadPackFactory);
+        servlet.addUploadPackFilter(new GitRequestMetricsFilter(gitMetrics, "upload-pack"));
+        // Shallow-by-date / by-ref checks, ahead of the cache so replayed responses cannot skip them
+        servlet.addUploadPackFilter(new ShallowCutoffFilter(gitUploadPackFactory));
+        // Replay identical full clones from disk instead of packing them again
+        servlet.addUploadPackFilter(new UploadPackCacheFilter(uploadPackCache));
+        // Only requests that actually pack (cache misses) take an admission slot
+        servlet.addUploadPackFilter(new GitAdmissionFilter(admissionController, "upload-pack"));
+        servlet.addReceivePackFilter(new GitRequestMetricsFilter(gitMetrics, "receive-pack"));
+        servlet.addReceivePackFilter(new GitAdmissionFilter(admissionController, "receive-pack"));
+        servlet.addReceivePackFilter(new RefUpdateLockFilter(gitReceivePackFactory));
+
+        // Configure ReceivePack (for push): size limits and per-repository ref update locking; follow-up work
+        // runs from the post-receive queue once the push has been answered
+        servlet.setReceivePackFactory(gitReceivePackFactory);
+        // Refresh the commit-graph and search index in the background, and hold back repacking until the
+        // repository has gone quiet
+        postReceiveQueue.subscribe("upload-pack-cache", event -> uploadPackCache.invalidate(event.gitDir()));
+        postReceiveQueue.subscribe("commit-graph", event -> commitGraphService.scheduleUpdate(event.gitDir()));
+        postReceiveQueue.subscribe("maintenance", event -> maintenanceService.recordPush(event.gitDir()));
+        postReceiveQueue.subscribe("repository-registry", event -> repositoryRegistry.recordPush(event.gitDir()));
+        postReceiveQueue.subscribe("code-search", event -> codeSearchService.scheduleUpdate(event.gitDir()));
 
         ServletRegistrationBean<GitServlet> registration = new ServletRegistrationBean<>(servlet, gitServletPath);
         registration.setName("GitServlet");
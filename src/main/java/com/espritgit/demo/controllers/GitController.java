@@ -1,20 +1,57 @@
 package com.espritgit.demo.controllers;
 
+import com.espritgit.demo.exception.ResourceNotFoundException;
+import com.espritgit.demo.gitserver.GitAdmissionController;
+import com.espritgit.demo.gitserver.GitReceivePackFactory;
+import com.espritgit.demo.gitserver.GitUploadPackFactory;
+import com.espritgit.demo.gitserver.UploadPackCache;
+import com.espritgit.demo.services.BlameService;
+import com.espritgit.demo.services.BlobCache;
+import com.espritgit.demo.services.CloneJob;
+import com.espritgit.demo.services.CloneJobService;
+import com.espritgit.demo.services.CloneOptions;
+import com.espritgit.demo.services.CodeSearchService;
+import com.espritgit.demo.services.DiffCache;
 import com.espritgit.demo.services.GitService;
+import com.espritgit.demo.services.MaintenanceService;
+import com.espritgit.demo.services.MirrorRefreshService;
+import com.espritgit.demo.services.ObjectStorageCache;
+import com.espritgit.demo.services.RefSnapshotService;
+import com.espritgit.demo.services.RepositoryCache;
+import com.espritgit.demo.services.RepositoryInfo;
+import com.espritgit.demo.services.RepositoryRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger; // Import Logger
 import org.slf4j.LoggerFactory; // Import LoggerFactory
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 @RestController
 @RequestMapping("/api/git")
@@ -22,17 +59,87 @@ public class GitController {
 
     private static final Logger logger = LoggerFactory.getLogger(GitController.class); // Add logger instance
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    @Value("${git.tree.max-page-size:1000}")
+    private int treeMaxPageSize;
+
+    @Value("${git.diff.max-files:3000}")
+    private int diffMaxFiles;
+
+    @Value("${git.diff.max-bytes:52428800}")
+    private long diffMaxBytes;
+
+    @Value("${git.diff.rename-limit:1000}")
+    private int diffRenameLimit;
+
+    @Value("${git.file-batch.max-files:1000}")
+    private int fileBatchMaxFiles;
+
+    @Value("${git.file-batch.max-inline-bytes:1048576}")
+    private int fileBatchMaxInlineBytes;
+
+    @Value("${git.refs.max-page-size:1000}")
+    private int refsMaxPageSize;
+
+    @Value("${git.search.max-results:1000}")
+    private int searchMaxResults;
+
     private final GitService gitService;
+    private final CloneJobService cloneJobService;
+    private final MirrorRefreshService mirrorRefreshService;
+    private final MaintenanceService maintenanceService;
+    private final RepositoryCache repositoryCache;
+    private final UploadPackCache uploadPackCache;
+    private final GitUploadPackFactory uploadPackFactory;
+    private final GitReceivePackFactory receivePackFactory;
+    private final GitAdmissionController admissionController;
+    private final ObjectStorageCache objectStorageCache;
+    private final BlobCache blobCache;
+    private final DiffCache diffCache;
+    private final CodeSearchService codeSearchService;
+    private final BlameService blameService;
+    private final RefSnapshotService refSnapshotService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public GitController(GitService gitService) {
+    public GitController(GitService gitService, CloneJobService cloneJobService, MirrorRefreshService mirrorRefreshService,
+                         MaintenanceService maintenanceService, RepositoryCache repositoryCache, UploadPackCache uploadPackCache,
+                         GitUploadPackFactory uploadPackFactory, GitReceivePackFactory receivePackFactory,
+                         GitAdmissionController admissionController, ObjectStorageCache objectStorageCache,
+                         BlobCache blobCache, DiffCache diffCache, CodeSearchService codeSearchService,
+                         BlameService blameService, RefSnapshotService refSnapshotService, ObjectMapper objectMapper) {
         this.gitService = gitService;
+        this.cloneJobService = cloneJobService;
+        this.mirrorRefreshService = mirrorRefreshService;
+        this.maintenanceService = maintenanceService;
+        this.repositoryCache = repositoryCache;
+        this.uploadPackCache = uploadPackCache;
+        this.uploadPackFactory = uploadPackFactory;
+        this.receivePackFactory = receivePackFactory;
+        this.admissionController = admissionController;
+        this.objectStorageCache = objectStorageCache;
+        this.blobCache = blobCache;
+        this.diffCache = diffCache;
+        this.codeSearchService = codeSearchService;
+        this.blameService = blameService;
+        this.refSnapshotService = refSnapshotService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/info")
-    public ResponseEntity<?> getRepoInfo(@RequestParam String repoUrl) {
+    public ResponseEntity<?> getRepoInfo(
+            @RequestParam String repoUrl,
+            @RequestParam(defaultValue = "0") int depth,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "false") boolean singleBranch,
+            @RequestParam(required = false) String filter) {
         try {
-            Path localRepoPath = gitService.prepareLocalRepository(repoUrl);
+            Path localRepoPath = gitService.findLocalRepository(repoUrl);
+            if (localRepoPath == null || cloneJobService.isCloneActive(repoUrl)) {
+                // Not available yet: start (or join) the clone and let the client poll the job
+                return submitCloneJob(repoUrl, depth, branch, singleBranch, filter);
+            }
 
             List<String> branches = gitService.listBranches(localRepoPath);
             String latestCommitHash = gitService.getLatestCommitHash(localRepoPath);
@@ -57,35 +164,95 @@ public class GitController {
     }
 
 
+    /**
+     * Submits an asynchronous clone and returns the job immediately (202 Accepted).
+     * Poll GET /api/git/clone-jobs/{jobId} for progress.
+     * Optional: depth=1 (shallow), branch=main&amp;singleBranch=true, filter=blob:none|tree:0|blob:limit=1m (partial).
+     */
     @GetMapping("/clone") // You could change this to @PostMapping if you prefer
-    public ResponseEntity<?> cloneRepository(@RequestParam String repoUrl) {
-        try {
-            Path localRepoPath = gitService.prepareLocalRepository(repoUrl); // This does the clone/check
+    public ResponseEntity<?> cloneRepository(
+            @RequestParam String repoUrl,
+            @RequestParam(defaultValue = "0") int depth,
+            @RequestParam(required = false) String branch,
+            @RequestParam(defaultValue = "false") boolean singleBranch,
+            @RequestParam(required = false) String filter) {
+        return submitCloneJob(repoUrl, depth, branch, singleBranch, filter);
+    }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Repository cloned/verified successfully.");
-            response.put("repositoryUrl", repoUrl);
-            response.put("localPath", localRepoPath.toAbsolutePath().toString());
+    private ResponseEntity<?> submitCloneJob(String repoUrl, int depth, String branch, boolean singleBranch, String filter) {
+        try {
+            CloneOptions options;
+            try {
+                options = new CloneOptions(depth, branch, singleBranch, filter);
+            } catch (IllegalArgumentException e) {
+                Map<String, String> errorResponse = new HashMap<>();
+                errorResponse.put("message", "Invalid clone options.");
+                errorResponse.put("error", e.getMessage());
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+            }
+            CloneJob job = cloneJobService.submit(repoUrl, options);
 
-            return ResponseEntity.ok(response);
+            Map<String, Object> response = new HashMap<>(job.toMap());
+            response.put("message", "Clone job accepted.");
+            response.put("statusUrl", "/api/git/clone-jobs/" + job.getId());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
 
-        } catch (GitAPIException e) {
-            logger.error("Git operation failed during clone/prepare for URL {}: {}", repoUrl, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            logger.warn("Clone request for URL {} conflicts with a running clone: {}", repoUrl, e.getMessage());
             Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("message", "Git operation failed during clone/prepare.");
+            errorResponse.put("message", "Could not start clone.");
             errorResponse.put("error", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
-        } catch (IOException e) {
-            logger.error("File system operation failed during clone/prepare for URL {}: {}", repoUrl, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Clone request for URL {} rejected: {}", repoUrl, e.getMessage());
             Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("message", "File system operation failed during clone/prepare.");
+            errorResponse.put("message", "Clone queue is full.");
             errorResponse.put("error", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(errorResponse);
+        }
+    }
+
+    /**
+     * Clone job status and progress.
+     * Example: GET /api/git/clone-jobs/3f1c...
+     */
+    @GetMapping("/clone-jobs/{jobId}")
+    public ResponseEntity<?> getCloneJob(@PathVariable String jobId) {
+        CloneJob job = cloneJobService.getJob(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Clone job '" + jobId + "' not found.");
+        }
+        return ResponseEntity.ok(job.toMap());
+    }
+
+    @GetMapping("/clone-jobs")
+    public ResponseEntity<?> listCloneJobs() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("executor", cloneJobService.getExecutorStats());
+        response.put("jobs", cloneJobService.listJobs().stream().map(CloneJob::toMap).toList());
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/clone-jobs/{jobId}")
+    public ResponseEntity<?> cancelCloneJob(@PathVariable String jobId) {
+        if (cloneJobService.getJob(jobId) == null) {
+            throw new ResourceNotFoundException("Clone job '" + jobId + "' not found.");
         }
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", jobId);
+        response.put("cancelRequested", cloneJobService.cancel(jobId));
+        return ResponseEntity.ok(response);
     }
 
+    /**
+     * Create an empty repository. Optional refStorage=files|reftable (default {@code git.refs.default-storage}).
+     * Example: POST /api/git/create-empty?repoName=my-repo&refStorage=reftable
+     */
     @PostMapping("/create-empty")
-    public ResponseEntity<?> createEmptyRepository(@RequestParam String repoName) {
+    public ResponseEntity<?> createEmptyRepository(@RequestParam String repoName,
+                                                   @RequestParam(required = false) String refStorage) {
         if (repoName == null || repoName.trim().isEmpty() || repoName.contains("/") || repoName.contains("\\")) {
             Map<String, String> errorResponse = new HashMap<>();
             errorResponse.put("message", "Invalid repository name.");
@@ -94,7 +261,7 @@ public class GitController {
         }
 
         try {
-            Path localRepoPath = gitService.createLocalEmptyRepository(repoName);
+            Path localRepoPath = gitService.createLocalEmptyRepository(repoName, refStorage);
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Empty repository created successfully.");
@@ -106,6 +273,11 @@ public class GitController {
 
             return ResponseEntity.status(HttpStatus.CREATED).body(response); // 201 Created
 
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid repository options.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
         } catch (IllegalStateException e) { // Handles "already exists" scenarios
             logger.warn("Attempt to create repository that already exists or conflicts: {}", e.getMessage());
             Map<String, String> errorResponse = new HashMap<>();
@@ -127,27 +299,257 @@ public class GitController {
         }
     }
 
+    /**
+     * Lists hosted repositories from the in-memory registry.
+     * Optional paging and filtering: q (name substring), bare, offset, limit (0 = all), details (metadata per repo).
+     * Example: GET /api/git/local-repos?q=spring&offset=0&limit=50&details=true
+     */
     @GetMapping("/local-repos")
-    public ResponseEntity<?> listLocalRepositories() {
+    public ResponseEntity<?> listLocalRepositories(@RequestParam(required = false) String q,
+                                                   @RequestParam(required = false) Boolean bare,
+                                                   @RequestParam(defaultValue = "0") int offset,
+                                                   @RequestParam(defaultValue = "0") int limit,
+                                                   @RequestParam(defaultValue = "false") boolean details) {
         try {
-            List<String> repoNames = gitService.listLocalRepositories();
+            RepositoryRegistry.Page page = gitService.findLocalRepositories(q, bare, offset, limit);
             Path basePath = Paths.get(gitService.getRepositoriesBasePath()); // Get base path for context
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Successfully retrieved local repositories.");
             response.put("basePath", basePath.toAbsolutePath().toString());
-            response.put("count", repoNames.size());
-            response.put("repositories", repoNames);
+            response.put("count", page.items().size());
+            response.put("total", page.total());
+            response.put("offset", offset);
+            response.put("limit", limit);
+            response.put("repositories", details
+                    ? page.items().stream().map(RepositoryInfo::toMap).toList()
+                    : page.items().stream().map(RepositoryInfo::name).toList());
 
             return ResponseEntity.ok(response);
 
-        } catch (IOException e) {
-            logger.error("Failed to list local repositories: {}", e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
             Map<String, String> errorResponse = new HashMap<>();
-            errorResponse.put("message", "Failed to list local repositories.");
+            errorResponse.put("message", "Invalid listing parameters.");
             errorResponse.put("error", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Repository handle cache statistics (hits, misses, evictions).
+     * Example: GET /api/git/repository-cache/stats
+     */
+    @GetMapping("/repository-cache/stats")
+    public ResponseEntity<Map<String, Object>> getRepositoryCacheStats() {
+        return ResponseEntity.ok(repositoryCache.getStats());
+    }
+
+    /**
+     * Hit rate and disk usage of the upload-pack response cache.
+     * Example: GET /api/git/upload-pack-cache/stats
+     */
+    @GetMapping("/upload-pack-cache/stats")
+    public ResponseEntity<Map<String, Object>> getUploadPackCacheStats() {
+        return ResponseEntity.ok(uploadPackCache.getStats());
+    }
+
+    /**
+     * Active, queued and rejected upload-pack / receive-pack requests of the GitServlet admission control.
+     * Example: GET /api/git/admission/stats
+     */
+    @GetMapping("/admission/stats")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(admissionController.getStats());
+    }
+
+    /**
+     * Configuration, occupancy, hit ratio and evictions of JGit's pack window cache.
+     * Example: GET /api/git/object-cache/stats
+     */
+    @GetMapping("/object-cache/stats")
+    public ResponseEntity<Map<String, Object>> getObjectCacheStats() {
+        return ResponseEntity.ok(objectStorageCache.getStats());
+    }
+
+    /**
+     * Resize JGit's pack window cache without a restart. Cached windows are dropped and reloaded on demand.
+     * Example: POST /api/git/object-cache/resize?packedGitLimit=1073741824
+     */
+    @PostMapping("/object-cache/resize")
+    public ResponseEntity<?> resizeObjectCache(@RequestParam long packedGitLimit) {
+        logger.info("Request to resize the window cache to {} bytes", packedGitLimit);
+        try {
+            return ResponseEntity.ok(objectStorageCache.resize(packedGitLimit));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid window cache size.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Size and hit rate of the shared blob content cache and the (commit, path) lookup memo.
+     * Example: GET /api/git/blob-cache/stats
+     */
+    @GetMapping("/blob-cache/stats")
+    public ResponseEntity<Map<String, Object>> getBlobCacheStats() {
+        return ResponseEntity.ok(blobCache.getStats());
+    }
+
+    /**
+     * Size and hit rate of the cache of diffs between tree pairs.
+     * Example: GET /api/git/diff-cache/stats
+     */
+    @GetMapping("/diff-cache/stats")
+    public ResponseEntity<Map<String, Object>> getDiffCacheStats() {
+        return ResponseEntity.ok(diffCache.getStats());
+    }
+
+    /**
+     * Upload-pack policy defaults and how fetches used it: protocol v2 ls-refs, partial clone filters, shallow
+     * fetches and requests rejected by the policy.
+     * Example: GET /api/git/upload-pack/stats
+     */
+    @GetMapping("/upload-pack/stats")
+    public ResponseEntity<Map<String, Object>> getUploadPackStats() {
+        return ResponseEntity.ok(uploadPackFactory.getStats());
+    }
+
+    /**
+     * Push size limits, waits for the per-repository ref update lock, and the post-receive queue (backlog, lag,
+     * failures by subscriber).
+     * Example: GET /api/git/receive-pack/stats
+     */
+    @GetMapping("/receive-pack/stats")
+    public ResponseEntity<Map<String, Object>> getReceivePackStats() {
+        return ResponseEntity.ok(receivePackFactory.getStats());
+    }
+
+    /**
+     * Cached ref snapshots: hits, invalidations by ref updates, and time spent reading refs.
+     * Example: GET /api/git/ref-snapshots/stats
+     */
+    @GetMapping("/ref-snapshots/stats")
+    public ResponseEntity<Map<String, Object>> getRefSnapshotStats() {
+        return ResponseEntity.ok(refSnapshotService.getStats());
+    }
+
+    /**
+     * Size and hit rate of the blame result cache, and how many blames were computed incrementally.
+     * Example: GET /api/git/blame-cache/stats
+     */
+    @GetMapping("/blame-cache/stats")
+    public ResponseEntity<Map<String, Object>> getBlameCacheStats() {
+        return ResponseEntity.ok(blameService.getStats());
+    }
+
+    /**
+     * Size, segments and update counts of the code search indexes.
+     * Example: GET /api/git/search-index/stats
+     */
+    @GetMapping("/search-index/stats")
+    public ResponseEntity<Map<String, Object>> getSearchIndexStats() {
+        return ResponseEntity.ok(codeSearchService.getStats());
+    }
+
+    /**
+     * Regex search over the default branch of every indexed repository.
+     * Example: GET /api/git/search?q=TODO\(.*\)&ignoreCase=true&limit=50
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchAll(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "false") boolean ignoreCase,
+            @RequestParam(defaultValue = "false") boolean literal,
+            @RequestParam(defaultValue = "100") int limit) {
+        logger.info("Request to search all repositories for: {}, ignoreCase: {}, literal: {}, limit: {}", q, ignoreCase, literal, limit);
+        try {
+            Pattern pattern = searchPattern(q, ignoreCase, literal, limit);
+            return ResponseEntity.ok(codeSearchService.searchAll(pattern, limit));
+        } catch (IllegalArgumentException e) {
+            return invalidSearch(e);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Regex search over the default branch of one repository, one result per matching line.
+     * Example: GET /api/git/my-repo/search?q=class\s+\w+Service&limit=100
+     */
+    @GetMapping("/{repoName}/search")
+    public ResponseEntity<?> search(
+            @PathVariable String repoName,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "false") boolean ignoreCase,
+            @RequestParam(defaultValue = "false") boolean literal,
+            @RequestParam(defaultValue = "100") int limit) throws IOException {
+        logger.info("Request to search repository: {} for: {}, ignoreCase: {}, literal: {}, limit: {}", repoName, q, ignoreCase, literal, limit);
+        try {
+            Pattern pattern = searchPattern(q, ignoreCase, literal, limit);
+            return ResponseEntity.ok(codeSearchService.search(repoName, pattern, limit));
+        } catch (IllegalArgumentException e) {
+            return invalidSearch(e);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    private Pattern searchPattern(String q, boolean ignoreCase, boolean literal, int limit) {
+        if (q.isEmpty()) {
+            throw new IllegalArgumentException("q must not be empty");
         }
+        if (limit < 1 || limit > searchMaxResults) {
+            throw new IllegalArgumentException("limit must be between 1 and " + searchMaxResults);
+        }
+        int flags = (ignoreCase ? Pattern.CASE_INSENSITIVE : 0) | (literal ? Pattern.LITERAL : 0);
+        return Pattern.compile(q, flags); // PatternSyntaxException is an IllegalArgumentException
+    }
+
+    private static ResponseEntity<?> invalidSearch(IllegalArgumentException e) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("message", "Invalid search parameters.");
+        errorResponse.put("error", e instanceof PatternSyntaxException syntax ? syntax.getDescription() + " near index " + syntax.getIndex() : e.getMessage());
+        return ResponseEntity.badRequest().body(errorResponse);
+    }
+
+    /**
+     * Refresh state of all cloned mirrors.
+     * Example: GET /api/git/mirrors
+     */
+    @GetMapping("/mirrors")
+    public ResponseEntity<?> listMirrors() {
+        return ResponseEntity.ok(mirrorRefreshService.listMirrors());
+    }
+
+    /**
+     * Fetch a cloned mirror from its origin now instead of waiting for its next scheduled refresh.
+     * Example: POST /api/git/my-repo/refresh
+     */
+    @PostMapping("/{repoName}/refresh")
+    public ResponseEntity<?> refreshMirror(@PathVariable String repoName) {
+        logger.info("Request to refresh mirror: {}", repoName);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(mirrorRefreshService.refreshNow(repoName));
+    }
+
+    /**
+     * Last maintenance (repack / bitmap / prune) report per repository.
+     * Example: GET /api/git/maintenance
+     */
+    @GetMapping("/maintenance")
+    public ResponseEntity<?> getMaintenanceReports() {
+        return ResponseEntity.ok(maintenanceService.getReports());
+    }
+
+    /**
+     * Queue maintenance for a repository now, regardless of thresholds.
+     * Example: POST /api/git/my-repo/maintenance
+     */
+    @PostMapping("/{repoName}/maintenance")
+    public ResponseEntity<?> runMaintenance(@PathVariable String repoName) {
+        logger.info("Request to run maintenance on repository: {}", repoName);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(maintenanceService.requestMaintenance(repoName));
     }
 
     /**
@@ -164,32 +566,499 @@ public class GitController {
     /**
      * 2. List Commits (Log)
      * Example: GET /api/git/my-repo/log?branch=main&maxCount=10&skip=0
+     * Keyset paging: pass the X-Next-Cursor header of the previous page as {@code after}:
+     * GET /api/git/my-repo/log?maxCount=100&after=<cursor>
+     * Streaming: {@code format=ndjson} writes one commit per line as it is walked, followed by a final
+     * {"nextCursor": ...} line when more commits remain.
      */
     @GetMapping("/{repoName}/log")
-    public ResponseEntity<List<Map<String, String>>> getCommitLog(
+    public ResponseEntity<?> getCommitLog(
             @PathVariable String repoName,
             @RequestParam(defaultValue = "HEAD") String branch, // Default to HEAD if no branch specified
             @RequestParam(defaultValue = "20") int maxCount,
-            @RequestParam(defaultValue = "0") int skip) throws GitAPIException, IOException {
-        logger.info("Request to get commit log for repository: {}, branch: {}, maxCount: {}, skip: {}",
-                repoName, branch, maxCount, skip);
-        List<Map<String, String>> commits = gitService.getCommitLog(repoName, branch, maxCount, skip);
-        return ResponseEntity.ok(commits);
+            @RequestParam(defaultValue = "0") int skip,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "json") String format) throws GitAPIException, IOException {
+        logger.info("Request to get commit log for repository: {}, branch: {}, maxCount: {}, skip: {}, after: {}, format: {}",
+                repoName, branch, maxCount, skip, after, format);
+
+        List<ObjectId> starts;
+        try {
+            // Resolve before streaming, so unknown refs and bad cursors still get a 404 / 400
+            starts = gitService.resolveLogStarts(repoName, branch, after);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid log parameters.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        if ("ndjson".equalsIgnoreCase(format)) {
+            StreamingResponseBody body = out -> {
+                String nextCursor = gitService.walkCommitLog(repoName, starts, maxCount, skip, commit -> {
+                    out.write(objectMapper.writeValueAsBytes(commit));
+                    out.write('\n');
+                });
+                if (nextCursor != null) {
+                    out.write(objectMapper.writeValueAsBytes(Map.of("nextCursor", nextCursor)));
+                    out.write('\n');
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        }
+
+        List<Map<String, String>> commits = new ArrayList<>();
+        String nextCursor = gitService.walkCommitLog(repoName, starts, maxCount, skip, commits::add);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (nextCursor != null) {
+            builder.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return builder.body(commits);
+    }
+
+    /**
+     * Merge base(s) of two commits or refs.
+     * Example: GET /api/git/my-repo/merge-base?first=main&second=feature
+     */
+    @GetMapping("/{repoName}/merge-base")
+    public ResponseEntity<Map<String, Object>> getMergeBase(
+            @PathVariable String repoName,
+            @RequestParam String first,
+            @RequestParam String second) throws IOException {
+        logger.info("Request to get merge base for repository: {}, first: {}, second: {}", repoName, first, second);
+        return ResponseEntity.ok(gitService.getMergeBase(repoName, first, second));
+    }
+
+    /**
+     * Ancestry check between two commits or refs.
+     * Example: GET /api/git/my-repo/is-ancestor?ancestor=v1.0&descendant=main
+     */
+    @GetMapping("/{repoName}/is-ancestor")
+    public ResponseEntity<Map<String, Object>> isAncestor(
+            @PathVariable String repoName,
+            @RequestParam String ancestor,
+            @RequestParam String descendant) throws IOException {
+        logger.info("Request to check ancestry for repository: {}, ancestor: {}, descendant: {}", repoName, ancestor, descendant);
+        return ResponseEntity.ok(gitService.isAncestor(repoName, ancestor, descendant));
+    }
+
+    /**
+     * Changed files between two commits or refs, streamed as they are diffed.
+     * Example: GET /api/git/my-repo/diff?base=v1.0&head=main&patch=true
+     * PR preview (changes on head since it forked from base): GET /api/git/my-repo/diff?base=main&head=feature&mergeBase=true
+     * NDJSON (default) writes one object per file (change type, paths, ids, rename score, added/removed lines and,
+     * with patch=true, the unified diff), then a final summary line with totals and whether a limit truncated it.
+     * {@code format=patch} writes the plain unified diff instead. maxFiles and maxBytes (of patch text) can lower
+     * the configured limits.
+     */
+    @GetMapping("/{repoName}/diff")
+    public ResponseEntity<?> getDiff(
+            @PathVariable String repoName,
+            @RequestParam String base,
+            @RequestParam(defaultValue = "HEAD") String head,
+            @RequestParam(defaultValue = "false") boolean mergeBase,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean patch,
+            @RequestParam(defaultValue = "true") boolean renames,
+            @RequestParam(defaultValue = "3") int context,
+            @RequestParam(required = false) Integer maxFiles,
+            @RequestParam(required = false) Long maxBytes) throws IOException {
+        logger.info("Request to diff repository: {}, base: {}, head: {}, mergeBase: {}, format: {}, patch: {}, renames: {}",
+                repoName, base, head, mergeBase, format, patch, renames);
+        boolean plainPatch = "patch".equalsIgnoreCase(format);
+        if (context < 0 || (maxFiles != null && maxFiles < 1) || (maxBytes != null && maxBytes < 1)) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid diff parameters.");
+            errorResponse.put("error", "context must be at least 0, maxFiles and maxBytes at least 1");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        GitService.DiffOptions options = new GitService.DiffOptions(patch || plainPatch, renames, diffRenameLimit, context,
+                maxFiles != null ? Math.min(maxFiles, diffMaxFiles) : diffMaxFiles,
+                maxBytes != null ? Math.min(maxBytes, diffMaxBytes) : diffMaxBytes);
+        // Resolve before streaming, so unknown refs still get a 404
+        GitService.DiffTrees trees = gitService.resolveDiffTrees(repoName, base, head, mergeBase);
+
+        if (plainPatch) {
+            StreamingResponseBody body = out -> gitService.diff(repoName, trees, options, file -> out.write(file.patch()));
+            return ResponseEntity.ok()
+                    .contentType(new MediaType("text", "x-diff", StandardCharsets.UTF_8))
+                    .body(body);
+        }
+
+        StreamingResponseBody body = out -> {
+            GitService.DiffSummary summary = gitService.diff(repoName, trees, options, file -> {
+                out.write(objectMapper.writeValueAsBytes(toDiffFileMap(file)));
+                out.write('\n');
+            });
+            out.write(objectMapper.writeValueAsBytes(summary));
+            out.write('\n');
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private static Map<String, Object> toDiffFileMap(GitService.DiffFile file) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("changeType", file.changeType());
+        map.put("oldPath", file.oldPath());
+        map.put("newPath", file.newPath());
+        map.put("oldId", file.oldId());
+        map.put("newId", file.newId());
+        map.put("score", file.score());
+        map.put("additions", file.additions());
+        map.put("deletions", file.deletions());
+        map.put("binary", file.binary());
+        if (file.patch() != null) {
+            map.put("patch", new String(file.patch(), StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+
+    /**
+     * Refs under a prefix, sorted by name, one page at a time.
+     * Example: GET /api/git/my-repo/refs?prefix=refs/tags/v2.&limit=100
+     * Next page: pass the nextCursor of the previous page as {@code after}.
+     */
+    @GetMapping("/{repoName}/refs")
+    public ResponseEntity<?> listRefs(
+            @PathVariable String repoName,
+            @RequestParam(defaultValue = "refs/") String prefix,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) throws IOException {
+        logger.info("Request to list refs for repository: {}, prefix: {}, after: {}, limit: {}", repoName, prefix, after, limit);
+        if (limit < 1 || limit > refsMaxPageSize) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid ref listing parameters.");
+            errorResponse.put("error", "limit must be between 1 and " + refsMaxPageSize);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        return ResponseEntity.ok(gitService.listRefs(repoName, prefix, after, limit));
+    }
+
+    /**
+     * Local branches, sorted by name, one page at a time.
+     * Example: GET /api/git/my-repo/branches?limit=100&after=refs/heads/feature-x
+     */
+    @GetMapping("/{repoName}/branches")
+    public ResponseEntity<?> listBranches(
+            @PathVariable String repoName,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) throws IOException {
+        return listRefs(repoName, Constants.R_HEADS, after, limit);
+    }
+
+    /**
+     * Ref storage format of a repository (files or reftable).
+     * Example: GET /api/git/my-repo/ref-storage
+     */
+    @GetMapping("/{repoName}/ref-storage")
+    public ResponseEntity<?> getRefStorage(@PathVariable String repoName) throws IOException {
+        return ResponseEntity.ok(Map.of("refStorage", gitService.getRefStorage(repoName)));
+    }
+
+    /**
+     * Convert a repository's refs to reftable (or back to files) storage. Run it while the repository is quiet.
+     * Example: POST /api/git/my-repo/ref-storage?format=reftable
+     */
+    @PostMapping("/{repoName}/ref-storage")
+    public ResponseEntity<?> convertRefStorage(@PathVariable String repoName, @RequestParam String format) throws IOException {
+        logger.info("Request to convert ref storage of repository: {} to {}", repoName, format);
+        try {
+            return ResponseEntity.ok(gitService.convertRefStorage(repoName, format));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Could not convert ref storage.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Blame of a file at a commit or ref, streamed as line ranges are attributed.
+     * Example: GET /api/git/my-repo/blame?path=src/main/App.java&ref=main
+     * NDJSON writes one object per range of lines (start line, line count, commit, author, source path and line),
+     * then a final summary line saying whether the result came from the cache, was computed incrementally from a
+     * cached blame of an older version, or was computed in full. Ranges of a full blame arrive in the order they
+     * are attributed, not in line order.
+     */
+    @GetMapping("/{repoName}/blame")
+    public ResponseEntity<?> getBlame(
+            @PathVariable String repoName,
+            @RequestParam String path,
+            @RequestParam(defaultValue = "HEAD") String ref) throws IOException {
+        logger.info("Request to blame file: {} in repository: {}, ref: {}", path, repoName, ref);
+        GitService.BlameTarget target;
+        try {
+            // Resolve before streaming, so unknown refs and paths still get a 404
+            target = gitService.resolveBlameTarget(repoName, ref, path);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid blame parameters.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        StreamingResponseBody body = out -> {
+            BlameService.BlameSummary summary = gitService.blame(repoName, target, region -> {
+                out.write(objectMapper.writeValueAsBytes(region));
+                out.write('\n');
+                out.flush();
+            });
+            out.write(objectMapper.writeValueAsBytes(summary));
+            out.write('\n');
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * List one directory level at a ref, page by page.
+     * Example: GET /api/git/my-repo/tree?ref=main&path=src/main&limit=100
+     * Next page: pass the nextCursor of the previous page as {@code after}. With lastCommit=true each entry also
+     * carries the last commit that changed it.
+     */
+    @GetMapping("/{repoName}/tree")
+    public ResponseEntity<?> getTree(
+            @PathVariable String repoName,
+            @RequestParam(defaultValue = "HEAD") String ref,
+            @RequestParam(defaultValue = "") String path,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "false") boolean lastCommit) throws IOException {
+        logger.info("Request to list tree for repository: {}, ref: {}, path: {}, after: {}, limit: {}, lastCommit: {}",
+                repoName, ref, path, after, limit, lastCommit);
+        if (limit < 1 || limit > treeMaxPageSize) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid tree listing parameters.");
+            errorResponse.put("error", "limit must be between 1 and " + treeMaxPageSize);
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        try {
+            return ResponseEntity.ok(gitService.listTree(repoName, ref, path, after, limit, lastCommit));
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid tree listing parameters.");
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Paths and globs of a batch file read.
+     */
+    public record FileBatchRequest(String ref, List<String> paths, List<String> globs) {
+    }
+
+    /**
+     * Read many files at one ref with a single tree walk.
+     * Example: POST /api/git/my-repo/files?format=ndjson  {"ref": "main", "paths": ["README.md", "docs"], "globs": ["**&#47;*.yml"]}
+     * NDJSON (default) writes one object per file, with the content as UTF-8 text or base64 for binary files
+     * ({@code content} is left out above {@code git.file-batch.max-inline-bytes}; use the file endpoint with
+     * stream=true), then a final {"missing": [...], "truncated": ...} line.
+     * {@code format=multipart} writes a multipart/mixed body with one raw part per file (Content-Location is the
+     * path, ETag the blob id) and a final application/json part with the same summary.
+     */
+    @PostMapping("/{repoName}/files")
+    public ResponseEntity<?> getFiles(
+            @PathVariable String repoName,
+            @RequestBody FileBatchRequest request,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        List<String> paths = request.paths() != null ? request.paths() : List.of();
+        List<String> globs = request.globs() != null ? request.globs() : List.of();
+        String ref = request.ref() != null ? request.ref() : "HEAD";
+        logger.info("Request to read {} path(s) and {} glob(s) for repository: {}, ref: {}, format: {}",
+                paths.size(), globs.size(), repoName, ref, format);
+        if (paths.isEmpty() && globs.isEmpty()) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("message", "Invalid file batch.");
+            errorResponse.put("error", "At least one path or glob is required.");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        if ("multipart".equalsIgnoreCase(format)) {
+            String boundary = "git-files-" + UUID.randomUUID();
+            StreamingResponseBody body = out -> {
+                GitService.FileBatchResult result = gitService.readFiles(repoName, ref, paths, globs, fileBatchMaxFiles,
+                        (file, content) -> {
+                            writePartHeader(out, boundary, MediaTypeFactory.getMediaType(file.path())
+                                    .orElse(MediaType.APPLICATION_OCTET_STREAM).toString(), file.size(), Map.of(
+                                    "Content-Location", file.path(),
+                                    HttpHeaders.ETAG, "\"" + file.blobId().name() + "\""));
+                            content.copyTo(out);
+                            out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                        });
+                byte[] summary = objectMapper.writeValueAsBytes(batchSummary(result));
+                writePartHeader(out, boundary, MediaType.APPLICATION_JSON_VALUE, summary.length, Map.of());
+                out.write(summary);
+                out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            };
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("multipart/mixed; boundary=" + boundary))
+                    .body(body);
+        }
+
+        StreamingResponseBody body = out -> {
+            GitService.FileBatchResult result = gitService.readFiles(repoName, ref, paths, globs, fileBatchMaxFiles,
+                    (file, content) -> {
+                        out.write(objectMapper.writeValueAsBytes(toFileMap(file, content)));
+                        out.write('\n');
+                    });
+            out.write(objectMapper.writeValueAsBytes(batchSummary(result)));
+            out.write('\n');
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private Map<String, Object> toFileMap(GitService.FileEntry file, ObjectLoader content) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("path", file.path());
+        map.put("blobId", file.blobId().name());
+        map.put("mode", file.mode().toString());
+        map.put("size", file.size());
+        if (content.isLarge() || file.size() > fileBatchMaxInlineBytes) {
+            map.put("truncated", true);
+            return map;
+        }
+        byte[] bytes = content.getCachedBytes();
+        if (RawText.isBinary(bytes)) {
+            map.put("encoding", "base64");
+            map.put("content", Base64.getEncoder().encodeToString(bytes));
+        } else {
+            map.put("encoding", "utf-8");
+            map.put("content", new String(bytes, StandardCharsets.UTF_8));
+        }
+        return map;
+    }
+
+    private static Map<String, Object> batchSummary(GitService.FileBatchResult result) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("missing", result.missing());
+        summary.put("truncated", result.truncated());
+        return summary;
+    }
+
+    private static void writePartHeader(OutputStream out, String boundary, String contentType, long length,
+                                        Map<String, String> headers) throws IOException {
+        StringBuilder header = new StringBuilder("--").append(boundary).append("\r\n")
+                .append(HttpHeaders.CONTENT_TYPE).append(": ").append(contentType).append("\r\n")
+                .append(HttpHeaders.CONTENT_LENGTH).append(": ").append(length).append("\r\n");
+        headers.forEach((name, value) -> header.append(name).append(": ").append(value).append("\r\n"));
+        out.write(header.append("\r\n").toString().getBytes(StandardCharsets.UTF_8));
     }
 
     /**
      * 3. Get File Content at a Specific Commit/Branch
      * Example: GET /api/git/my-repo/file?path=README.md&ref=main
+     * With stream=true the raw blob is streamed (binary-safe) with Range, ETag and Content-Length support:
+     * GET /api/git/my-repo/file?path=big.bin&ref=main&stream=true  (Range: bytes=1048576-)
      */
     @GetMapping("/{repoName}/file")
-    public ResponseEntity<String> getFileContent(
+    public ResponseEntity<?> getFileContent(
             @PathVariable String repoName,
             @RequestParam String path,
-            @RequestParam(defaultValue = "HEAD") String ref) throws GitAPIException, IOException {
-        logger.info("Request to get file content for repository: {}, path: {}, ref: {}", repoName, path, ref);
-        String content = gitService.getFileContent(repoName, path, ref);
-        return ResponseEntity.ok()
-                .contentType(MediaType.TEXT_PLAIN) // Set content type to plain text
-                .body(content);
+            @RequestParam(defaultValue = "HEAD") String ref,
+            @RequestParam(defaultValue = "false") boolean stream,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws GitAPIException, IOException {
+        logger.info("Request to get file content for repository: {}, path: {}, ref: {}, stream: {}", repoName, path, ref, stream);
+        if (!stream) {
+            String content = gitService.getFileContent(repoName, path, ref);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.TEXT_PLAIN) // Set content type to plain text
+                    .body(content);
+        }
+
+        GitService.BlobInfo blob = gitService.resolveBlob(repoName, path, ref);
+        String etag = "\"" + blob.blobId().name() + "\""; // Blobs are immutable, so the id is a strong validator
+        MediaType contentType = MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        long size = blob.size();
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+        // If-Range: only honour the Range header when the client's copy is still current
+        if (range != null && (ifRange == null || ifRange.trim().equals(etag))) {
+            long[] bounds = parseByteRange(range, size);
+            if (bounds == null) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .eTag(etag)
+                        .build();
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                partial = true;
+            }
+        }
+
+        long offset = start;
+        long length = size == 0 ? 0 : end - start + 1;
+        StreamingResponseBody body = out -> gitService.writeBlob(repoName, blob.blobId(), offset, length, out);
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .contentType(contentType)
+                .contentLength(length)
+                .eTag(etag)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (partial) {
+            builder.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        }
+        return builder.body(body);
+    }
+
+    /**
+     * Parses a single "bytes=" range against a blob of the given size.
+     *
+     * @return {start, end} (inclusive) for a satisfiable range, an empty array when the header should be
+     * ignored (malformed or multi-range, so the full content is sent), or null when it is unsatisfiable.
+     */
+    private static long[] parseByteRange(String rangeHeader, long size) {
+        String spec = rangeHeader.trim();
+        if (!spec.startsWith("bytes=") || spec.contains(",")) {
+            return new long[0];
+        }
+        spec = spec.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) { // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                long requestedEnd = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (requestedEnd < start) {
+                    return new long[0]; // Syntactically invalid, ignore it
+                }
+                end = Math.min(requestedEnd, size - 1);
+            }
+            if (start >= size) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
     }
-}
\ No newline at end of file
+}
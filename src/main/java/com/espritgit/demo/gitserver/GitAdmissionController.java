@@ -0,0 +1,220 @@
+package com.espritgit.demo.gitserver;
+
+import com.espritgit.demo.services.GitMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds concurrent upload-pack / receive-pack work, used by {@link GitAdmissionFilter}.
+ * <p>
+ * A request first takes a slot of its repository ({@code git.admission.max-per-repository}), then a global one
+ * ({@code git.admission.max-concurrent}), so a clone storm on one popular repository queues on that repository
+ * instead of occupying every global slot. Requests wait in fair FIFO order for at most
+ * {@code git.admission.queue-timeout-ms}; a request that finds the queue already full, or times out, is rejected
+ * with 429 (repository limit) or 503 (global limit) and a {@code Retry-After} header.
+ */
+@Component
+public class GitAdmissionController {
+
+    @Value("${git.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.admission.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${git.admission.max-per-repository:4}")
+    private int maxPerRepository;
+
+    @Value("${git.admission.max-queued:64}")
+    private int maxQueued;
+
+    @Value("${git.admission.max-queued-per-repository:16}")
+    private int maxQueuedPerRepository;
+
+    @Value("${git.admission.queue-timeout-ms:30000}")
+    private long queueTimeoutMs;
+
+    @Value("${git.admission.retry-after-seconds:10}")
+    private int retryAfterSeconds;
+
+    private final GitMetrics gitMetrics;
+    private final Map<Path, Gate> repositories = new ConcurrentHashMap<>();
+    private Gate global;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedRepository = new AtomicLong();
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Slots and waiting requests of one limit.
+     */
+    private static final class Gate {
+        final Semaphore slots;
+        final AtomicInteger waiting = new AtomicInteger();
+
+        Gate(int permits) {
+            this.slots = new Semaphore(permits, true);
+        }
+    }
+
+    /**
+     * Held while the request runs; closing it frees both slots.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Gate repository;
+        private boolean released;
+
+        private Permit(Gate repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (repository != null) {
+                global.slots.release();
+                repository.slots.release();
+            }
+        }
+    }
+
+    /**
+     * The request could not be admitted.
+     */
+    public static final class RejectedException extends Exception {
+        private final int status;
+        private final int retryAfterSeconds;
+
+        RejectedException(int status, int retryAfterSeconds, String message) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    public GitAdmissionController(GitMetrics gitMetrics) {
+        this.gitMetrics = gitMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        global = new Gate(maxConcurrent);
+        gitMetrics.gauge("git.admission.active", this, controller -> maxConcurrent - controller.global.slots.availablePermits());
+        gitMetrics.gauge("git.admission.queued", this, controller -> controller.totalWaiting());
+        gitMetrics.functionCounter("git.admission.rejected", this,
+                controller -> controller.rejectedRepository.get() + controller.rejectedGlobal.get());
+    }
+
+    /**
+     * Waits for a slot to work on the repository.
+     *
+     * @param gitDir  Git directory of the repository.
+     * @param service upload-pack or receive-pack, for metrics.
+     * @throws RejectedException    If a queue is full or the wait timed out.
+     * @throws InterruptedException If interrupted while queued.
+     */
+    public Permit admit(Path gitDir, String service) throws RejectedException, InterruptedException {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+        Gate repository = repositories.computeIfAbsent(gitDir, key -> new Gate(maxPerRepository));
+        if (!acquire(repository, maxQueuedPerRepository, deadline)) {
+            rejectedRepository.incrementAndGet();
+            gitMetrics.recordAdmission(service, "rejected-repository", System.nanoTime() - start);
+            throw new RejectedException(429, retryAfterSeconds,
+                    "Too many concurrent requests for this repository, retry later");
+        }
+        boolean acquired = false;
+        try {
+            acquired = acquire(global, maxQueued, deadline);
+        } finally {
+            if (!acquired) {
+                repository.slots.release();
+            }
+        }
+        if (!acquired) {
+            rejectedGlobal.incrementAndGet();
+            gitMetrics.recordAdmission(service, "rejected-global", System.nanoTime() - start);
+            throw new RejectedException(503, retryAfterSeconds, "Server busy, retry later");
+        }
+        admitted.incrementAndGet();
+        gitMetrics.recordAdmission(service, "admitted", System.nanoTime() - start);
+        return new Permit(repository);
+    }
+
+    /**
+     * Takes a slot right away if one is free, otherwise queues unless {@code maxWaiting} requests already are.
+     */
+    private boolean acquire(Gate gate, int maxWaiting, long deadline) throws InterruptedException {
+        if (gate.slots.tryAcquire()) {
+            return true;
+        }
+        if (gate.waiting.incrementAndGet() > maxWaiting) {
+            gate.waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            if (gate.slots.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+            timedOut.incrementAndGet();
+            return false;
+        } finally {
+            gate.waiting.decrementAndGet();
+        }
+    }
+
+    private int totalWaiting() {
+        int waiting = global.waiting.get();
+        for (Gate gate : repositories.values()) {
+            waiting += gate.waiting.get();
+        }
+        return waiting;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("maxPerRepository", maxPerRepository);
+        stats.put("active", maxConcurrent - global.slots.availablePermits());
+        stats.put("queued", totalWaiting());
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedRepository", rejectedRepository.get());
+        stats.put("rejectedGlobal", rejectedGlobal.get());
+        stats.put("timedOut", timedOut.get());
+        Map<String, Object> busy = new LinkedHashMap<>();
+        repositories.forEach((gitDir, gate) -> {
+            int active = maxPerRepository - gate.slots.availablePermits();
+            if (active > 0 || gate.waiting.get() > 0) {
+                busy.put(gitDir.toString(), Map.of("active", active, "queued", gate.waiting.get()));
+            }
+        });
+        stats.put("busyRepositories", busy);
+        return stats;
+    }
+}
@@ -0,0 +1,60 @@
+package com.espritgit.demo.gitserver;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Runs upload-pack / receive-pack requests only once the {@link GitAdmissionController} grants them a slot, and
+ * answers 429 / 503 with {@code Retry-After} when it doesn't.
+ */
+public class GitAdmissionFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitAdmissionFilter.class);
+
+    private final GitAdmissionController admissionController;
+    private final String service;
+
+    public GitAdmissionFilter(GitAdmissionController admissionController, String service) {
+        this.admissionController = admissionController;
+        this.service = service;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        if (!"POST".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Path gitDir = ServletUtils.getRepository(request).getDirectory().toPath();
+        GitAdmissionController.Permit permit;
+        try {
+            permit = admissionController.admit(gitDir, service);
+        } catch (GitAdmissionController.RejectedException e) {
+            logger.debug("Rejected {} for {}: {}", service, gitDir, e.getMessage());
+            response.setHeader("Retry-After", Integer.toString(e.getRetryAfterSeconds()));
+            response.sendError(e.getStatus(), e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try (permit) {
+            chain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.espritgit.demo.gitserver;
+
+import com.espritgit.demo.services.GitMetrics;
+import com.espritgit.demo.services.PostReceiveQueue;
+import com.espritgit.demo.services.RefSnapshotService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jgit.http.server.resolver.DefaultReceivePackFactory;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceivePack;
+import org.eclipse.jgit.transport.resolver.ReceivePackFactory;
+import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
+import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Creates the {@link ReceivePack} of each push served by the GitServlet.
+ * <p>
+ * Pushes larger than {@code git.receive-pack.max-pack-bytes}, or carrying an object larger than
+ * {@code git.receive-pack.max-object-bytes}, are aborted while the pack is being read, before it takes up more
+ * disk or memory. Receiving and indexing packs runs concurrently, also for pushes to the same repository; only the
+ * ref updates that follow are serialized per repository, so concurrent pushes queue for a short lock instead of
+ * racing each other's lock files. A push that cannot get the lock within {@code git.receive-pack.ref-lock-timeout-ms}
+ * has its ref updates rejected.
+ * <p>
+ * Once the refs are updated the ref snapshot is dropped right away, so the next fetch sees the push; everything
+ * else is handed to the {@link PostReceiveQueue} and does not delay the push response.
+ */
+@Component
+public class GitReceivePackFactory implements ReceivePackFactory<HttpServletRequest> {
+
+    @Value("${git.receive-pack.max-pack-bytes:0}")
+    private long maxPackBytes;
+
+    @Value("${git.receive-pack.max-object-bytes:0}")
+    private long maxObjectBytes;
+
+    @Value("${git.receive-pack.ref-lock-timeout-ms:30000}")
+    private long refLockTimeoutMs;
+
+    private final DefaultReceivePackFactory defaultFactory = new DefaultReceivePackFactory();
+    private final RefSnapshotService refSnapshotService;
+    private final PostReceiveQueue postReceiveQueue;
+    private final GitMetrics gitMetrics;
+
+    private final Map<Path, ReentrantLock> refLocks = new ConcurrentHashMap<>();
+    // Lock taken by the pre-receive hook of the push running on this thread, see RefUpdateLockFilter
+    private final ThreadLocal<ReentrantLock> heldLock = new ThreadLocal<>();
+
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong lockWaits = new AtomicLong();
+    private final AtomicLong lockWaitMillis = new AtomicLong();
+    private final AtomicLong lockTimeouts = new AtomicLong();
+
+    @Autowired
+    public GitReceivePackFactory(RefSnapshotService refSnapshotService, PostReceiveQueue postReceiveQueue,
+                                 GitMetrics gitMetrics) {
+        this.refSnapshotService = refSnapshotService;
+        this.postReceiveQueue = postReceiveQueue;
+        this.gitMetrics = gitMetrics;
+    }
+
+    @Override
+    public ReceivePack create(HttpServletRequest request, Repository repository)
+            throws ServiceNotEnabledException, ServiceNotAuthorizedException {
+        // Keeps the http.receivepack switch and the authenticated-user check of the default factory
+        ReceivePack receivePack = defaultFactory.create(request, repository);
+        if (maxPackBytes > 0) {
+            receivePack.setMaxPackSizeLimit(maxPackBytes);
+        }
+        if (maxObjectBytes > 0) {
+            receivePack.setMaxObjectSizeLimit(maxObjectBytes);
+        }
+        Path gitDir = repository.getDirectory().toPath().toAbsolutePath().normalize();
+        receivePack.setPreReceiveHook((rp, commands) -> lockRefs(gitDir, commands));
+        receivePack.setPostReceiveHook((rp, commands) -> {
+            try {
+                refSnapshotService.invalidate(gitDir);
+            } finally {
+                releaseRefLock();
+            }
+            pushes.incrementAndGet();
+            gitMetrics.recordReceive(rp.getRepository(), rp.getReceivedPackStatistics());
+            postReceiveQueue.publish(new PostReceiveQueue.PushEvent(gitDir, List.copyOf(commands), System.currentTimeMillis()));
+        });
+        return receivePack;
+    }
+
+    /**
+     * Takes the repository's ref update lock for the commands about to be executed, or rejects them if it stays
+     * busy.
+     */
+    private void lockRefs(Path gitDir, Collection<ReceiveCommand> commands) {
+        if (commands.isEmpty() || heldLock.get() != null) {
+            return;
+        }
+        ReentrantLock lock = refLocks.computeIfAbsent(gitDir, key -> new ReentrantLock(true));
+        if (!lock.tryLock()) {
+            lockWaits.incrementAndGet();
+            long start = System.currentTimeMillis();
+            boolean locked;
+            try {
+                locked = lock.tryLock(refLockTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                locked = false;
+            }
+            lockWaitMillis.addAndGet(System.currentTimeMillis() - start);
+            if (!locked) {
+                lockTimeouts.incrementAndGet();
+                for (ReceiveCommand command : commands) {
+                    command.setResult(ReceiveCommand.Result.REJECTED_OTHER_REASON,
+                            "repository is busy with another push, try again");
+                }
+                return;
+            }
+        }
+        heldLock.set(lock);
+    }
+
+    /**
+     * Releases the ref update lock taken by the push on this thread, if any. Called by the post-receive hook, and
+     * by {@link RefUpdateLockFilter} for pushes that failed before reaching it.
+     */
+    void releaseRefLock() {
+        ReentrantLock lock = heldLock.get();
+        if (lock != null) {
+            heldLock.remove();
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxPackBytes", maxPackBytes);
+        stats.put("maxObjectBytes", maxObjectBytes);
+        stats.put("pushes", pushes.get());
+        stats.put("refLockWaits", lockWaits.get());
+        stats.put("refLockWaitMillis", lockWaitMillis.get());
+        stats.put("refLockTimeouts", lockTimeouts.get());
+        stats.put("postReceive", postReceiveQueue.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,38 @@
+package com.espritgit.demo.gitserver;
+
+import com.espritgit.demo.services.GitMetrics;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.http.server.ServletUtils;
+
+import java.io.IOException;
+
+/**
+ * Times GitServlet upload-pack / receive-pack requests per repository, including requests answered from the
+ * {@link UploadPackCache}.
+ */
+public class GitRequestMetricsFilter implements Filter {
+
+    private final GitMetrics gitMetrics;
+    private final String service;
+
+    public GitRequestMetricsFilter(GitMetrics gitMetrics, String service) {
+        this.gitMetrics = gitMetrics;
+        this.service = service;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            gitMetrics.recordRequest(service, ServletUtils.getRepository(request),
+                    ((HttpServletResponse) response).getStatus(), System.nanoTime() - start);
+        }
+    }
+}
@@ -1,34 +1,34 @@
-package com.example.jgitpersistentdemo.gitserver;
+package com.espritgit.demo.gitserver;
 
+import com.espritgit.demo.services.RepositoryCache;
+import com.espritgit.demo.services.RepositoryInfo;
+import com.espritgit.demo.services.RepositoryRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.transport.resolver.RepositoryResolver;
 import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
 import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
 public class GitServerRepositoryResolver implements RepositoryResolver<HttpServletRequest> {
 
     private static final Logger logger = LoggerFactory.getLogger(GitServerRepositoryResolver.class);
-    private final String repositoriesBasePath;
+    private final RepositoryCache repositoryCache;
+    private final RepositoryRegistry repositoryRegistry;
 
-    public GitServerRepositoryResolver(String repositoriesBasePath) {
-        this.repositoriesBasePath = repositoriesBasePath;
+    public GitServerRepositoryResolver(RepositoryCache repositoryCache, RepositoryRegistry repositoryRegistry) {
+        this.repositoryCache = repositoryCache;
+        this.repositoryRegistry = repositoryRegistry;
     }
 
     @Override
     public Repository open(HttpServletRequest request, String name)
             throws ServiceNotAuthorizedException, ServiceNotEnabledException {
-        // The 'name' will be like "my-repo.git" or "group/my-repo.git"
-        // We need to map this to a path under repositoriesBasePath
+        // The 'name' will be like "my-repo.git"; the registry maps it to a repository directly under the base path
 
         if (name.endsWith(".git")) {
             name = name.substring(0, name.length() - ".git".length());
@@ -41,34 +41,20 @@ public class GitServerRepositoryResolver implements RepositoryResolver<HttpServl
             throw new ServiceNotEnabledException("Invalid repository name: " + name);
         }
 
-        Path repoPath = Paths.get(repositoriesBasePath, name);
-        File gitDir = repoPath.toFile(); // JGit expects path to the .git directory OR the worktree
-
-        logger.debug("Attempting to open repository: {} -> {}", name, repoPath.toAbsolutePath());
-
-        if (!Files.exists(repoPath) || !Files.isDirectory(repoPath)) {
-            logger.warn("Repository not found at path: {}", repoPath.toAbsolutePath());
+        // Map lookup in the registry instead of probing HEAD/objects/refs on every request
+        RepositoryInfo info = repositoryRegistry.get(name);
+        if (info == null) {
+            logger.warn("Repository not found: {}", name);
             throw new ServiceNotEnabledException("Repository not found: " + name);
         }
-
-        // Check if it's a valid git repository (contains .git dir or is a bare repo)
-        File dotGitDir = new File(gitDir, ".git");
-        boolean isBare = new File(gitDir, "HEAD").exists() && new File(gitDir, "objects").exists() && new File(gitDir, "refs").exists();
-
-
-        if (!dotGitDir.exists() && !isBare) {
-            logger.warn("Path is not a valid Git repository (no .git dir or not bare): {}", repoPath.toAbsolutePath());
-            throw new ServiceNotEnabledException("Not a valid Git repository: " + name);
-        }
+        Path repoPath = info.path();
+        logger.debug("Attempting to open repository: {} -> {}", name, repoPath);
 
         try {
-            // FileRepositoryBuilder can open both working tree and .git directory paths
-            Repository repository = new FileRepositoryBuilder()
-                    .setGitDir(dotGitDir.exists() ? dotGitDir : gitDir) // Use .git if exists, else assume bare
-                    .readEnvironment() // Scan environment GIT_DIR, etc.
-                    .findGitDir()      // Scan up the tree for .git
-                    .build();
-            logger.info("Successfully opened repository: {}", repository.getDirectory());
+            // Shared with GitService; the GitServlet closes the repository after each request,
+            // which only releases this request's reference on the cached handle.
+            Repository repository = repositoryCache.open(repoPath);
+            logger.debug("Successfully opened repository: {}", repository.getDirectory());
             return repository;
         } catch (IOException e) {
             logger.error("Failed to open repository {}: {}", name, e.getMessage());
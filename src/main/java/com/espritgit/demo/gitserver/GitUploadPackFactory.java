@@ -0,0 +1,298 @@
+package com.espritgit.demo.gitserver;
+
+import com.espritgit.demo.services.GitMetrics;
+import com.espritgit.demo.services.RefSnapshotService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.FetchV2Request;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.LsRefsV2Request;
+import org.eclipse.jgit.transport.PreUploadHook;
+import org.eclipse.jgit.transport.ProtocolV2Hook;
+import org.eclipse.jgit.transport.ServiceMayNotContinueException;
+import org.eclipse.jgit.transport.TransferConfig;
+import org.eclipse.jgit.transport.UploadPack;
+import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the {@link UploadPack} of each fetch / clone served by the GitServlet, with protocol v2, partial clone
+ * filters and shallow fetches governed by a policy.
+ * <p>
+ * Defaults come from {@code git.upload-pack.*}. A repository can override them in its own git config: the
+ * standard {@code protocol.version}, {@code uploadpack.allowFilter} and {@code uploadpack.allowSidebandAll} keys,
+ * and {@code gitserver.allowedFilters} (blob:none, blob:limit, tree:depth), {@code gitserver.allowShallow} and
+ * {@code gitserver.maxDepth} for what JGit has no setting for. Allowing filters also allows fetching objects
+ * reachable from the advertised refs by id, which partial clones need to fetch missing blobs later.
+ * <p>
+ * Shallow fetches by date or by ref ({@code deepen-since} / {@code deepen-not}) are not visible to JGit's hooks,
+ * so {@link ShallowCutoffFilter} checks them in the request body, for protocol v0 and v2 alike.
+ * <p>
+ * With protocol v2 clients only ask for the refs they care about ({@code ref-prefix}), so a fetch of one branch
+ * no longer receives the full advertisement of a repository with many refs.
+ */
+@Component
+public class GitUploadPackFactory implements UploadPackFactory<HttpServletRequest> {
+
+    static final String CONFIG_SECTION = "gitserver";
+    static final String CONFIG_KEY_ALLOWED_FILTERS = "allowedFilters";
+    static final String CONFIG_KEY_ALLOW_SHALLOW = "allowShallow";
+    static final String CONFIG_KEY_MAX_DEPTH = "maxDepth";
+
+    private static final String FILTER_BLOB_NONE = "blob:none";
+    private static final String FILTER_BLOB_LIMIT = "blob:limit";
+    private static final String FILTER_TREE_DEPTH = "tree:depth";
+
+    @Value("${git.upload-pack.protocol-v2:true}")
+    private boolean protocolV2;
+
+    @Value("${git.upload-pack.allow-filter:true}")
+    private boolean allowFilter;
+
+    @Value("${git.upload-pack.allowed-filters:blob:none,blob:limit,tree:depth}")
+    private String allowedFilters;
+
+    @Value("${git.upload-pack.allow-shallow:true}")
+    private boolean allowShallow;
+
+    @Value("${git.upload-pack.max-depth:0}")
+    private int maxDepth;
+
+    @Value("${git.upload-pack.sideband-all:true}")
+    private boolean sidebandAll;
+
+    private final RefSnapshotService refSnapshotService;
+    private final GitMetrics gitMetrics;
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong protocolV2Fetches = new AtomicLong();
+    private final AtomicLong lsRefs = new AtomicLong();
+    private final AtomicLong lsRefsWithPrefixes = new AtomicLong();
+    private final AtomicLong shallowFetches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Map<String, AtomicLong> filteredFetches = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GitUploadPackFactory(RefSnapshotService refSnapshotService, GitMetrics gitMetrics) {
+        this.refSnapshotService = refSnapshotService;
+        this.gitMetrics = gitMetrics;
+    }
+
+    /**
+     * Effective policy of one repository.
+     */
+    record Policy(boolean protocolV2, boolean allowFilter, Set<String> allowedFilters, boolean allowShallow,
+                  int maxDepth, boolean sidebandAll) {
+
+        /**
+         * Stable text form, part of the {@link UploadPackCache} key: responses replayed from the cache skip the
+         * policy checks, so an entry must not outlive the policy it was produced under.
+         */
+        String cacheKey() {
+            return "v2=" + protocolV2 + " filter=" + allowFilter + " filters=" + new TreeSet<>(allowedFilters)
+                    + " shallow=" + allowShallow + " depth=" + maxDepth + " sideband-all=" + sidebandAll;
+        }
+    }
+
+    @Override
+    public UploadPack create(HttpServletRequest request, Repository repository) throws ServiceNotEnabledException {
+        // Same switch as DefaultUploadPackFactory
+        if (!repository.getConfig().getBoolean("http", "uploadpack", true)) {
+            throw new ServiceNotEnabledException();
+        }
+        Policy policy = policy(repository);
+        UploadPack uploadPack = new UploadPack(repository);
+        uploadPack.setTransferConfig(transferConfig(repository, policy));
+        try {
+            // Advertise from the cached ref snapshot instead of scanning all refs on every fetch
+            uploadPack.setAdvertisedRefs(refSnapshotService.snapshot(repository).asMap());
+        } catch (IOException e) {
+            // Leave it to UploadPack to read the refs itself
+        }
+        uploadPack.setPreUploadHook(new PolicyHook(policy));
+        uploadPack.setProtocolV2Hook(new ProtocolV2Hook() {
+            @Override
+            public void onLsRefs(LsRefsV2Request req) {
+                lsRefs.incrementAndGet();
+                if (!req.getRefPrefixes().isEmpty()) {
+                    lsRefsWithPrefixes.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void onFetch(FetchV2Request req) {
+                protocolV2Fetches.incrementAndGet();
+            }
+        });
+        // Per-repository pack statistics (objects, bytes, time counting / compressing / writing)
+        uploadPack.setPostUploadHook(stats -> gitMetrics.recordUpload(repository, stats));
+        return uploadPack;
+    }
+
+    Policy policy(Repository repository) {
+        Config config = repository.getConfig();
+        String[] filters = config.getStringList(CONFIG_SECTION, null, CONFIG_KEY_ALLOWED_FILTERS);
+        String filterList = filters.length > 0 ? String.join(",", filters) : allowedFilters;
+        String version = config.getString(ConfigConstants.CONFIG_PROTOCOL_SECTION, null, ConfigConstants.CONFIG_KEY_VERSION);
+        return new Policy(
+                version != null ? version.trim().equals("2") : protocolV2,
+                config.getBoolean("uploadpack", "allowfilter", allowFilter),
+                Arrays.stream(filterList.split(","))
+                        .map(String::trim)
+                        .filter(name -> !name.isEmpty())
+                        .map(name -> name.toLowerCase(Locale.ROOT))
+                        .collect(Collectors.toUnmodifiableSet()),
+                config.getBoolean(CONFIG_SECTION, CONFIG_KEY_ALLOW_SHALLOW, allowShallow),
+                config.getInt(CONFIG_SECTION, CONFIG_KEY_MAX_DEPTH, maxDepth),
+                config.getBoolean("uploadpack", "allowsidebandall", sidebandAll));
+    }
+
+    /**
+     * The repository's transfer settings with the policy applied on top.
+     */
+    private static TransferConfig transferConfig(Repository repository, Policy policy) {
+        Config config = new Config(repository.getConfig());
+        config.setString(ConfigConstants.CONFIG_PROTOCOL_SECTION, null, ConfigConstants.CONFIG_KEY_VERSION,
+                policy.protocolV2() ? "2" : "0");
+        config.setBoolean("uploadpack", null, "allowfilter", policy.allowFilter());
+        config.setBoolean("uploadpack", null, "allowsidebandall", policy.sidebandAll());
+        if (policy.allowFilter()) {
+            // Partial clones fetch the objects they left out by id later on
+            config.setBoolean("uploadpack", null, "allowreachablesha1inwant", true);
+        }
+        return new TransferConfig(config);
+    }
+
+    /**
+     * Kind of a partial clone filter, as named in {@code allowedFilters}, or null for no filter.
+     */
+    static String filterKind(FilterSpec filter) {
+        if (filter == null || filter.isNoOp()) {
+            return null;
+        }
+        if (filter.getTreeDepthLimit() >= 0) {
+            return FILTER_TREE_DEPTH;
+        }
+        if (!filter.allowsType(Constants.OBJ_BLOB)) {
+            return FILTER_BLOB_NONE;
+        }
+        if (filter.getBlobLimit() >= 0) {
+            return filter.getBlobLimit() == 0 ? FILTER_BLOB_NONE : FILTER_BLOB_LIMIT;
+        }
+        return "other";
+    }
+
+    /**
+     * Whether the policy lets clients cut history off by date or by ref: only when shallow fetches are allowed
+     * without a depth limit, since the number of commits they cut off at is not known up front.
+     */
+    static boolean allowsShallowCutoff(Policy policy) {
+        return policy.allowShallow() && policy.maxDepth() <= 0;
+    }
+
+    /**
+     * Rejects {@code deepen-since} / {@code deepen-not} (shallow by date or by ref) unless
+     * {@link #allowsShallowCutoff} says otherwise. Called by {@link ShallowCutoffFilter}.
+     */
+    void checkShallowCutoff(Policy policy, boolean since, boolean not) throws ServiceMayNotContinueException {
+        if (!since && !not) {
+            return;
+        }
+        String kind = since ? "--shallow-since" : "--shallow-exclude";
+        if (!policy.allowShallow()) {
+            rejected.incrementAndGet();
+            throw new ServiceMayNotContinueException("Shallow fetches are not allowed for this repository.");
+        }
+        if (policy.maxDepth() > 0) {
+            rejected.incrementAndGet();
+            throw new ServiceMayNotContinueException("Shallow fetches are limited to depth " + policy.maxDepth()
+                    + " for this repository; use --depth instead of " + kind + ".");
+        }
+        shallowFetches.incrementAndGet();
+    }
+
+    /**
+     * Checks the negotiated request against the policy just before the pack is sent. Only the depth of
+     * {@code deepen <n>} is visible here; shallow-by-date and shallow-by-ref are checked by
+     * {@link ShallowCutoffFilter}.
+     */
+    private final class PolicyHook implements PreUploadHook {
+
+        private final Policy policy;
+
+        PolicyHook(Policy policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void onBeginNegotiateRound(UploadPack up, Collection<? extends ObjectId> wants, int cntOffered) {
+        }
+
+        @Override
+        public void onEndNegotiateRound(UploadPack up, Collection<? extends ObjectId> wants, int cntCommon,
+                                        int cntNotFound, boolean ready) {
+        }
+
+        @Override
+        public void onSendPack(UploadPack up, Collection<? extends ObjectId> wants, Collection<? extends ObjectId> haves)
+                throws ServiceMayNotContinueException {
+            fetches.incrementAndGet();
+            String kind = filterKind(up.getFilterSpec());
+            if (kind != null) {
+                if (!policy.allowedFilters().contains(kind)) {
+                    rejected.incrementAndGet();
+                    throw new ServiceMayNotContinueException("Filter " + kind + " is not allowed for this repository.");
+                }
+                filteredFetches.computeIfAbsent(kind, key -> new AtomicLong()).incrementAndGet();
+            }
+            int depth = up.getDepth();
+            if (depth > 0) {
+                if (!policy.allowShallow() || (policy.maxDepth() > 0 && depth > policy.maxDepth())) {
+                    rejected.incrementAndGet();
+                    throw new ServiceMayNotContinueException(policy.allowShallow()
+                            ? "Shallow fetches are limited to depth " + policy.maxDepth() + " for this repository."
+                            : "Shallow fetches are not allowed for this repository.");
+                }
+                shallowFetches.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("protocolV2", protocolV2);
+        stats.put("allowFilter", allowFilter);
+        stats.put("allowedFilters", Arrays.stream(allowedFilters.split(",")).map(String::trim).toList());
+        stats.put("allowShallow", allowShallow);
+        stats.put("maxDepth", maxDepth);
+        stats.put("fetches", fetches.get());
+        stats.put("protocolV2Fetches", protocolV2Fetches.get());
+        stats.put("lsRefs", lsRefs.get());
+        stats.put("lsRefsWithPrefixes", lsRefsWithPrefixes.get());
+        stats.put("shallowFetches", shallowFetches.get());
+        Map<String, Long> filtered = new LinkedHashMap<>();
+        filteredFetches.forEach((kind, count) -> filtered.put(kind, count.get()));
+        stats.put("filteredFetches", filtered);
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+}
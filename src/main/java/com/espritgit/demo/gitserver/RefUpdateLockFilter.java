@@ -0,0 +1,31 @@
+package com.espritgit.demo.gitserver;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Makes sure a receive-pack request never leaves its repository's ref update lock held, e.g. when applying the
+ * ref updates failed and the post-receive hook that normally releases it did not run.
+ */
+public class RefUpdateLockFilter implements Filter {
+
+    private final GitReceivePackFactory receivePackFactory;
+
+    public RefUpdateLockFilter(GitReceivePackFactory receivePackFactory) {
+        this.receivePackFactory = receivePackFactory;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            receivePackFactory.releaseRefLock();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.espritgit.demo.gitserver;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.http.server.GitSmartHttpTools;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.ServiceMayNotContinueException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Upload-pack filter that enforces the shallow fetch policy of {@link GitUploadPackFactory} on
+ * {@code deepen-since} and {@code deepen-not} (git's {@code --shallow-since} / {@code --shallow-exclude}).
+ * <p>
+ * JGit's upload-pack hooks see the depth of {@code deepen <n>} but not these two, in neither protocol version, so
+ * the request lines are read here before JGit gets a replay of them. Repositories whose policy allows them are
+ * passed straight through without buffering.
+ */
+public class ShallowCutoffFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShallowCutoffFilter.class);
+
+    // Request lines of one negotiation round, haves included for protocol v2
+    private static final int MAX_REQUEST_BYTES = 8 * 1024 * 1024;
+
+    private final GitUploadPackFactory uploadPackFactory;
+
+    public ShallowCutoffFilter(GitUploadPackFactory uploadPackFactory) {
+        this.uploadPackFactory = uploadPackFactory;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        Repository repository = ServletUtils.getRepository(request);
+        if (!"POST".equals(request.getMethod()) || repository == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        GitUploadPackFactory.Policy policy = uploadPackFactory.policy(repository);
+        if (GitUploadPackFactory.allowsShallowCutoff(policy)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        InputStream in = request.getInputStream();
+        byte[] body = in.readNBytes(MAX_REQUEST_BYTES + 1);
+        if (body.length > MAX_REQUEST_BYTES) {
+            GitSmartHttpTools.sendError(request, response, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                    "Request too large.");
+            return;
+        }
+        byte[] lines;
+        try {
+            lines = UploadPackCacheFilter.decode(request, body);
+        } catch (IOException e) {
+            lines = null; // Not valid gzip; upload-pack will fail to read it as well
+        }
+        if (lines != null) {
+            try {
+                uploadPackFactory.checkShallowCutoff(policy, hasLine(lines, "deepen-since "), hasLine(lines, "deepen-not "));
+            } catch (ServiceMayNotContinueException e) {
+                logger.debug("Rejected shallow fetch of {}: {}", repository.getDirectory(), e.getMessage());
+                GitSmartHttpTools.sendError(request, response, e.getStatusCode(), e.getMessage());
+                return;
+            }
+        }
+        chain.doFilter(new UploadPackCacheFilter.ReplayRequest(request, new ByteArrayInputStream(body)), response);
+    }
+
+    /**
+     * Whether a pkt-line encoded request has a line starting with {@code prefix}. Stops at the first malformed
+     * packet, which upload-pack rejects on its own.
+     */
+    static boolean hasLine(byte[] body, String prefix) {
+        byte[] expected = prefix.getBytes(StandardCharsets.US_ASCII);
+        int pos = 0;
+        while (pos + 4 <= body.length) {
+            int length;
+            try {
+                length = Integer.parseInt(new String(body, pos, 4, StandardCharsets.US_ASCII), 16);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (length < 4) {
+                pos += 4; // flush, delimiter or response-end packet
+                continue;
+            }
+            if (pos + length > body.length) {
+                return false;
+            }
+            if (length - 4 >= expected.length
+                    && Arrays.equals(body, pos + 4, pos + 4 + expected.length, expected, 0, expected.length)) {
+                return true;
+            }
+            pos += length;
+        }
+        return false;
+    }
+}
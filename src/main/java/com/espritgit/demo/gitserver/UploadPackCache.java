@@ -0,0 +1,268 @@
+package com.espritgit.demo.gitserver;
+
+import com.espritgit.demo.services.RefSnapshotService;
+import jakarta.annotation.PostConstruct;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of complete upload-pack responses, used by {@link UploadPackCacheFilter}.
+ * <p>
+ * Entries are keyed on the repository, a digest of all its refs, the repository's upload-pack policy (see
+ * {@link GitUploadPackFactory}) and the normalised upload-pack request (wants and capabilities; requests with haves
+ * or shallow commits are never cached), so a ref update or a policy change naturally produces new keys. Entries of a repository are also dropped eagerly after a push. The total size is bounded; the least
+ * recently used entries are deleted first.
+ */
+@Component
+public class UploadPackCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadPackCache.class);
+
+    private static final String ENTRY_SUFFIX = ".pack";
+    static final String DEFAULT_DIR = ".upload-pack-cache";
+
+    @Value("${git.repositories.base-path}")
+    private String repositoriesBasePath;
+
+    @Value("${git.upload-pack-cache.enabled:true}")
+    private boolean enabled;
+
+    // Empty for <base-path>/.upload-pack-cache
+    @Value("${git.upload-pack-cache.directory:}")
+    private String directory;
+
+    @Value("${git.upload-pack-cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    @Value("${git.upload-pack-cache.max-request-bytes:1048576}")
+    private int maxRequestBytes;
+
+    @Value("${git.upload-pack-cache.inflight-wait-ms:120000}")
+    private long inflightWaitMs;
+
+    private Path cacheDir;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Map<String, CountDownLatch> inflight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private final RefSnapshotService refSnapshotService;
+    private final GitUploadPackFactory uploadPackFactory;
+
+    @Autowired
+    public UploadPackCache(RefSnapshotService refSnapshotService, GitUploadPackFactory uploadPackFactory) {
+        this.refSnapshotService = refSnapshotService;
+        this.uploadPackFactory = uploadPackFactory;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        cacheDir = (directory.isBlank() ? Paths.get(repositoriesBasePath).resolve(DEFAULT_DIR) : Paths.get(directory))
+                .toAbsolutePath().normalize();
+        Files.createDirectories(cacheDir);
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            stream.forEach(path -> {
+                if (path.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+                    totalBytes.addAndGet(path.toFile().length());
+                } else {
+                    path.toFile().delete(); // Leftover temp file from an interrupted store
+                }
+            });
+        }
+        logger.info("Upload-pack cache at {} ({} bytes in use, limit {})", cacheDir, totalBytes.get(), maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    public long getInflightWaitMs() {
+        return inflightWaitMs;
+    }
+
+    /**
+     * Builds the cache key for a request against the current state of the repository's refs, as cached by
+     * {@link RefSnapshotService}, and its current upload-pack policy.
+     */
+    public String key(Repository repository, String normalizedRequest) throws IOException {
+        MessageDigest digest = sha256();
+        for (Ref ref : refSnapshotService.snapshot(repository).asMap().values()) {
+            digest.update(ref.getName().getBytes(StandardCharsets.UTF_8));
+            ObjectId id = ref.getObjectId();
+            if (id != null) {
+                digest.update(id.name().getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        digest.update(uploadPackFactory.policy(repository).cacheKey().getBytes(StandardCharsets.UTF_8));
+        digest.update(normalizedRequest.getBytes(StandardCharsets.UTF_8));
+        return repositoryPrefix(repository.getDirectory().toPath()) + "-" + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the cached response for the key, or null on a miss.
+     */
+    public Path lookup(String key) {
+        Path entry = cacheDir.resolve(key + ENTRY_SUFFIX);
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis())); // LRU bookkeeping
+        } catch (IOException e) {
+            return null; // Evicted concurrently
+        }
+        return entry;
+    }
+
+    /**
+     * Registers the caller as the producer of a key. Returns null if the caller should produce the response, or the
+     * latch of the request already producing it.
+     */
+    CountDownLatch claim(String key, CountDownLatch latch) {
+        return inflight.putIfAbsent(key, latch);
+    }
+
+    void release(String key, CountDownLatch latch) {
+        inflight.remove(key, latch);
+        latch.countDown();
+    }
+
+    Path newTempFile() throws IOException {
+        return Files.createTempFile(cacheDir, "upload-pack-", ".tmp");
+    }
+
+    /**
+     * Publishes a fully written response under its key. If an identical request already published one, that entry
+     * is kept and counted once.
+     */
+    synchronized void store(String key, Path tempFile) throws IOException {
+        long size = Files.size(tempFile);
+        Path entry = cacheDir.resolve(key + ENTRY_SUFFIX);
+        if (size > maxBytes || Files.exists(entry)) {
+            Files.deleteIfExists(tempFile);
+            return;
+        }
+        Files.move(tempFile, entry, StandardCopyOption.ATOMIC_MOVE);
+        totalBytes.addAndGet(size);
+        stores.incrementAndGet();
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Drops all entries of a repository, e.g. after a push changed its refs.
+     */
+    public void invalidate(Path gitDir) {
+        String prefix = repositoryPrefix(gitDir) + "-";
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            stream.filter(path -> path.getFileName().toString().startsWith(prefix)).forEach(this::delete);
+        } catch (IOException e) {
+            logger.warn("Could not invalidate upload-pack cache entries for {}: {}", gitDir, e.getMessage());
+        }
+    }
+
+    void recordHit(long bytes) {
+        hits.incrementAndGet();
+        bytesServed.addAndGet(bytes);
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordBypass() {
+        bypassed.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("directory", cacheDir.toString());
+        stats.put("bytes", totalBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("bypassed", bypassed.get());
+        stats.put("stores", stores.get());
+        stats.put("evictions", evictions.get());
+        stats.put("bytesServedFromCache", bytesServed.get());
+        return stats;
+    }
+
+    private synchronized void evict() {
+        try (Stream<Path> stream = Files.list(cacheDir)) {
+            List<Path> entries = stream
+                    .filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+                    .sorted(Comparator.comparingLong(path -> path.toFile().lastModified()))
+                    .toList();
+            for (Path entry : entries) {
+                if (totalBytes.get() <= maxBytes) {
+                    break;
+                }
+                delete(entry);
+                evictions.incrementAndGet();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not evict upload-pack cache entries: {}", e.getMessage());
+        }
+    }
+
+    private void delete(Path entry) {
+        long size = entry.toFile().length();
+        try {
+            if (Files.deleteIfExists(entry)) {
+                totalBytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete upload-pack cache entry {}: {}", entry, e.getMessage());
+        }
+    }
+
+    private static String repositoryPrefix(Path gitDir) {
+        byte[] hash = sha256().digest(gitDir.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash, 0, 8);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
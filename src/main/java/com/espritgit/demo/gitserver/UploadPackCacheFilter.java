@@ -0,0 +1,440 @@
+package com.espritgit.demo.gitserver;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Upload-pack filter that answers repeated identical clone requests from the {@link UploadPackCache}.
+ * <p>
+ * Only negotiation-free requests are cacheable: wants and capabilities followed by {@code done}, without any
+ * {@code have} or {@code shallow} lines (protocol v0/v1 stateless RPC and protocol v2 {@code command=fetch}).
+ * Everything else passes straight through to JGit. A miss is streamed to the client while being written to a
+ * temporary file, which is published once the response has completed. Concurrent identical misses wait for the
+ * first one instead of packing the same objects in parallel. Hits are sent with the container's sendfile support
+ * when available, so the pack is copied to the socket by the kernel.
+ */
+public class UploadPackCacheFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadPackCacheFilter.class);
+
+    private static final String RESULT_CONTENT_TYPE = "application/x-git-upload-pack-result";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final UploadPackCache cache;
+
+    public UploadPackCacheFilter(UploadPackCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        if (!cache.isEnabled() || !"POST".equals(request.getMethod())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // Buffer the request (wants and capabilities only, so small) and hand JGit a replay of it
+        InputStream in = request.getInputStream();
+        byte[] body = in.readNBytes(cache.getMaxRequestBytes() + 1);
+        if (body.length > cache.getMaxRequestBytes()) {
+            cache.recordBypass();
+            chain.doFilter(new ReplayRequest(request, new SequenceInputStream(new ByteArrayInputStream(body), in)), response);
+            return;
+        }
+        ReplayRequest replay = new ReplayRequest(request, new ByteArrayInputStream(body));
+
+        String normalized = normalizeRequest(decode(request, body), request.getHeader("Git-Protocol"));
+        Repository repository = ServletUtils.getRepository(request);
+        if (normalized == null || repository == null) {
+            cache.recordBypass();
+            chain.doFilter(replay, response);
+            return;
+        }
+        String key = cache.key(repository, normalized);
+
+        Path cached = cache.lookup(key);
+        if (cached != null) {
+            serveCached(request, response, cached);
+            return;
+        }
+
+        CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch producer = cache.claim(key, latch);
+        if (producer == null && (cached = cache.lookup(key)) != null) {
+            // Stored by the previous producer between our lookup and claim
+            cache.release(key, latch);
+            serveCached(request, response, cached);
+            return;
+        }
+        if (producer != null) {
+            // An identical request is packing right now; reuse its result if it finishes in time
+            try {
+                producer.await(cache.getInflightWaitMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cached = cache.lookup(key);
+            if (cached != null) {
+                serveCached(request, response, cached);
+            } else {
+                cache.recordMiss();
+                chain.doFilter(replay, response);
+            }
+            return;
+        }
+
+        cache.recordMiss();
+        Path tempFile = null;
+        try {
+            tempFile = cache.newTempFile();
+            try (TeeResponse tee = new TeeResponse(response, tempFile)) {
+                chain.doFilter(replay, tee);
+                tee.flushBuffer();
+                tee.close();
+                if (tee.isComplete() && isCompleteResponse(tempFile)) {
+                    cache.store(key, tempFile);
+                    tempFile = null;
+                }
+            }
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile);
+            }
+            cache.release(key, latch);
+        }
+    }
+
+    private void serveCached(HttpServletRequest request, HttpServletResponse response, Path cached) throws IOException {
+        long size = Files.size(cached);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(RESULT_CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLengthLong(size);
+        cache.recordHit(size);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, cached.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            channel.transferTo(0, size, Channels.newChannel(out));
+            out.flush();
+        }
+    }
+
+    /**
+     * Checks that a captured response is a complete, error-free pkt-line stream. JGit reports failures after the
+     * response has been committed in-band (an {@code ERR} line or side-band channel 3) with status 200, and a
+     * truncated pack must never be replayed.
+     */
+    static boolean isCompleteResponse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+            boolean lastWasFlush = false;
+            ByteBuffer header = ByteBuffer.allocate(8);
+            while (pos < size) {
+                header.clear();
+                header.limit((int) Math.min(8, size - pos));
+                channel.read(header, pos);
+                if (header.position() < 4) {
+                    return false;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(new String(header.array(), 0, 4, StandardCharsets.US_ASCII), 16);
+                } catch (NumberFormatException e) {
+                    return false; // Raw pack without side-band, cannot be validated
+                }
+                if (length < 4) {
+                    lastWasFlush = length == 0;
+                    pos += 4;
+                    continue;
+                }
+                if (header.position() > 4 && header.array()[4] == 3) {
+                    return false; // Side-band error channel
+                }
+                if (header.position() >= 8 && "ERR ".equals(new String(header.array(), 4, 4, StandardCharsets.US_ASCII))) {
+                    return false;
+                }
+                lastWasFlush = false;
+                pos += length;
+            }
+            return pos == size && lastWasFlush;
+        }
+    }
+
+    static byte[] decode(HttpServletRequest request, byte[] body) throws IOException {
+        String encoding = request.getHeader("Content-Encoding");
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            try (InputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                return gunzip.readAllBytes();
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Reduces an upload-pack request to the parts that determine the response, or returns null if the response
+     * depends on negotiation state and must not be cached. Agent and session id are dropped so that different
+     * client builds share entries.
+     */
+    static String normalizeRequest(byte[] body, String gitProtocol) {
+        List<String> lines = new ArrayList<>();
+        int pos = 0;
+        while (pos + 4 <= body.length) {
+            int length;
+            try {
+                length = Integer.parseInt(new String(body, pos, 4, StandardCharsets.US_ASCII), 16);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length < 4) {
+                lines.add(String.format("%04x", length)); // flush, delimiter or response-end packet
+                pos += 4;
+                continue;
+            }
+            if (pos + length > body.length) {
+                return null;
+            }
+            String line = new String(body, pos + 4, length - 4, StandardCharsets.UTF_8);
+            pos += length;
+            if (line.endsWith("\n")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.startsWith("have ") || line.startsWith("shallow ")) {
+                return null;
+            }
+            List<String> tokens = new ArrayList<>();
+            for (String token : line.split(" ")) {
+                if (!token.startsWith("agent=") && !token.startsWith("session-id=")) {
+                    tokens.add(token);
+                }
+            }
+            if (!tokens.isEmpty()) {
+                lines.add(String.join(" ", tokens));
+            }
+        }
+        if (pos != body.length || !lines.contains("done")) {
+            return null;
+        }
+        if (lines.stream().anyMatch(line -> line.startsWith("command=")) && !lines.contains("command=fetch")) {
+            return null; // Protocol v2 ls-refs and friends
+        }
+        return (gitProtocol != null ? gitProtocol : "") + "\n" + String.join("\n", lines);
+    }
+
+    /**
+     * Request whose body is replayed from the bytes the filter already consumed.
+     */
+    static final class ReplayRequest extends HttpServletRequestWrapper {
+
+        private final ServletInputStream body;
+
+        ReplayRequest(HttpServletRequest request, InputStream body) {
+            super(request);
+            this.body = new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    return body.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return body.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    try {
+                        return body.available() == 0;
+                    } catch (IOException e) {
+                        return true;
+                    }
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // The replayed bytes are buffered and isReady() is always true, so the data is available now
+                    try {
+                        readListener.onDataAvailable();
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+    }
+
+    /**
+     * Response that copies everything written by upload-pack into a file as well.
+     */
+    private static final class TeeResponse extends HttpServletResponseWrapper implements AutoCloseable {
+
+        private final OutputStream file;
+        private ServletOutputStream stream;
+        private int status = HttpServletResponse.SC_OK;
+        private boolean failed;
+        private boolean closed;
+
+        TeeResponse(HttpServletResponse response, Path tempFile) throws IOException {
+            super(response);
+            this.file = new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024);
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            status = sc;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            status = sc;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            // JGit compresses the pack itself; a container-level encoding would not match the cached bytes
+            if ("Content-Encoding".equalsIgnoreCase(name)) {
+                failed = true;
+            }
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void reset() {
+            failed = true; // JGit resets the response to report an error
+            super.reset();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                ServletOutputStream client = super.getOutputStream();
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        client.write(b);
+                        copy(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        client.write(b, off, len);
+                        copy(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        client.flush();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return client.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        client.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            failed = true; // Error pages, never a pack
+            return super.getWriter();
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                file.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                logger.warn("Could not write upload-pack cache entry: {}", e.getMessage());
+            }
+        }
+
+        boolean isComplete() {
+            return !failed && status == HttpServletResponse.SC_OK && stream != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.espritgit.demo.search;
+
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram index of the files of one commit of a repository, normally the tip of its default branch.
+ * <p>
+ * The index is a list of immutable {@link TrigramSegment} files plus an {@code index.properties} manifest naming
+ * the indexed commit and its segments. A full build writes one segment with every text blob of the commit; an
+ * update to a newer commit diffs the two trees and writes one small segment with only the blobs that are new, so
+ * a push costs in proportion to what it changed. Blobs that are no longer in the tree stay in their segment but
+ * are skipped by searches, until too many segments or too many dead blobs pile up and the next update rebuilds
+ * the index in one segment.
+ * <p>
+ * Which paths hold which blob is not stored: it is read back from the commit's tree when the index is opened.
+ * Updates are expected from a single thread; searches run concurrently on an immutable snapshot.
+ */
+public final class CodeSearchIndex {
+
+    private static final String MANIFEST = "index.properties";
+    private static final String SEGMENT_SUFFIX = ".trg";
+    private static final int MAX_LINE_CHARS = 500;
+
+    private final Path dir;
+    private final long maxFileBytes;
+    private final int maxSegments;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Immutable state of the index between two updates.
+     *
+     * @param pathsByBlob Paths of each blob of the commit's tree; blobs absent here are dead.
+     * @param indexed     Blobs present in some segment.
+     */
+    private record Snapshot(ObjectId commit, List<TrigramSegment> segments, Map<ObjectId, List<String>> pathsByBlob,
+                            Set<ObjectId> indexed, int segmentSeq) {
+
+        static final Snapshot EMPTY = new Snapshot(null, List.of(), Map.of(), Set.of(), 0);
+
+        long docCount() {
+            return segments.stream().mapToLong(TrigramSegment::docCount).sum();
+        }
+    }
+
+    /**
+     * One matching line.
+     *
+     * @param line Line number, starting at 1.
+     * @param text The line, shortened to 500 characters.
+     */
+    public record Match(String path, int line, String text) {
+    }
+
+    /**
+     * @param commit     Commit the index was searched at, or null if the repository is not indexed yet.
+     * @param candidates Files whose trigrams could match and were actually scanned.
+     * @param truncated  True if the result limit was reached before all candidates were scanned.
+     */
+    public record SearchResult(String commit, List<Match> matches, int candidates, boolean truncated) {
+    }
+
+    /**
+     * Thrown when a search runs past its deadline, usually because the expression backtracks catastrophically
+     * ({@code (a+)+b}). An {@link IllegalArgumentException}, since it is the expression that has to change.
+     */
+    public static final class SearchTimeoutException extends IllegalArgumentException {
+        public SearchTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Outcome of an {@link #update}.
+     *
+     * @param mode          "none" (already current), "full" or "incremental".
+     * @param indexedBlobs  Blobs added to the index.
+     */
+    public record UpdateResult(String mode, int indexedBlobs) {
+    }
+
+    public CodeSearchIndex(Path dir, long maxFileBytes, int maxSegments) {
+        this.dir = dir;
+        this.maxFileBytes = maxFileBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    public ObjectId getCommit() {
+        return snapshot.commit();
+    }
+
+    /**
+     * Loads the index from disk, if there is one, and removes files a crashed update left behind. An unreadable
+     * index is discarded, so the next update rebuilds it.
+     */
+    public void open(Repository repository) throws IOException {
+        Path manifest = dir.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : properties.getProperty("segments", "").split(",")) {
+            if (!name.isBlank()) {
+                names.add(name.trim());
+            }
+        }
+        List<TrigramSegment> segments = new ArrayList<>();
+        Set<ObjectId> indexed = new HashSet<>();
+        ObjectId commit;
+        Map<ObjectId, List<String>> pathsByBlob;
+        int segmentSeq;
+        try (RevWalk walk = new RevWalk(repository)) {
+            commit = ObjectId.fromString(properties.getProperty("commit"));
+            segmentSeq = Integer.parseInt(properties.getProperty("segmentSeq", "0"));
+            pathsByBlob = readPaths(repository, walk.parseCommit(commit).getTree());
+            for (String name : names) {
+                TrigramSegment segment = TrigramSegment.open(dir.resolve(name));
+                segments.add(segment);
+                for (int doc = 0; doc < segment.docCount(); doc++) {
+                    indexed.add(segment.blob(doc));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            clear();
+            throw new IOException("Discarded unreadable search index in " + dir + ": " + e.getMessage(), e);
+        }
+        snapshot = new Snapshot(commit, List.copyOf(segments), pathsByBlob, indexed, segmentSeq);
+        deleteUnreferenced(names);
+    }
+
+    /**
+     * Brings the index to {@code commit}: incrementally from the indexed commit when there is one, by a full
+     * build when there is none or when the index needs compacting.
+     */
+    public UpdateResult update(Repository repository, ObjectId commit) throws IOException {
+        Snapshot current = snapshot;
+        if (commit.equals(current.commit())) {
+            return new UpdateResult("none", 0);
+        }
+        Files.createDirectories(dir);
+        try (RevWalk walk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader()) {
+            ObjectId tree = walk.parseCommit(commit).getTree();
+            Map<ObjectId, List<String>> pathsByBlob;
+            Set<ObjectId> added = new HashSet<>();
+            boolean full = current.commit() == null || current.segments().size() >= maxSegments;
+            if (full) {
+                pathsByBlob = readPaths(repository, tree);
+                added.addAll(pathsByBlob.keySet());
+            } else {
+                pathsByBlob = applyChanges(repository, current, walk.parseCommit(current.commit()).getTree(), tree, added);
+                added.removeAll(current.indexed());
+                long dead = current.indexed().stream().filter(blob -> !pathsByBlob.containsKey(blob)).count();
+                if (dead > pathsByBlob.size()) {
+                    full = true;
+                    added = new HashSet<>(pathsByBlob.keySet());
+                }
+            }
+
+            TrigramIndexWriter writer = new TrigramIndexWriter();
+            for (ObjectId blob : added) {
+                byte[] content = readText(reader, blob);
+                if (content != null) {
+                    writer.add(blob, content);
+                }
+            }
+
+            int segmentSeq = current.segmentSeq();
+            List<TrigramSegment> segments = new ArrayList<>(full ? List.of() : current.segments());
+            Set<ObjectId> indexed = new HashSet<>(full ? Set.of() : current.indexed());
+            if (writer.docCount() > 0) {
+                Path file = dir.resolve(String.format("segment-%08d%s", ++segmentSeq, SEGMENT_SUFFIX));
+                writer.write(file);
+                TrigramSegment segment = TrigramSegment.open(file);
+                segments.add(segment);
+                for (int doc = 0; doc < segment.docCount(); doc++) {
+                    indexed.add(segment.blob(doc));
+                }
+            }
+            List<String> names = segments.stream().map(TrigramSegment::name).toList();
+            writeManifest(commit, names, segmentSeq);
+            snapshot = new Snapshot(commit.copy(), List.copyOf(segments), pathsByBlob, indexed, segmentSeq);
+            if (full) {
+                deleteUnreferenced(names);
+            }
+            return new UpdateResult(full ? "full" : "incremental", writer.docCount());
+        }
+    }
+
+    /**
+     * Searches the indexed commit for lines matching {@code pattern}.
+     *
+     * @param maxMatches Stop after this many matching lines.
+     * @param deadline   {@link System#nanoTime()} by which the search must be done.
+     * @throws SearchTimeoutException If the deadline passes, also in the middle of matching one line.
+     */
+    public SearchResult search(Repository repository, Pattern pattern, int maxMatches, long deadline) throws IOException {
+        Snapshot current = snapshot;
+        if (current.commit() == null) {
+            return new SearchResult(null, List.of(), 0, false);
+        }
+        List<int[]> plan = RegexTrigrams.plan(pattern.pattern(), pattern.flags());
+        List<Match> matches = new ArrayList<>();
+        int candidates = 0;
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (TrigramSegment segment : current.segments()) {
+                for (int doc : candidates(segment, plan)) {
+                    ObjectId blob = segment.blob(doc);
+                    List<String> paths = current.pathsByBlob().get(blob);
+                    if (paths == null) {
+                        continue; // No longer in the tree
+                    }
+                    byte[] content;
+                    try {
+                        content = reader.open(blob, Constants.OBJ_BLOB).getCachedBytes((int) Math.min(maxFileBytes, Integer.MAX_VALUE));
+                    } catch (MissingObjectException | LargeObjectException e) {
+                        continue;
+                    }
+                    candidates++;
+                    if (!scan(content, pattern, paths, matches, maxMatches, deadline)) {
+                        return new SearchResult(current.commit().name(), matches, candidates, true);
+                    }
+                }
+            }
+        }
+        return new SearchResult(current.commit().name(), matches, candidates, false);
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("commit", current.commit() != null ? current.commit().name() : null);
+        stats.put("segments", current.segments().size());
+        stats.put("documents", current.docCount());
+        stats.put("liveBlobs", current.pathsByBlob().size());
+        stats.put("trigrams", current.segments().stream().mapToLong(TrigramSegment::trigramCount).sum());
+        stats.put("sizeBytes", current.segments().stream().mapToLong(TrigramSegment::sizeBytes).sum());
+        return stats;
+    }
+
+    /**
+     * Drops the index from memory and disk.
+     */
+    public void clear() throws IOException {
+        snapshot = Snapshot.EMPTY;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    /**
+     * Sorted documents of the segment that contain all trigrams of at least one alternative of the plan.
+     */
+    private static int[] candidates(TrigramSegment segment, List<int[]> plan) {
+        if (plan == null) {
+            int[] all = new int[segment.docCount()];
+            for (int doc = 0; doc < all.length; doc++) {
+                all[doc] = doc;
+            }
+            return all;
+        }
+        BitSet result = new BitSet(segment.docCount());
+        for (int[] trigrams : plan) {
+            int[] docs = null;
+            for (int trigram : trigrams) {
+                int[] postings = segment.postings(trigram);
+                docs = docs == null ? postings : intersect(docs, postings);
+                if (docs.length == 0) {
+                    break;
+                }
+            }
+            for (int doc : docs) {
+                result.set(doc);
+            }
+        }
+        return result.stream().toArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Adds the matching lines of one blob, once per path it is found at.
+     *
+     * @return False if the match limit was reached.
+     */
+    private static boolean scan(byte[] content, Pattern pattern, List<String> paths, List<Match> matches, int maxMatches,
+                                long deadline) {
+        DeadlineCharSequence.check(deadline);
+        String text = new String(content, StandardCharsets.UTF_8);
+        Matcher matcher = pattern.matcher("");
+        int lineNumber = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            lineNumber++;
+            String line = text.substring(start, end);
+            if (matcher.reset(new DeadlineCharSequence(line, deadline)).find()) {
+                String shown = line.length() > MAX_LINE_CHARS ? line.substring(0, MAX_LINE_CHARS) : line;
+                for (String path : paths) {
+                    if (matches.size() >= maxMatches) {
+                        return false;
+                    }
+                    matches.add(new Match(path, lineNumber, shown));
+                }
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Text that fails the match reading it once the deadline has passed. {@link Matcher} has no timeout of its
+     * own, but every step of a backtracking match reads a character, so this bounds even a runaway expression.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+
+        private static final int CHECK_INTERVAL = 4096;
+
+        private final String text;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(String text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        static void check(long deadline) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new SearchTimeoutException("Search took too long; the expression may backtrack excessively");
+            }
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                check(deadline);
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(text.substring(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Content of a blob worth indexing: not too large and not binary. Returns null otherwise.
+     */
+    private byte[] readText(ObjectReader reader, ObjectId blob) throws IOException {
+        try {
+            if (reader.getObjectSize(blob, Constants.OBJ_BLOB) > maxFileBytes) {
+                return null;
+            }
+            byte[] content = reader.open(blob, Constants.OBJ_BLOB).getCachedBytes((int) Math.min(maxFileBytes, Integer.MAX_VALUE));
+            return RawText.isBinary(content) ? null : content;
+        } catch (MissingObjectException e) {
+            return null; // Not available locally, e.g. in a partial clone
+        }
+    }
+
+    /**
+     * Blob to paths of every regular file in the tree.
+     */
+    private static Map<ObjectId, List<String>> readPaths(Repository repository, ObjectId tree) throws IOException {
+        Map<ObjectId, List<String>> pathsByBlob = new HashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (isFile(treeWalk.getFileMode(0))) {
+                    pathsByBlob.computeIfAbsent(treeWalk.getObjectId(0), id -> new ArrayList<>(1)).add(treeWalk.getPathString());
+                }
+            }
+        }
+        return pathsByBlob;
+    }
+
+    /**
+     * Applies the differences between two trees to a copy of the snapshot's paths, and collects blobs that
+     * appear in the new tree.
+     */
+    private static Map<ObjectId, List<String>> applyChanges(Repository repository, Snapshot current, ObjectId oldTree,
+                                                            ObjectId newTree, Set<ObjectId> added) throws IOException {
+        Map<ObjectId, List<String>> pathsByBlob = new HashMap<>(current.pathsByBlob());
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(oldTree);
+            treeWalk.addTree(newTree);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                String path = treeWalk.getPathString();
+                if (isFile(treeWalk.getFileMode(0))) {
+                    ObjectId blob = treeWalk.getObjectId(0);
+                    List<String> paths = new ArrayList<>(pathsByBlob.getOrDefault(blob, List.of()));
+                    paths.remove(path);
+                    if (paths.isEmpty()) {
+                        pathsByBlob.remove(blob);
+                    } else {
+                        pathsByBlob.put(blob, paths);
+                    }
+                }
+                if (isFile(treeWalk.getFileMode(1))) {
+                    ObjectId blob = treeWalk.getObjectId(1);
+                    List<String> paths = new ArrayList<>(pathsByBlob.getOrDefault(blob, List.of()));
+                    paths.add(path);
+                    pathsByBlob.put(blob, paths);
+                    added.add(blob);
+                }
+            }
+        }
+        return pathsByBlob;
+    }
+
+    private static boolean isFile(FileMode mode) {
+        return (mode.getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
+    }
+
+    private void writeManifest(ObjectId commit, List<String> segments, int segmentSeq) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("commit", commit.name());
+        properties.setProperty("segments", String.join(",", segments));
+        properties.setProperty("segmentSeq", Integer.toString(segmentSeq));
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            properties.store(out, null);
+        }
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes segments and temporary files the manifest does not reference. Searches still reading an old
+     * segment keep their mapping; a file that cannot be deleted yet is retried on the next compaction.
+     */
+    private void deleteUnreferenced(List<String> referenced) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.equals(MANIFEST) || referenced.contains(name)) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Still mapped on platforms that forbid deleting open files
+                }
+            }
+        } catch (IOException e) {
+            // Leftovers are harmless and removed next time
+        }
+    }
+}
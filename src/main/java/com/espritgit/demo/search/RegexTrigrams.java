@@ -0,0 +1,254 @@
+package com.espritgit.demo.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Derives from a regular expression the trigrams a matching line must contain, to pick candidate documents from a
+ * trigram index before running the expression itself.
+ * <p>
+ * The analysis is deliberately conservative: it only keeps runs of plain characters that every match must
+ * contain, and gives up on anything it does not understand (groups, classes, non-ASCII text), so the candidate
+ * set can only be too large, never too small. Top-level alternatives ({@code foo|bar}) each get their own set.
+ * Trigrams are case-folded on ASCII letters, like the index, so one index serves case-sensitive and
+ * case-insensitive queries.
+ */
+final class RegexTrigrams {
+
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z]*x");
+
+    private RegexTrigrams() {
+    }
+
+    static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    /**
+     * Returns, for each top-level alternative, the trigrams a matching line must all contain; a document is a
+     * candidate if it contains every trigram of at least one alternative. Returns null if some alternative puts
+     * no constraint on the text, in which case every document is a candidate.
+     */
+    static List<int[]> plan(String regex, int flags) {
+        if ((flags & Pattern.LITERAL) != 0) {
+            int[] trigrams = trigrams(List.of(regex));
+            return trigrams.length == 0 ? null : List.of(trigrams);
+        }
+        if ((flags & Pattern.COMMENTS) != 0 || COMMENTS_FLAG.matcher(regex).find()) {
+            return null; // Whitespace and # would not mean what they appear to
+        }
+        List<int[]> alternatives = new ArrayList<>();
+        for (String branch : splitTopLevel(regex)) {
+            int[] trigrams = trigrams(literals(branch));
+            if (trigrams.length == 0) {
+                return null;
+            }
+            alternatives.add(trigrams);
+        }
+        return alternatives;
+    }
+
+    private static int[] trigrams(List<String> literals) {
+        List<Integer> result = new ArrayList<>();
+        for (String literal : literals) {
+            byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i + 2 < bytes.length; i++) {
+                int trigram = (fold(bytes[i]) << 16) | (fold(bytes[i + 1]) << 8) | fold(bytes[i + 2]);
+                if (!result.contains(trigram)) {
+                    result.add(trigram);
+                }
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Splits on {@code |} outside groups and character classes.
+     */
+    private static List<String> splitTopLevel(String regex) {
+        List<String> branches = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i) - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                branches.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        branches.add(regex.substring(start));
+        return branches;
+    }
+
+    /**
+     * Runs of plain characters that every match of a branch (without top-level {@code |}) contains.
+     */
+    static List<String> literals(String branch) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int i = 0;
+        while (i < branch.length()) {
+            char c = branch.charAt(i);
+            if (c == '\\' && i + 1 < branch.length()) {
+                char next = branch.charAt(i + 1);
+                if (next == 'Q') {
+                    int end = branch.indexOf("\\E", i + 2);
+                    String quoted = end < 0 ? branch.substring(i + 2) : branch.substring(i + 2, end);
+                    i = end < 0 ? branch.length() : end + 2;
+                    appendAscii(current, quoted, literals);
+                    continue;
+                }
+                i += 2;
+                if (Character.isLetterOrDigit(next) || next > 0x7f) {
+                    flush(current, literals); // \d, \w, \b, back references, ...
+                } else {
+                    current.append(next);
+                }
+            } else if (c == '[') {
+                flush(current, literals);
+                i = skipQuantifier(branch, skipClass(branch, i));
+            } else if (c == '(') {
+                flush(current, literals);
+                i = skipQuantifier(branch, skipGroup(branch, i));
+            } else if (c == '.' || c == '^' || c == '$') {
+                flush(current, literals);
+                i = skipQuantifier(branch, i + 1);
+            } else if (c == '?' || c == '*') {
+                dropLast(current); // The previous character is optional
+                flush(current, literals);
+                i = skipQuantifierSuffix(branch, i + 1);
+            } else if (c == '+') {
+                flush(current, literals);
+                i = skipQuantifierSuffix(branch, i + 1);
+            } else if (c == '{') {
+                int end = branch.indexOf('}', i);
+                if (end < 0) {
+                    current.append(c); // Not a quantifier, a literal brace
+                    i++;
+                    continue;
+                }
+                if (branch.substring(i + 1, end).trim().startsWith("0")) {
+                    dropLast(current);
+                }
+                flush(current, literals);
+                i = skipQuantifierSuffix(branch, end + 1);
+            } else if (c > 0x7f) {
+                flush(current, literals); // Case folding of non-ASCII text is not modelled
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        flush(current, literals);
+        return literals;
+    }
+
+    private static void appendAscii(StringBuilder current, String text, List<String> literals) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c > 0x7f) {
+                flush(current, literals);
+            } else {
+                current.append(c);
+            }
+        }
+    }
+
+    private static void dropLast(StringBuilder current) {
+        if (!current.isEmpty()) {
+            current.setLength(current.length() - 1);
+        }
+    }
+
+    private static void flush(StringBuilder current, List<String> literals) {
+        if (current.length() >= 3) {
+            literals.add(current.toString());
+        }
+        current.setLength(0);
+    }
+
+    /**
+     * Index just after the class starting at {@code start}.
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length() && depth > 0) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Index just after the group starting at {@code start}.
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == '?' || c == '*' || c == '+') {
+            return skipQuantifierSuffix(regex, i + 1);
+        }
+        if (c == '{') {
+            int end = regex.indexOf('}', i);
+            return end < 0 ? i : skipQuantifierSuffix(regex, end + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Skips the lazy ({@code ?}) or possessive ({@code +}) marker of a quantifier.
+     */
+    private static int skipQuantifierSuffix(String regex, int i) {
+        return i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+') ? i + 1 : i;
+    }
+}
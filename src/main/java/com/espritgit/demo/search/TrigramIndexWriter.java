@@ -0,0 +1,81 @@
+package com.espritgit.demo.search;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects documents in memory and writes them out as one {@link TrigramSegment}.
+ */
+final class TrigramIndexWriter {
+
+    private final List<ObjectId> blobs = new ArrayList<>();
+    private final Map<Integer, IntList> postings = new HashMap<>();
+
+    // Trigrams seen in the current document; cleared through the touched list, not by reallocating 2 MiB
+    private final BitSet seen = new BitSet(1 << 24);
+    private final IntList touched = new IntList();
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    int docCount() {
+        return blobs.size();
+    }
+
+    /**
+     * Adds a blob's content. Trigrams are taken over ASCII-lowercased bytes and never span a line break, matching
+     * what {@link RegexTrigrams} asks for.
+     */
+    void add(ObjectId blob, byte[] content) {
+        int doc = blobs.size();
+        blobs.add(blob.copy());
+        for (int i = 0; i + 2 < content.length; i++) {
+            int b0 = RegexTrigrams.fold(content[i]);
+            int b1 = RegexTrigrams.fold(content[i + 1]);
+            int b2 = RegexTrigrams.fold(content[i + 2]);
+            if (b0 == '\n' || b1 == '\n' || b2 == '\n') {
+                continue;
+            }
+            int trigram = (b0 << 16) | (b1 << 8) | b2;
+            if (!seen.get(trigram)) {
+                seen.set(trigram);
+                touched.add(trigram);
+                postings.computeIfAbsent(trigram, key -> new IntList()).add(doc);
+            }
+        }
+        for (int i = 0; i < touched.size; i++) {
+            seen.clear(touched.values[i]);
+        }
+        touched.size = 0;
+    }
+
+    void write(Path file) throws IOException {
+        int[] trigrams = postings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        List<int[]> lists = new ArrayList<>(trigrams.length);
+        for (int trigram : trigrams) {
+            lists.add(postings.get(trigram).toArray()); // Already sorted: documents are added in id order
+        }
+        TrigramSegment.write(file, blobs, trigrams, lists);
+    }
+}
@@ -0,0 +1,174 @@
+package com.espritgit.demo.search;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One immutable, memory-mapped segment of a {@link CodeSearchIndex}: the blobs indexed by one build or one
+ * incremental update, and for each trigram the sorted list of documents (blobs) containing it.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ * int magic, int docCount, int trigramCount
+ * docCount x 20 bytes            blob id of each document
+ * trigramCount x (int trigram, int postingsOffset, int postingsCount), sorted by trigram
+ * postings                       per trigram, doc ids as varint deltas
+ * </pre>
+ * Reads use absolute positions only, so one mapping is shared by concurrent searches.
+ */
+final class TrigramSegment {
+
+    private static final int MAGIC = 0x54524731; // "TRG1"
+    private static final int HEADER_BYTES = 12;
+    private static final int TRIGRAM_ENTRY_BYTES = 12;
+
+    private final String name;
+    private final MappedByteBuffer buffer;
+    private final int docCount;
+    private final int trigramCount;
+    private final int trigramTableStart;
+    private final int postingsStart;
+
+    private TrigramSegment(String name, MappedByteBuffer buffer) throws IOException {
+        this.name = name;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a trigram segment: " + name);
+        }
+        this.docCount = buffer.getInt(4);
+        this.trigramCount = buffer.getInt(8);
+        this.trigramTableStart = HEADER_BYTES + docCount * Constants.OBJECT_ID_LENGTH;
+        this.postingsStart = trigramTableStart + trigramCount * TRIGRAM_ENTRY_BYTES;
+    }
+
+    static TrigramSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new TrigramSegment(file.getFileName().toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    String name() {
+        return name;
+    }
+
+    int docCount() {
+        return docCount;
+    }
+
+    int trigramCount() {
+        return trigramCount;
+    }
+
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    ObjectId blob(int doc) {
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        buffer.get(HEADER_BYTES + doc * Constants.OBJECT_ID_LENGTH, raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    /**
+     * Sorted ids of the documents containing the trigram; empty if none does.
+     */
+    int[] postings(int trigram) {
+        int low = 0;
+        int high = trigramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = trigramTableStart + mid * TRIGRAM_ENTRY_BYTES;
+            int value = buffer.getInt(entry);
+            if (value < trigram) {
+                low = mid + 1;
+            } else if (value > trigram) {
+                high = mid - 1;
+            } else {
+                return decode(postingsStart + buffer.getInt(entry + 4), buffer.getInt(entry + 8));
+            }
+        }
+        return new int[0];
+    }
+
+    private int[] decode(int position, int count) {
+        int[] docs = new int[count];
+        int doc = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += delta;
+            docs[i] = doc;
+        }
+        return docs;
+    }
+
+    /**
+     * Writes a segment through a temporary file, so a crash never leaves a partial segment under its final name.
+     *
+     * @param blobs    Document id to blob id.
+     * @param trigrams Sorted trigrams.
+     * @param postings Sorted document ids for each trigram, in the order of {@code trigrams}.
+     */
+    static void write(Path file, List<ObjectId> blobs, int[] trigrams, List<int[]> postings) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        byte[][] encoded = new byte[trigrams.length][];
+        for (int i = 0; i < trigrams.length; i++) {
+            encoded[i] = encode(postings.get(i));
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(blobs.size());
+            out.writeInt(trigrams.length);
+            byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+            for (ObjectId blob : blobs) {
+                blob.copyRawTo(raw, 0);
+                out.write(raw);
+            }
+            int offset = 0;
+            for (int i = 0; i < trigrams.length; i++) {
+                out.writeInt(trigrams[i]);
+                out.writeInt(offset);
+                out.writeInt(postings.get(i).length);
+                offset += encoded[i].length;
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encode(int[] docs) {
+        ByteBuffer out = ByteBuffer.allocate(docs.length * 5);
+        int previous = 0;
+        for (int doc : docs) {
+            int delta = doc - previous;
+            previous = doc;
+            while ((delta & ~0x7f) != 0) {
+                out.put((byte) ((delta & 0x7f) | 0x80));
+                delta >>>= 7;
+            }
+            out.put((byte) delta);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+}
@@ -0,0 +1,293 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Line-by-line blame of a file, for the blame API.
+ * <p>
+ * Finished results are cached by (commit, path), under both the requested commit and the commit that last changed
+ * the file, so every commit where the file is unchanged shares one entry. When a file has no cached blame, the
+ * commits that changed it are walked back (up to {@code git.blame.incremental-max-commits}) looking for a cached
+ * blame of an older version; if one is found, the changes since are replayed on top of it with a line diff per
+ * commit instead of blaming the whole history again. Only linear stretches of the file's history are replayed;
+ * merges that changed the file fall back to a full {@link BlameGenerator} run.
+ */
+@Service
+public class BlameService {
+
+    @Value("${git.blame.cache-size:2000}")
+    private int cacheSize;
+
+    @Value("${git.blame.incremental-max-commits:50}")
+    private int incrementalMaxCommits;
+
+    private final DiffAlgorithm diffAlgorithm = DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+
+    /**
+     * A range of consecutive lines last changed by the same commit.
+     *
+     * @param startLine       First line of the range in the blamed file, starting at 1.
+     * @param sourcePath      Path of the file in the source commit, which differs from the blamed path after a rename.
+     * @param sourceStartLine Line number of the first line in the source commit's version of the file.
+     */
+    public record BlameRegion(int startLine, int lineCount, String commit, String authorName, String authorEmail,
+                              String authorDate, String sourcePath, int sourceStartLine) {
+    }
+
+    /**
+     * @param mode            "cached", "incremental" or "full".
+     * @param commitsReplayed Commits replayed on top of a cached blame in incremental mode.
+     */
+    public record BlameSummary(String commit, String path, int lines, String mode, int commitsReplayed) {
+    }
+
+    public interface RegionSink {
+        void accept(BlameRegion region) throws IOException;
+    }
+
+    private record Key(ObjectId commit, String path) {
+    }
+
+    private record Source(String commit, String authorName, String authorEmail, String authorDate) {
+
+        static Source of(RevCommit commit, PersonIdent author) {
+            return new Source(commit.getName(), author.getName(), author.getEmailAddress(),
+                    author.getWhenAsInstant().toString());
+        }
+    }
+
+    private record Line(Source source, String sourcePath, int sourceLine) {
+    }
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<Key, List<BlameRegion>> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong incremental = new AtomicLong();
+    private final AtomicLong full = new AtomicLong();
+    private final AtomicLong commitsReplayed = new AtomicLong();
+
+    /**
+     * Blames {@code path} as of {@code commitId}, passing regions to the sink as they are attributed: in line
+     * order for cached and incremental results, in attribution order (newest changes first) for a full blame.
+     */
+    public BlameSummary blame(Repository repository, ObjectId commitId, String path, RegionSink sink) throws IOException {
+        List<BlameRegion> cached = get(new Key(commitId, path));
+        if (cached != null) {
+            hits.incrementAndGet();
+            return replay(commitId, path, cached, sink, "cached", 0);
+        }
+
+        try (RevWalk walk = new RevWalk(repository)) {
+            // Commits that changed the file, newest first, down to one with a cached blame
+            walk.setTreeFilter(AndTreeFilter.create(PathFilter.create(path), TreeFilter.ANY_DIFF));
+            walk.markStart(walk.parseCommit(commitId));
+            List<RevCommit> changes = new ArrayList<>();
+            RevCommit base = null;
+            List<BlameRegion> baseRegions = null;
+            for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+                baseRegions = get(new Key(commit, path));
+                if (baseRegions != null) {
+                    base = commit;
+                    break;
+                }
+                if (commit.getParentCount() > 1 || changes.size() >= incrementalMaxCommits) {
+                    break;
+                }
+                changes.add(commit);
+            }
+
+            if (base != null && changes.isEmpty()) {
+                // Unchanged since a commit with a cached blame
+                hits.incrementAndGet();
+                put(new Key(commitId.copy(), path), baseRegions);
+                return replay(commitId, path, baseRegions, sink, "cached", 0);
+            }
+            if (base != null) {
+                List<BlameRegion> regions = replayChanges(repository, base, baseRegions, changes, path);
+                if (regions != null) {
+                    incremental.incrementAndGet();
+                    commitsReplayed.addAndGet(changes.size());
+                    put(new Key(changes.get(0).copy(), path), regions);
+                    put(new Key(commitId.copy(), path), regions);
+                    return replay(commitId, path, regions, sink, "incremental", changes.size());
+                }
+            }
+            List<BlameRegion> regions = fullBlame(repository, walk.parseCommit(commitId), path, sink);
+            full.incrementAndGet();
+            if (!changes.isEmpty()) {
+                put(new Key(changes.get(0).copy(), path), regions);
+            }
+            put(new Key(commitId.copy(), path), regions);
+            return new BlameSummary(commitId.name(), path, lineCount(regions), "full", 0);
+        }
+    }
+
+    private static BlameSummary replay(ObjectId commitId, String path, List<BlameRegion> regions, RegionSink sink,
+                                       String mode, int replayed) throws IOException {
+        for (BlameRegion region : regions) {
+            sink.accept(region);
+        }
+        return new BlameSummary(commitId.name(), path, lineCount(regions), mode, replayed);
+    }
+
+    private List<BlameRegion> fullBlame(Repository repository, RevCommit commit, String path, RegionSink sink) throws IOException {
+        RawText text = text(repository, commit, path);
+        Line[] lines = new Line[text != null ? text.size() : 0];
+        try (BlameGenerator generator = new BlameGenerator(repository, path)) {
+            generator.push(null, commit);
+            while (generator.next()) {
+                Source source = Source.of(generator.getSourceCommit(), generator.getSourceAuthor());
+                String sourcePath = generator.getSourcePath();
+                int resultStart = generator.getResultStart();
+                int sourceStart = generator.getSourceStart();
+                int length = generator.getRegionLength();
+                sink.accept(new BlameRegion(resultStart + 1, length, source.commit(), source.authorName(),
+                        source.authorEmail(), source.authorDate(), sourcePath, sourceStart + 1));
+                for (int i = 0; i < length && resultStart + i < lines.length; i++) {
+                    lines[resultStart + i] = new Line(source, sourcePath, sourceStart + i);
+                }
+            }
+        }
+        return toRegions(Arrays.asList(lines));
+    }
+
+    /**
+     * Applies the line diffs of {@code changes} (newest first) to the blame of {@code base}. Returns null if the
+     * file is missing at one of them.
+     */
+    private List<BlameRegion> replayChanges(Repository repository, RevCommit base, List<BlameRegion> baseRegions,
+                                            List<RevCommit> changes, String path) throws IOException {
+        RawText previous = text(repository, base, path);
+        if (previous == null || previous.size() != lineCount(baseRegions)) {
+            return null;
+        }
+        List<Line> lines = new ArrayList<>(previous.size());
+        for (BlameRegion region : baseRegions) {
+            Source source = new Source(region.commit(), region.authorName(), region.authorEmail(), region.authorDate());
+            for (int i = 0; i < region.lineCount(); i++) {
+                lines.add(new Line(source, region.sourcePath(), region.sourceStartLine() - 1 + i));
+            }
+        }
+
+        for (int k = changes.size() - 1; k >= 0; k--) {
+            RevCommit commit = changes.get(k);
+            RawText next = text(repository, commit, path);
+            if (next == null) {
+                return null;
+            }
+            Source source = Source.of(commit, commit.getAuthorIdent());
+            EditList edits = diffAlgorithm.diff(RawTextComparator.DEFAULT, previous, next);
+            List<Line> updated = new ArrayList<>(next.size());
+            int a = 0;
+            for (Edit edit : edits) {
+                updated.addAll(lines.subList(a, edit.getBeginA()));
+                for (int b = edit.getBeginB(); b < edit.getEndB(); b++) {
+                    updated.add(new Line(source, path, b));
+                }
+                a = edit.getEndA();
+            }
+            updated.addAll(lines.subList(a, lines.size()));
+            lines = updated;
+            previous = next;
+        }
+        return toRegions(lines);
+    }
+
+    /**
+     * Merges consecutive lines from consecutive lines of the same source into regions.
+     */
+    private static List<BlameRegion> toRegions(List<Line> lines) {
+        List<BlameRegion> regions = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= lines.size(); i++) {
+            Line first = lines.get(start);
+            Line current = i < lines.size() ? lines.get(i) : null;
+            if (current != null && first != null && Objects.equals(first.source(), current.source())
+                    && first.sourcePath().equals(current.sourcePath())
+                    && current.sourceLine() == first.sourceLine() + (i - start)) {
+                continue;
+            }
+            if (first != null) {
+                Source source = first.source();
+                regions.add(new BlameRegion(start + 1, i - start, source.commit(), source.authorName(),
+                        source.authorEmail(), source.authorDate(), first.sourcePath(), first.sourceLine() + 1));
+            }
+            start = i;
+        }
+        return List.copyOf(regions);
+    }
+
+    private static int lineCount(List<BlameRegion> regions) {
+        return regions.stream().mapToInt(BlameRegion::lineCount).sum();
+    }
+
+    /**
+     * Content of the file in the commit, or null if it is not a file there.
+     */
+    private static RawText text(Repository repository, RevCommit commit, String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+            if (treeWalk == null || treeWalk.isSubtree()) {
+                return null;
+            }
+            return new RawText(repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
+        }
+    }
+
+    private List<BlameRegion> get(Key key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void put(Key key, List<BlameRegion> regions) {
+        synchronized (cache) {
+            cache.put(key, regions);
+            Iterator<Key> it = cache.keySet().iterator();
+            while (cache.size() > cacheSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (cache) {
+            stats.put("entries", cache.size());
+        }
+        stats.put("maxEntries", cacheSize);
+        stats.put("hits", hits.get());
+        stats.put("incremental", incremental.get());
+        stats.put("full", full.get());
+        stats.put("commitsReplayed", commitsReplayed.get());
+        return stats;
+    }
+}
@@ -0,0 +1,179 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache of inflated blob contents, plus a memo of (commit, path) to blob id lookups.
+ * <p>
+ * Both are keyed on object ids, which name immutable content, so entries are valid in every repository holding
+ * the object and never need invalidation; refs are still resolved on each request. Blob contents are kept in
+ * direct buffers, outside the Java heap, and only blobs up to {@code git.blob-cache.max-entry-bytes} are admitted
+ * so a few large files cannot flush the small hot ones. Both maps are bounded and evict the least recently used
+ * entry first.
+ */
+@Service
+public class BlobCache {
+
+    @Value("${git.blob-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.blob-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${git.blob-cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    @Value("${git.blob-cache.path-max-entries:100000}")
+    private int pathMaxEntries;
+
+    private final GitMetrics gitMetrics;
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<ObjectId, ByteBuffer> blobs = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final LinkedHashMap<PathKey, ObjectId> paths = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong pathHits = new AtomicLong();
+    private final AtomicLong pathMisses = new AtomicLong();
+
+    private record PathKey(ObjectId commitId, String path) {
+    }
+
+    public BlobCache(GitMetrics gitMetrics) {
+        this.gitMetrics = gitMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        gitMetrics.functionCounter("git.blob.cache.hits", hits, AtomicLong::get);
+        gitMetrics.functionCounter("git.blob.cache.misses", misses, AtomicLong::get);
+        gitMetrics.functionCounter("git.blob.cache.evictions", evictions, AtomicLong::get);
+        gitMetrics.gauge("git.blob.cache.bytes", this, cache -> cache.currentBytes());
+        gitMetrics.functionCounter("git.blob.path.cache.hits", pathHits, AtomicLong::get);
+        gitMetrics.functionCounter("git.blob.path.cache.misses", pathMisses, AtomicLong::get);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether a blob of this size would be admitted by {@link #put(AnyObjectId, byte[])}.
+     */
+    public boolean admits(long size) {
+        return enabled && size <= maxEntryBytes && size <= maxBytes;
+    }
+
+    /**
+     * Returns a read-only view of the cached content, or null on a miss.
+     */
+    public ByteBuffer get(AnyObjectId blobId) {
+        if (!enabled) {
+            return null;
+        }
+        ByteBuffer content;
+        synchronized (blobs) {
+            content = blobs.get(blobId);
+        }
+        if (content == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the content off-heap and caches it, if it is small enough.
+     */
+    public void put(AnyObjectId blobId, byte[] content) {
+        if (!admits(content.length)) {
+            rejected.incrementAndGet();
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        synchronized (blobs) {
+            ByteBuffer previous = blobs.put(blobId.copy(), buffer);
+            totalBytes += content.length - (previous != null ? previous.capacity() : 0);
+            Iterator<ByteBuffer> it = blobs.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                totalBytes -= it.next().capacity();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the memoized blob id of a path in a commit, or null if not known.
+     */
+    public ObjectId getPath(AnyObjectId commitId, String path) {
+        if (!enabled) {
+            return null;
+        }
+        ObjectId blobId;
+        synchronized (paths) {
+            blobId = paths.get(new PathKey(commitId.copy(), path));
+        }
+        (blobId != null ? pathHits : pathMisses).incrementAndGet();
+        return blobId;
+    }
+
+    public void putPath(AnyObjectId commitId, String path, AnyObjectId blobId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (paths) {
+            paths.put(new PathKey(commitId.copy(), path), blobId.copy());
+            Iterator<PathKey> it = paths.keySet().iterator();
+            while (paths.size() > pathMaxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private long currentBytes() {
+        synchronized (blobs) {
+            return totalBytes;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (blobs) {
+            stats.put("entries", blobs.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxEntryBytes", maxEntryBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("rejected", rejected.get());
+        stats.put("evictions", evictions.get());
+        synchronized (paths) {
+            stats.put("pathEntries", paths.size());
+        }
+        stats.put("pathMaxEntries", pathMaxEntries);
+        stats.put("pathHits", pathHits.get());
+        stats.put("pathMisses", pathMisses.get());
+        return stats;
+    }
+}
@@ -0,0 +1,158 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A clone submitted to {@link CloneJobService}. Also acts as the JGit {@link ProgressMonitor} of its clone,
+ * so progress can be polled while the clone runs.
+ */
+public class CloneJob implements ProgressMonitor {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String repoUrl;
+    private final String repoName;
+    private final CloneOptions options;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile State state = State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Path localPath;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+
+    // Progress of the current JGit task (e.g. "Receiving objects")
+    private volatile String currentTask;
+    private volatile int taskTotal;
+    private volatile int taskCompleted;
+    private volatile int tasksStarted;
+    private volatile int totalTasks;
+
+    CloneJob(String repoUrl, String repoName, CloneOptions options) {
+        this.repoUrl = repoUrl;
+        this.repoName = repoName;
+        this.options = options;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRepoUrl() {
+        return repoUrl;
+    }
+
+    public String getRepoName() {
+        return repoName;
+    }
+
+    public CloneOptions getOptions() {
+        return options;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        state = State.RUNNING;
+    }
+
+    void markSucceeded(Path path) {
+        localPath = path;
+        finishedAt = Instant.now();
+        state = State.SUCCEEDED;
+    }
+
+    void markFailed(String message) {
+        error = message;
+        finishedAt = Instant.now();
+        state = cancelRequested ? State.CANCELLED : State.FAILED;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("jobId", id);
+        map.put("repositoryUrl", repoUrl);
+        map.put("repositoryName", repoName);
+        map.put("options", options.toMap());
+        map.put("state", state.name());
+        map.put("submittedAt", submittedAt.toString());
+        map.put("startedAt", startedAt != null ? startedAt.toString() : null);
+        map.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+        if (state == State.RUNNING) {
+            Map<String, Object> progress = new LinkedHashMap<>();
+            progress.put("task", currentTask);
+            progress.put("completed", taskCompleted);
+            progress.put("total", taskTotal == UNKNOWN ? null : taskTotal);
+            progress.put("taskNumber", tasksStarted);
+            progress.put("totalTasks", totalTasks == UNKNOWN ? null : totalTasks);
+            map.put("progress", progress);
+        }
+        map.put("localPath", localPath != null ? localPath.toAbsolutePath().toString() : null);
+        map.put("error", error);
+        return map;
+    }
+
+    // --- ProgressMonitor ---
+
+    @Override
+    public void start(int totalTasks) {
+        this.totalTasks = totalTasks;
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        currentTask = title;
+        taskTotal = totalWork;
+        taskCompleted = 0;
+        tasksStarted++;
+    }
+
+    @Override
+    public void update(int completed) {
+        taskCompleted += completed;
+    }
+
+    @Override
+    public void endTask() {
+        // Keep the last task visible until the next one begins
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    @Override
+    public void showDuration(boolean enabled) {
+        // Durations are not reported
+    }
+}
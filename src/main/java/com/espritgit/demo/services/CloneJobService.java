@@ -0,0 +1,177 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs clones asynchronously on a bounded executor instead of on the request thread.
+ * <p>
+ * At most one clone runs per local repository name: submitting a URL that is already being cloned returns the
+ * existing job, and submitting a different URL that maps to the same directory is rejected. This replaces the
+ * previous behaviour where two concurrent requests could both clone into, or delete, the same directory.
+ */
+@Service
+public class CloneJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CloneJobService.class);
+
+    @Value("${git.clone.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${git.clone.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${git.clone.job-retention-ms:3600000}")
+    private long jobRetentionMs;
+
+    private final GitService gitService;
+    private final GitMetrics gitMetrics;
+
+    private final Map<String, CloneJob> jobs = new ConcurrentHashMap<>();
+    // Queued or running job per local repository name
+    private final Map<String, CloneJob> activeByRepoName = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @Autowired
+    public CloneJobService(GitService gitService, GitMetrics gitMetrics) {
+        this.gitService = gitService;
+        this.gitMetrics = gitMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "clone-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        gitMetrics.gauge("git.clone.jobs.running", executor, ThreadPoolExecutor::getActiveCount);
+        gitMetrics.gauge("git.clone.jobs.queued", executor, pool -> pool.getQueue().size());
+    }
+
+    /**
+     * Submits a clone of {@code repoUrl}, or returns the job already cloning it (whatever its options).
+     *
+     * @throws IllegalStateException      If another URL is currently being cloned into the same directory.
+     * @throws RejectedExecutionException If the clone queue is full.
+     */
+    public CloneJob submit(String repoUrl, CloneOptions options) {
+        String repoName = gitService.extractRepoNameFromUrl(repoUrl);
+        CloneJob candidate = new CloneJob(repoUrl, repoName, options);
+        CloneJob existing = activeByRepoName.putIfAbsent(repoName, candidate);
+        if (existing != null) {
+            if (!existing.getRepoUrl().equals(repoUrl)) {
+                throw new IllegalStateException("Repository '" + repoName + "' is currently being cloned from " + existing.getRepoUrl());
+            }
+            logger.info("Clone of {} already in progress as job {}", repoUrl, existing.getId());
+            return existing;
+        }
+
+        jobs.put(candidate.getId(), candidate);
+        try {
+            executor.execute(() -> run(candidate));
+        } catch (RejectedExecutionException e) {
+            activeByRepoName.remove(repoName, candidate);
+            jobs.remove(candidate.getId());
+            throw new RejectedExecutionException("Clone queue is full (" + queueCapacity + " pending jobs), try again later.", e);
+        }
+        logger.info("Submitted clone job {} for {}", candidate.getId(), repoUrl);
+        return candidate;
+    }
+
+    private void run(CloneJob job) {
+        if (job.isCancelled()) {
+            job.markFailed("Cancelled before start");
+            activeByRepoName.remove(job.getRepoName(), job);
+            return;
+        }
+        job.markRunning();
+        gitMetrics.recordCloneQueueWait(Duration.between(job.getSubmittedAt(), Instant.now()).toMillis());
+        long start = System.currentTimeMillis();
+        String outcome = "failed";
+        try {
+            Path localPath = gitService.prepareLocalRepository(job.getRepoUrl(), job.getOptions(), job);
+            job.markSucceeded(localPath);
+            outcome = "succeeded";
+            logger.info("Clone job {} for {} finished", job.getId(), job.getRepoUrl());
+        } catch (Exception e) {
+            logger.error("Clone job {} for {} failed: {}", job.getId(), job.getRepoUrl(), e.getMessage());
+            job.markFailed(e.getMessage());
+            if (job.isCancelled()) {
+                outcome = "cancelled";
+            }
+        } finally {
+            gitMetrics.recordCloneJob(outcome, System.currentTimeMillis() - start);
+            activeByRepoName.remove(job.getRepoName(), job);
+        }
+    }
+
+    public CloneJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public List<CloneJob> listJobs() {
+        List<CloneJob> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparing(CloneJob::getSubmittedAt).reversed());
+        return list;
+    }
+
+    /**
+     * Requests cancellation; JGit checks the job's progress monitor and aborts the clone.
+     */
+    public boolean cancel(String jobId) {
+        CloneJob job = jobs.get(jobId);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        job.requestCancel();
+        return true;
+    }
+
+    public boolean isCloneActive(String repoUrl) {
+        return activeByRepoName.containsKey(gitService.extractRepoNameFromUrl(repoUrl));
+    }
+
+    public Map<String, Object> getExecutorStats() {
+        return Map.of(
+                "maxConcurrent", maxConcurrent,
+                "running", executor.getActiveCount(),
+                "queued", executor.getQueue().size(),
+                "queueCapacity", queueCapacity);
+    }
+
+    @Scheduled(fixedDelayString = "${git.clone.job-cleanup-interval-ms:300000}")
+    public void pruneFinishedJobs() {
+        Instant cutoff = Instant.now().minusMillis(jobRetentionMs);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,67 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.transport.FilterSpec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How much of a remote repository {@link GitService#prepareLocalRepository} should download.
+ *
+ * @param depth        Number of commits of history to fetch (shallow clone), or 0 for full history.
+ * @param branch       Branch to check out (and, with {@code singleBranch}, the only branch fetched); null for the remote HEAD.
+ * @param singleBranch Fetch only {@code branch} instead of all branches.
+ * @param filter       Partial clone filter ({@code blob:none}, {@code blob:limit=<n>}, {@code tree:0}), or null.
+ */
+public record CloneOptions(int depth, String branch, boolean singleBranch, String filter) {
+
+    public static final CloneOptions FULL = new CloneOptions(0, null, false, null);
+
+    public CloneOptions {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Clone depth must not be negative: " + depth);
+        }
+        if (singleBranch && (branch == null || branch.isBlank())) {
+            throw new IllegalArgumentException("A single-branch clone needs a branch name.");
+        }
+        if (filter != null && filter.isBlank()) {
+            filter = null;
+        }
+        if (filter != null) {
+            filterSpec(filter); // Validate early, before a job is queued
+        }
+    }
+
+    public boolean isShallow() {
+        return depth > 0;
+    }
+
+    public boolean isPartial() {
+        return filter != null;
+    }
+
+    /**
+     * The parsed partial clone filter, or {@link FilterSpec#NO_FILTER}.
+     */
+    public FilterSpec getFilterSpec() {
+        return filter != null ? filterSpec(filter) : FilterSpec.NO_FILTER;
+    }
+
+    static FilterSpec filterSpec(String filter) {
+        try {
+            return FilterSpec.fromFilterLine(filter);
+        } catch (PackProtocolException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported partial clone filter: " + filter, e);
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("depth", depth);
+        map.put("branch", branch);
+        map.put("singleBranch", singleBranch);
+        map.put("filter", filter);
+        return map;
+    }
+}
@@ -0,0 +1,308 @@
+package com.espritgit.demo.services;
+
+import com.espritgit.demo.exception.ResourceNotFoundException;
+import com.espritgit.demo.search.CodeSearchIndex;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Regex code search over the default branch of hosted repositories, backed by one {@link CodeSearchIndex} per
+ * repository under {@code <base-path>/.search-index/<name>}.
+ * <p>
+ * Indexes are built in the background at startup for repositories that have none, and brought up to date after
+ * each push by indexing only the blobs the push introduced. Like commit-graph writes, updates run one at a time
+ * and repeated requests for the same repository are coalesced. Searches use whatever index is current; a
+ * repository searched before its first build is indexed on the spot.
+ */
+@Service
+public class CodeSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeSearchService.class);
+
+    static final String INDEX_DIR = ".search-index";
+
+    @Value("${git.repositories.base-path}")
+    private String repositoriesBasePath;
+
+    @Value("${git.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.search.max-file-bytes:1048576}")
+    private long maxFileBytes;
+
+    @Value("${git.search.max-segments:8}")
+    private int maxSegments;
+
+    @Value("${git.search.timeout-ms:10000}")
+    private long timeoutMs;
+
+    private final RepositoryCache repositoryCache;
+    private final RepositoryRegistry repositoryRegistry;
+
+    private final Map<String, CodeSearchIndex> indexes = new ConcurrentHashMap<>();
+
+    // Index builds read every blob of a tree; run them one at a time and coalesce repeated requests per repository
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "code-search-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong fullBuilds = new AtomicLong();
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+    private final AtomicLong blobsIndexed = new AtomicLong();
+    private final AtomicLong updateFailures = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchTimeouts = new AtomicLong();
+
+    @Autowired
+    public CodeSearchService(RepositoryCache repositoryCache, RepositoryRegistry repositoryRegistry) {
+        this.repositoryCache = repositoryCache;
+        this.repositoryRegistry = repositoryRegistry;
+    }
+
+    /**
+     * Drops indexes of repositories that no longer exist and brings the others up to date.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexAll() {
+        if (!enabled) {
+            return;
+        }
+        Path root = indexRoot();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> dirs = Files.list(root)) {
+                for (Path dir : dirs.toList()) {
+                    String name = dir.getFileName().toString();
+                    if (!repositoryRegistry.contains(name)) {
+                        new CodeSearchIndex(dir, maxFileBytes, maxSegments).clear();
+                        logger.info("Removed search index of missing repository {}", name);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Could not clean up search indexes under {}: {}", root, e.getMessage());
+            }
+        }
+        for (String name : repositoryRegistry.names()) {
+            scheduleUpdate(name);
+        }
+    }
+
+    /**
+     * Queues a background update of the repository's index to its default branch tip.
+     *
+     * @param gitDir Git directory of the repository, as seen by the Git server.
+     */
+    public void scheduleUpdate(Path gitDir) {
+        String name = repositoryRegistry.nameOf(gitDir);
+        if (name != null) {
+            scheduleUpdate(name);
+        }
+    }
+
+    private void scheduleUpdate(String name) {
+        if (!enabled) {
+            return;
+        }
+        if (pending.add(name)) {
+            executor.execute(() -> {
+                pending.remove(name);
+                try {
+                    update(name);
+                } catch (IOException | RuntimeException e) {
+                    updateFailures.incrementAndGet();
+                    logger.warn("Failed to update search index for {}: {}", name, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Synchronously brings the repository's index to its default branch tip.
+     */
+    private void update(String name) throws IOException {
+        RepositoryInfo info = repositoryRegistry.get(name);
+        if (info == null) {
+            CodeSearchIndex index = indexes.remove(name);
+            if (index != null) {
+                index.clear();
+            }
+            return;
+        }
+        try (Repository repository = repositoryCache.open(info.path())) {
+            CodeSearchIndex index = index(name, repository);
+            ObjectId tip = repository.resolve(Constants.HEAD + "^{commit}");
+            if (tip == null) {
+                return; // Empty repository
+            }
+            long start = System.currentTimeMillis();
+            CodeSearchIndex.UpdateResult result;
+            synchronized (index) { // A search may build an index the indexer thread is also about to build
+                result = index.update(repository, tip);
+            }
+            switch (result.mode()) {
+                case "full" -> fullBuilds.incrementAndGet();
+                case "incremental" -> incrementalUpdates.incrementAndGet();
+                default -> {
+                    return;
+                }
+            }
+            blobsIndexed.addAndGet(result.indexedBlobs());
+            logger.info("Search index of {} at {} ({} update, {} blobs indexed) in {} ms", name, tip.name(),
+                    result.mode(), result.indexedBlobs(), System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * The repository's index, loaded from disk on first use.
+     */
+    private CodeSearchIndex index(String name, Repository repository) {
+        return indexes.computeIfAbsent(name, key -> {
+            CodeSearchIndex index = new CodeSearchIndex(indexRoot().resolve(key), maxFileBytes, maxSegments);
+            try {
+                index.open(repository);
+            } catch (IOException e) {
+                logger.warn("{}", e.getMessage());
+            }
+            return index;
+        });
+    }
+
+    /**
+     * Searches one repository's default branch.
+     *
+     * @param maxMatches Stop after this many matching lines.
+     * @throws ResourceNotFoundException If the repository does not exist.
+     */
+    public CodeSearchIndex.SearchResult search(String repoName, Pattern pattern, int maxMatches) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("Code search is disabled.");
+        }
+        if (repoName == null || repoName.isBlank() || repoName.contains("/") || repoName.contains("\\") || repoName.contains("..")) {
+            throw new IllegalArgumentException("Invalid repository name format: " + repoName);
+        }
+        RepositoryInfo info = repositoryRegistry.get(repoName);
+        if (info == null) {
+            throw new ResourceNotFoundException("Repository '" + repoName + "' not found or is not a valid Git repository.");
+        }
+        searches.incrementAndGet();
+        try (Repository repository = repositoryCache.open(info.path())) {
+            CodeSearchIndex index = index(repoName, repository);
+            if (index.getCommit() == null) {
+                update(repoName); // Not indexed yet; pays for one build instead of returning nothing
+            }
+            return index.search(repository, pattern, maxMatches, deadline());
+        } catch (CodeSearchIndex.SearchTimeoutException e) {
+            searchTimeouts.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Matches of one repository in a search across repositories.
+     */
+    public record RepositoryMatches(String repository, String commit, List<CodeSearchIndex.Match> matches) {
+    }
+
+    /**
+     * @param truncated True if the result limit was reached before all repositories were searched.
+     */
+    public record MultiSearchResult(List<RepositoryMatches> repositories, int candidates, boolean truncated) {
+    }
+
+    /**
+     * Searches the default branch of every indexed repository, in name order. Repositories without an index yet
+     * are skipped rather than built on the request path.
+     */
+    public MultiSearchResult searchAll(Pattern pattern, int maxMatches) {
+        if (!enabled) {
+            throw new IllegalStateException("Code search is disabled.");
+        }
+        searches.incrementAndGet();
+        long deadline = deadline(); // One budget for all repositories
+        List<RepositoryMatches> results = new ArrayList<>();
+        int candidates = 0;
+        int remaining = maxMatches;
+        for (RepositoryInfo info : repositoryRegistry.list()) {
+            CodeSearchIndex index = indexes.get(info.name());
+            if (index == null || index.getCommit() == null) {
+                continue;
+            }
+            try (Repository repository = repositoryCache.open(info.path())) {
+                CodeSearchIndex.SearchResult result = index.search(repository, pattern, remaining, deadline);
+                candidates += result.candidates();
+                if (!result.matches().isEmpty()) {
+                    results.add(new RepositoryMatches(info.name(), result.commit(), result.matches()));
+                    remaining -= result.matches().size();
+                }
+                if (result.truncated()) {
+                    return new MultiSearchResult(results, candidates, true);
+                }
+            } catch (IOException e) {
+                logger.warn("Search of {} failed: {}", info.name(), e.getMessage());
+            } catch (CodeSearchIndex.SearchTimeoutException e) {
+                searchTimeouts.incrementAndGet();
+                throw e;
+            }
+        }
+        return new MultiSearchResult(results, candidates, false);
+    }
+
+    private long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pendingUpdates", pending.size());
+        stats.put("fullBuilds", fullBuilds.get());
+        stats.put("incrementalUpdates", incrementalUpdates.get());
+        stats.put("blobsIndexed", blobsIndexed.get());
+        stats.put("updateFailures", updateFailures.get());
+        stats.put("searches", searches.get());
+        stats.put("searchTimeouts", searchTimeouts.get());
+        Map<String, Object> repositories = new LinkedHashMap<>();
+        indexes.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> repositories.put(entry.getKey(), entry.getValue().getStats()));
+        stats.put("repositories", repositories);
+        return stats;
+    }
+
+    private Path indexRoot() {
+        return Paths.get(repositoriesBasePath).toAbsolutePath().normalize().resolve(INDEX_DIR);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,403 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraph;
+import org.eclipse.jgit.internal.storage.commitgraph.CommitGraphWriter;
+import org.eclipse.jgit.internal.storage.commitgraph.GraphCommits;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes and maintains a commit-graph file ({@code objects/info/commit-graph}) for hosted repositories and
+ * answers ancestry / merge-base queries from it.
+ * <p>
+ * With {@code core.commitGraph} enabled, JGit's {@link RevWalk} takes parents and commit times from the graph
+ * instead of inflating every commit object, so log walks get cheaper without any change to callers. The graph
+ * is rewritten in the background after a clone and after each push that added commits; commits newer than the
+ * graph are still parsed from packs, so a slightly stale graph is always safe to use. Shallow repositories are
+ * skipped.
+ */
+@Service
+public class CommitGraphService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitGraphService.class);
+
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    @Value("${git.commit-graph.enabled:true}")
+    private boolean enabled;
+
+    private final RepositoryCache repositoryCache;
+    private final RepositoryRegistry repositoryRegistry;
+
+    // Graph writes are IO-heavy; run them one at a time and coalesce repeated requests per repository
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "commit-graph-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CommitGraphService(RepositoryCache repositoryCache, RepositoryRegistry repositoryRegistry) {
+        this.repositoryCache = repositoryCache;
+        this.repositoryRegistry = repositoryRegistry;
+    }
+
+    /**
+     * Writes graphs for existing repositories that do not have one yet.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void writeMissingGraphs() {
+        if (!enabled) {
+            return;
+        }
+        for (RepositoryInfo info : repositoryRegistry.list()) {
+            if (!Files.exists(info.gitDir().resolve("objects").resolve("info").resolve("commit-graph"))) {
+                scheduleUpdate(info.path());
+            }
+        }
+    }
+
+    /**
+     * Queues a background rewrite of the repository's commit-graph. Requests for a repository that is already
+     * queued are coalesced.
+     *
+     * @param repoPath Working tree or git directory of the repository.
+     */
+    public void scheduleUpdate(Path repoPath) {
+        if (!enabled) {
+            return;
+        }
+        Path key = repoPath.toAbsolutePath().normalize();
+        if (pending.add(key)) {
+            executor.execute(() -> {
+                pending.remove(key);
+                try (Repository repository = repositoryCache.open(key)) {
+                    writeCommitGraph(repository);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Failed to write commit-graph for {}: {}", key, e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Enables reading of the commit-graph in the repository config (and graph writing on JGit GC).
+     */
+    public void enableCommitGraph(Repository repository) throws IOException {
+        StoredConfig config = repository.getConfig();
+        boolean changed = false;
+        if (!config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+            changed = true;
+        }
+        if (!config.getBoolean(ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, false)) {
+            config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, true);
+            changed = true;
+        }
+        if (changed) {
+            config.save();
+            logger.info("Enabled commit-graph for repository {}", repository.getDirectory());
+        }
+    }
+
+    /**
+     * Synchronously rewrites the commit-graph from all ref tips, unless every tip is already in the current graph.
+     * JGit can only write a single graph file, not an incremental chain, so a rewrite covers all commits.
+     * <p>
+     * Shallow repositories get no graph, like in C git: the walk would record the shallow boundary commits as
+     * having no parents, and ancestry answers would stay wrong after the repository is deepened. A graph written
+     * before the repository became shallow is removed.
+     *
+     * @return The number of commits in the new graph, 0 if it was up to date or the repository is empty, or -1 if
+     * the repository is shallow, not file based or the graph is locked.
+     */
+    public long writeCommitGraph(Repository repository) throws IOException {
+        if (!(repository.getObjectDatabase() instanceof ObjectDirectory objectDirectory)) {
+            return -1;
+        }
+        File graphFile = new File(new File(objectDirectory.getDirectory(), "info"), "commit-graph");
+        if (Files.exists(repository.getDirectory().toPath().resolve(Constants.SHALLOW))) {
+            if (Files.deleteIfExists(graphFile.toPath())) {
+                logger.info("Removed commit-graph of shallow repository {}", repository.getDirectory());
+            }
+            return -1;
+        }
+        enableCommitGraph(repository);
+
+        long start = System.currentTimeMillis();
+        try (RevWalk walk = new RevWalk(repository); ObjectReader reader = repository.newObjectReader()) {
+            Set<ObjectId> tips = new HashSet<>();
+            for (Ref ref : repository.getRefDatabase().getRefs()) {
+                ObjectId id = ref.getPeeledObjectId() != null ? ref.getPeeledObjectId() : ref.getObjectId();
+                if (id == null) {
+                    continue;
+                }
+                RevObject object = walk.peel(walk.parseAny(id));
+                if (object instanceof RevCommit) {
+                    tips.add(object.copy());
+                }
+            }
+            if (tips.isEmpty()) {
+                return 0;
+            }
+            Optional<CommitGraph> current = reader.getCommitGraph();
+            if (current.isPresent() && tips.stream().allMatch(tip -> current.get().findGraphPosition(tip) >= 0)) {
+                return 0; // E.g. a push that only deleted refs or pointed them at existing commits
+            }
+
+            GraphCommits commits = GraphCommits.fromWalk(NullProgressMonitor.INSTANCE, tips, walk);
+            Files.createDirectories(graphFile.getParentFile().toPath());
+            LockFile lock = new LockFile(graphFile);
+            if (!lock.lock()) {
+                logger.info("Commit-graph for {} is locked by another writer, skipping", repository.getDirectory());
+                return -1;
+            }
+            try {
+                try (OutputStream out = lock.getOutputStream()) {
+                    new CommitGraphWriter(commits).write(NullProgressMonitor.INSTANCE, out);
+                }
+                if (!lock.commit()) {
+                    throw new IOException("Could not commit commit-graph lock for " + repository.getDirectory());
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            long count = 0;
+            for (RevCommit ignored : commits) {
+                count++;
+            }
+            logger.info("Wrote commit-graph with {} commits for {} in {} ms",
+                    count, repository.getDirectory(), System.currentTimeMillis() - start);
+            return count;
+        }
+    }
+
+    /**
+     * Returns true if {@code ancestor} is reachable from {@code descendant} (or equal to it).
+     * Uses generation numbers from the commit-graph to stop the walk as soon as no remaining commit can reach
+     * the ancestor; falls back to a RevWalk when either commit is not in the graph.
+     */
+    public boolean isAncestor(Repository repository, ObjectId ancestor, ObjectId descendant) throws IOException {
+        if (ancestor.equals(descendant)) {
+            return true;
+        }
+        try (ObjectReader reader = repository.newObjectReader()) {
+            Optional<CommitGraph> graph = reader.getCommitGraph();
+            if (graph.isPresent()) {
+                int target = graph.get().findGraphPosition(ancestor);
+                int start = graph.get().findGraphPosition(descendant);
+                if (target >= 0 && start >= 0) {
+                    return isAncestorInGraph(graph.get(), target, start);
+                }
+            }
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            return walk.isMergedInto(walk.parseCommit(ancestor), walk.parseCommit(descendant));
+        }
+    }
+
+    private static boolean isAncestorInGraph(CommitGraph graph, int target, int start) {
+        int targetGeneration = graph.getCommitData(target).getGeneration();
+        BitSet seen = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        seen.set(start);
+        while (!queue.isEmpty()) {
+            int position = queue.poll();
+            if (position == target) {
+                return true;
+            }
+            CommitGraph.CommitData data = graph.getCommitData(position);
+            // A commit can only reach commits with a strictly lower generation number
+            if (data.getGeneration() <= targetGeneration) {
+                continue;
+            }
+            for (int parent : data.getParents()) {
+                if (!seen.get(parent)) {
+                    seen.set(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the best common ancestors of two commits. When both are in the commit-graph this walks graph
+     * positions only, in generation order, without reading any commit object.
+     */
+    public List<ObjectId> findMergeBases(Repository repository, ObjectId a, ObjectId b) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            Optional<CommitGraph> graph = reader.getCommitGraph();
+            if (graph.isPresent()) {
+                int positionA = graph.get().findGraphPosition(a);
+                int positionB = graph.get().findGraphPosition(b);
+                if (positionA >= 0 && positionB >= 0) {
+                    return findMergeBasesInGraph(graph.get(), positionA, positionB);
+                }
+            }
+        }
+
+        List<ObjectId> bases = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(a));
+            walk.markStart(walk.parseCommit(b));
+            RevCommit base;
+            while ((base = walk.next()) != null) {
+                bases.add(base.copy());
+            }
+        }
+        return bases;
+    }
+
+    public boolean hasCommitGraph(Repository repository) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return reader.getCommitGraph().isPresent();
+        }
+    }
+
+    /**
+     * Commits to visit, newest generation first, with their sort keys read from the graph once. Keeps a count of
+     * entries that were not stale when added, so the walk can tell when only stale ones are left without
+     * scanning the queue.
+     */
+    private static final class PaintQueue {
+
+        private record Entry(int position, int generation, long commitTime, boolean stale) {
+        }
+
+        private final CommitGraph graph;
+        private final PriorityQueue<Entry> queue = new PriorityQueue<>((x, y) -> {
+            int byGeneration = Integer.compare(y.generation(), x.generation());
+            return byGeneration != 0 ? byGeneration : Long.compare(y.commitTime(), x.commitTime());
+        });
+        private int nonStale;
+
+        PaintQueue(CommitGraph graph) {
+            this.graph = graph;
+        }
+
+        void add(int position, int flags) {
+            CommitGraph.CommitData data = graph.getCommitData(position);
+            boolean stale = (flags & STALE) != 0;
+            queue.add(new Entry(position, data.getGeneration(), data.getCommitTime(), stale));
+            if (!stale) {
+                nonStale++;
+            }
+        }
+
+        boolean hasNonStale() {
+            return nonStale > 0;
+        }
+
+        int poll() {
+            Entry entry = queue.poll();
+            if (!entry.stale()) {
+                nonStale--;
+            }
+            return entry.position();
+        }
+    }
+
+    // Same "paint down to common" algorithm as C git, ordered by generation number
+    private static List<ObjectId> findMergeBasesInGraph(CommitGraph graph, int a, int b) {
+        Map<Integer, Integer> flags = new HashMap<>();
+        PaintQueue queue = new PaintQueue(graph);
+
+        flags.merge(a, PARENT1, (x, y) -> x | y);
+        flags.merge(b, PARENT2, (x, y) -> x | y);
+        queue.add(a, flags.get(a));
+        if (a != b) {
+            queue.add(b, flags.get(b));
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        while (queue.hasNonStale()) {
+            int position = queue.poll();
+            int current = flags.get(position);
+            int paint = current & (PARENT1 | PARENT2 | STALE);
+            if (paint == (PARENT1 | PARENT2)) {
+                if ((current & RESULT) == 0) {
+                    flags.put(position, current | RESULT);
+                    candidates.add(position);
+                }
+                paint |= STALE;
+            }
+            for (int parent : graph.getCommitData(position).getParents()) {
+                int parentFlags = flags.getOrDefault(parent, 0);
+                if ((parentFlags & paint) == paint) {
+                    continue;
+                }
+                flags.put(parent, parentFlags | paint);
+                queue.add(parent, parentFlags | paint);
+            }
+        }
+
+        // Drop candidates that are ancestors of other candidates
+        List<ObjectId> bases = new ArrayList<>();
+        for (int candidate : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != candidate && isAncestorInGraph(graph, candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                bases.add(graph.getObjectId(candidate));
+            }
+        }
+        return bases;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,114 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of computed diffs between two trees, used by {@link GitService#diff}.
+ * <p>
+ * Tree ids name immutable content, so a diff between the same two trees with the same options is always the same
+ * and entries never need invalidation; they are shared by all repositories. Only results of at most
+ * {@code git.diff-cache.max-entry-bytes} of patch text are kept, and the total is bounded by
+ * {@code git.diff-cache.max-bytes} with the least recently used entries evicted first.
+ */
+@Service
+public class DiffCache {
+
+    @Value("${git.diff-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.diff-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${git.diff-cache.max-entry-bytes:4194304}")
+    private long maxEntryBytes;
+
+    /**
+     * Everything that determines the result of a diff.
+     */
+    public record Key(ObjectId baseTree, ObjectId headTree, GitService.DiffOptions options) {
+    }
+
+    private record Entry(List<GitService.DiffFile> files, GitService.DiffSummary summary, long bytes) {
+    }
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Replays a cached result to the sink and returns its summary, or returns null on a miss.
+     */
+    public GitService.DiffSummary replay(Key key, GitService.DiffSink sink) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        for (GitService.DiffFile file : entry.files()) {
+            sink.accept(file);
+        }
+        return entry.summary();
+    }
+
+    /**
+     * @param bytes Approximate size of the result, mostly patch text.
+     */
+    public void put(Key key, List<GitService.DiffFile> files, GitService.DiffSummary summary, long bytes) {
+        if (!enabled || bytes > maxEntryBytes) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(List.copyOf(files), summary, bytes));
+            totalBytes += bytes - (previous != null ? previous.bytes() : 0);
+            Iterator<Entry> it = entries.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                totalBytes -= it.next().bytes();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxEntryBytes", maxEntryBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
@@ -0,0 +1,169 @@
+package com.espritgit.demo.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.eclipse.jgit.transport.ReceivedPackStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the Git hot paths, exposed through the actuator {@code metrics} endpoint.
+ * <ul>
+ *     <li>{@code git.operation}: timer per {@link GitService} operation (open, resolve, walk, blob.load, ...).</li>
+ *     <li>{@code git.upload.*}, {@code git.receive.*}: per-repository pack traffic from JGit's
+ *     {@link PackStatistics} and {@link ReceivedPackStatistics}, and {@code git.http.requests} for GitServlet
+ *     requests.</li>
+ *     <li>{@code git.admission.*}: queue wait, active and queued requests and rejections of the admission control
+ *     in front of upload-pack / receive-pack.</li>
+ *     <li>{@code jgit.window.cache.*}: hit/miss/eviction counts and open files/bytes of JGit's pack window cache.</li>
+ *     <li>{@code git.clone.*}: clone job durations and executor usage.</li>
+ * </ul>
+ * The {@code repository} tag can be switched off with {@code git.metrics.repository-tags=false} on instances
+ * hosting many repositories, to bound the number of time series.
+ */
+@Component
+public class GitMetrics {
+
+    private static final String ALL_REPOSITORIES = "all";
+
+    @Value("${git.metrics.repository-tags:true}")
+    private boolean repositoryTags;
+
+    private final MeterRegistry registry;
+
+    /**
+     * Times one operation; closing it records the elapsed time.
+     */
+    public final class Timing implements AutoCloseable {
+        private final String operation;
+        private final long start = System.nanoTime();
+
+        private Timing(String operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void close() {
+            registry.timer("git.operation", "operation", operation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Autowired
+    public GitMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        bindWindowCache();
+    }
+
+    public Timing time(String operation) {
+        return new Timing(operation);
+    }
+
+    /**
+     * Records the statistics of a pack sent by upload-pack (clone or fetch).
+     */
+    public void recordUpload(Repository repository, PackStatistics stats) {
+        String repo = repositoryTag(repository);
+        registry.counter("git.upload.packs", "repository", repo).increment();
+        registry.counter("git.upload.objects", "repository", repo).increment(stats.getTotalObjects());
+        registry.counter("git.upload.objects.reused", "repository", repo).increment(stats.getReusedObjects());
+        registry.counter("git.upload.deltas", "repository", repo).increment(stats.getTotalDeltas());
+        registry.counter("git.upload.bitmap.misses", "repository", repo).increment(Math.max(0, stats.getBitmapIndexMisses()));
+        DistributionSummary.builder("git.upload.bytes").baseUnit("bytes").tags("repository", repo)
+                .register(registry).record(stats.getTotalBytes());
+        // PackStatistics times are in milliseconds
+        recordPhase(repo, "negotiating", stats.getTimeNegotiating());
+        recordPhase(repo, "counting", stats.getTimeCounting());
+        recordPhase(repo, "searching-for-reuse", stats.getTimeSearchingForReuse());
+        recordPhase(repo, "searching-for-sizes", stats.getTimeSearchingForSizes());
+        recordPhase(repo, "compressing", stats.getTimeCompressing());
+        recordPhase(repo, "writing", stats.getTimeWriting());
+        registry.timer("git.upload.duration", "repository", repo).record(stats.getTimeTotal(), TimeUnit.MILLISECONDS);
+    }
+
+    private void recordPhase(String repo, String phase, long millis) {
+        registry.timer("git.upload.phase", "repository", repo, "phase", phase).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the statistics of a pack received by receive-pack (push). The statistics are null for pushes that
+     * only delete refs.
+     */
+    public void recordReceive(Repository repository, ReceivedPackStatistics stats) {
+        String repo = repositoryTag(repository);
+        registry.counter("git.receive.pushes", "repository", repo).increment();
+        if (stats == null) {
+            return;
+        }
+        long objects = stats.getNumWholeCommit() + stats.getNumWholeTree() + stats.getNumWholeBlob() + stats.getNumWholeTag()
+                + stats.getNumOfsDelta() + stats.getNumRefDelta();
+        registry.counter("git.receive.objects", "repository", repo).increment(objects);
+        registry.counter("git.receive.objects.duplicated", "repository", repo).increment(stats.getNumObjectsDuplicated());
+        DistributionSummary.builder("git.receive.bytes").baseUnit("bytes").tags("repository", repo)
+                .register(registry).record(stats.getNumBytesRead());
+    }
+
+    /**
+     * Records one GitServlet request ({@code service} is upload-pack, receive-pack or info-refs).
+     */
+    public void recordRequest(String service, Repository repository, int status, long nanos) {
+        Timer.builder("git.http.requests")
+                .tags("service", service, "repository", repositoryTag(repository), "status", Integer.toString(status))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records how long a GitServlet request waited for admission, by {@code outcome} (admitted, rejected-repository,
+     * rejected-global).
+     */
+    public void recordAdmission(String service, String outcome, long nanos) {
+        registry.timer("git.admission.wait", "service", service, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCloneJob(String outcome, long millis) {
+        registry.timer("git.clone.duration", "outcome", outcome).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordCloneQueueWait(long millis) {
+        registry.timer("git.clone.queue.wait").record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public <T> void gauge(String name, T object, ToDoubleFunction<T> value) {
+        Gauge.builder(name, object, value).register(registry);
+    }
+
+    public <T> void functionCounter(String name, T object, ToDoubleFunction<T> value) {
+        FunctionCounter.builder(name, object, value).register(registry);
+    }
+
+    private void bindWindowCache() {
+        // Read through WindowCacheStats.getStats() each time, so the meters follow a reconfigured cache. The hit,
+        // miss and eviction counters restart with each cache; ObjectStorageCache registers cumulative ones.
+        gauge("jgit.window.cache.hit.ratio", this, metrics -> WindowCacheStats.getStats().getHitRatio());
+        gauge("jgit.window.cache.open.files", this, metrics -> WindowCacheStats.getStats().getOpenFileCount());
+        gauge("jgit.window.cache.open.bytes", this, metrics -> WindowCacheStats.getStats().getOpenByteCount());
+    }
+
+    private String repositoryTag(Repository repository) {
+        if (!repositoryTags || repository == null) {
+            return ALL_REPOSITORIES;
+        }
+        File dir = repository.getDirectory();
+        if (dir.getName().equals(Constants.DOT_GIT) && dir.getParentFile() != null) {
+            dir = dir.getParentFile();
+        }
+        return dir.getName();
+    }
+}
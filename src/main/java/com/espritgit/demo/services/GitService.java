@@ -2,9 +2,14 @@ package com.espritgit.demo.services;
 
 
 import com.espritgit.demo.exception.ResourceNotFoundException;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
@@ -14,27 +19,46 @@ import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.eclipse.jgit.api.LogCommand; // New import
-import org.eclipse.jgit.api.Status; // New import
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.lib.*; // New import for ObjectId, Repository, Constants, PersonIdent
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.util.FileUtils;
 import org.eclipse.jgit.revwalk.RevWalk; // New import
 import org.eclipse.jgit.treewalk.TreeWalk; // New import
 import org.eclipse.jgit.treewalk.filter.PathFilter; // New import
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets; // New import
-import java.text.SimpleDateFormat; // New import
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*; // New import
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -46,11 +70,50 @@ public class GitService {
 
     private static final Logger logger = LoggerFactory.getLogger(GitService.class);
 
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z"); // For commit dates
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LAZY_FETCHES = 64;
+    private static final String CONFIG_KEY_PROMISOR = "promisor";
+    private static final String CONFIG_KEY_PARTIAL_CLONE_FILTER = "partialclonefilter";
+    private static final String REF_STORAGE_FILES = "files";
+    private static final String REF_STORAGE_REFTABLE = "reftable";
+    private static final byte[] BINARY_PATCH_MARKER = "Binary files differ".getBytes(StandardCharsets.US_ASCII);
+
+    // For commit dates; DateTimeFormatter is thread-safe, unlike the shared SimpleDateFormat it replaces
+    private final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss Z").withZone(ZoneId.systemDefault());
 
     @Value("${git.repositories.base-path}")
     private String repositoriesBasePath;
 
+    @Value("${git.refs.default-storage:files}")
+    private String defaultRefStorage;
+
+    private final RepositoryCache repositoryCache;
+    private final CommitGraphService commitGraphService;
+    private final WorkingTreeStatusService workingTreeStatusService;
+    private final RepositoryRegistry repositoryRegistry;
+    private final GitMetrics gitMetrics;
+    private final BlobCache blobCache;
+    private final LastCommitService lastCommitService;
+    private final DiffCache diffCache;
+    private final BlameService blameService;
+    private final RefSnapshotService refSnapshotService;
+
+    @Autowired
+    public GitService(RepositoryCache repositoryCache, CommitGraphService commitGraphService,
+                      WorkingTreeStatusService workingTreeStatusService, RepositoryRegistry repositoryRegistry,
+                      GitMetrics gitMetrics, BlobCache blobCache, LastCommitService lastCommitService,
+                      DiffCache diffCache, BlameService blameService, RefSnapshotService refSnapshotService) {
+        this.repositoryCache = repositoryCache;
+        this.commitGraphService = commitGraphService;
+        this.workingTreeStatusService = workingTreeStatusService;
+        this.repositoryRegistry = repositoryRegistry;
+        this.gitMetrics = gitMetrics;
+        this.blobCache = blobCache;
+        this.lastCommitService = lastCommitService;
+        this.diffCache = diffCache;
+        this.blameService = blameService;
+        this.refSnapshotService = refSnapshotService;
+    }
 
     // Getter for repositoriesBasePath (useful for controller)
     public String getRepositoriesBasePath() {
@@ -66,16 +129,24 @@ public class GitService {
      * @throws IOException     If a file system operation fails.
      */
     public Path prepareLocalRepository(String repoUrl) throws GitAPIException, IOException {
+        return prepareLocalRepository(repoUrl, CloneOptions.FULL, NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Same as {@link #prepareLocalRepository(String)}, with shallow / single-branch / partial clone options,
+     * reporting clone progress to the given monitor.
+     * Callers are expected to serialise calls per repository (see {@link CloneJobService}).
+     * <p>
+     * Partial clones are created without a checkout (the working tree would need every blob). Objects left out
+     * by the filter are fetched on demand from origin when a file is read, see {@link #withLazyFetch}.
+     */
+    public Path prepareLocalRepository(String repoUrl, CloneOptions options, ProgressMonitor monitor) throws GitAPIException, IOException {
         String repoName = extractRepoNameFromUrl(repoUrl);
         Path localRepoPath = Paths.get(repositoriesBasePath, repoName);
 
-        if (Files.exists(localRepoPath) && isValidGitRepository(localRepoPath)) {
+        if (repositoryRegistry.get(repoName) != null) {
             logger.info("Repository {} already exists at {}. Using existing.", repoName, localRepoPath);
-            // Optionally, you could add a 'git pull' here to update
-            // try (Git git = Git.open(localRepoPath.toFile())) {
-            //     logger.info("Pulling latest changes for {}", localRepoPath);
-            //     git.pull().call();
-            // }
+            // Kept up to date in the background by MirrorRefreshService (incremental fetches)
         } else {
             logger.info("Cloning repository {} from {} into {}", repoName, repoUrl, localRepoPath);
             // If the path exists but is not a valid git repo (e.g., failed previous clone), delete it.
@@ -87,12 +158,40 @@ public class GitService {
             // Ensure parent directory of localRepoPath exists
             Files.createDirectories(localRepoPath.getParent());
 
-            try (Git git = Git.cloneRepository()
+            CloneCommand cloneCommand = Git.cloneRepository()
                     .setURI(repoUrl)
                     .setDirectory(localRepoPath.toFile())
-                    .setCloneAllBranches(true)
-                    .call()) {
-                logger.info("Repository {} cloned successfully to {}", repoName, localRepoPath);
+                    .setCloneAllBranches(!options.singleBranch())
+                    .setProgressMonitor(monitor);
+            if (options.branch() != null) {
+                cloneCommand.setBranch(options.branch());
+            }
+            if (options.singleBranch()) {
+                cloneCommand.setBranchesToClone(List.of(Constants.R_HEADS + options.branch()));
+            }
+            if (options.isShallow()) {
+                cloneCommand.setDepth(options.depth());
+            }
+            if (options.isPartial()) {
+                FilterSpec filterSpec = options.getFilterSpec();
+                cloneCommand.setTransportConfigCallback(transport -> transport.setFilterSpec(filterSpec));
+                cloneCommand.setNoCheckout(true);
+            }
+
+            try (GitMetrics.Timing timing = gitMetrics.time("clone"); Git git = cloneCommand.call()) {
+                logger.info("Repository {} cloned successfully to {} ({})", repoName, localRepoPath, options.toMap());
+                if (options.isPartial()) {
+                    // Same markers C git uses, so later fetches keep the filter and lazy fetches know where to go
+                    StoredConfig config = git.getRepository().getConfig();
+                    config.setBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, CONFIG_KEY_PROMISOR, true);
+                    config.setString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, CONFIG_KEY_PARTIAL_CLONE_FILTER, options.filter());
+                    config.save();
+                }
+                if (REF_STORAGE_REFTABLE.equals(normalizeRefStorage(null))) {
+                    convertRefStorage(git.getRepository(), REF_STORAGE_REFTABLE);
+                }
+                commitGraphService.scheduleUpdate(localRepoPath);
+                repositoryRegistry.refresh(repoName);
             } catch (GitAPIException e) {
                 logger.error("Error cloning repository {}: {}", repoUrl, e.getMessage());
                 // Clean up the directory if cloning failed
@@ -103,49 +202,213 @@ public class GitService {
         return localRepoPath;
     }
 
+    /**
+     * Incrementally fetches a cloned mirror from its origin and fast-forwards the checked-out branch when
+     * possible. Only objects that are new on the remote are transferred.
+     *
+     * @return A summary of the fetch (number of updated refs, whether HEAD was fast-forwarded).
+     */
+    public Map<String, Object> fetchMirror(Path repoPath) throws IOException, GitAPIException {
+        try (GitMetrics.Timing timing = gitMetrics.time("fetch");
+             Repository repository = repositoryCache.open(repoPath); Git git = Git.wrap(repository)) {
+            FetchCommand fetchCommand = git.fetch()
+                    .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setRemoveDeletedRefs(true);
+            String partialCloneFilter = getPartialCloneFilter(repository);
+            if (partialCloneFilter != null) {
+                FilterSpec filterSpec = CloneOptions.filterSpec(partialCloneFilter);
+                fetchCommand.setTransportConfigCallback(transport -> transport.setFilterSpec(filterSpec));
+            }
+            FetchResult fetchResult = fetchCommand.call();
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("updatedRefs", fetchResult.getTrackingRefUpdates().size());
+
+            boolean fastForwarded = false;
+            String branch = repository.getBranch();
+            Ref upstream = repository.exactRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + branch);
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (!repository.isBare() && partialCloneFilter == null && upstream != null && head != null && !upstream.getObjectId().equals(head)) {
+                try {
+                    MergeResult mergeResult = git.merge()
+                            .include(upstream)
+                            .setFastForward(MergeCommand.FastForwardMode.FF_ONLY)
+                            .call();
+                    fastForwarded = mergeResult.getMergeStatus() == MergeResult.MergeStatus.FAST_FORWARD;
+                } catch (GitAPIException e) {
+                    // Diverged or local changes in the working tree: keep the fetched refs, leave HEAD alone
+                    logger.warn("Could not fast-forward {} in {}: {}", branch, repoPath, e.getMessage());
+                }
+            }
+            summary.put("fastForwarded", fastForwarded);
+
+            if (!fetchResult.getTrackingRefUpdates().isEmpty() || fastForwarded) {
+                commitGraphService.scheduleUpdate(repoPath);
+            }
+            return summary;
+        }
+    }
+
     public List<String> listBranches(Path repoPath) throws IOException, GitAPIException {
         logger.info("Listing branches for repository at {}", repoPath);
-        try (Git git = Git.open(repoPath.toFile())) {
-            List<Ref> branches = git.branchList().setListMode(ListBranchCommand.ListMode.ALL).call();
-            return branches.stream()
-                    .map(Ref::getName)
-                    .collect(Collectors.toList());
+        try (Repository repository = repositoryCache.open(repoPath)) {
+            // Local and remote-tracking branches, like ListMode.ALL, from the cached ref snapshot
+            RefSnapshot snapshot = refSnapshotService.snapshot(repository);
+            List<String> branches = new ArrayList<>();
+            for (Ref ref : snapshot.byPrefix(Constants.R_HEADS)) {
+                branches.add(ref.getName());
+            }
+            for (Ref ref : snapshot.byPrefix(Constants.R_REMOTES)) {
+                branches.add(ref.getName());
+            }
+            return branches;
         }
     }
 
     public String getLatestCommitHash(Path repoPath) throws IOException, GitAPIException {
         logger.info("Getting latest commit for repository at {}", repoPath);
-        try (Git git = Git.open(repoPath.toFile())) {
-            // Get the default branch (e.g., main or master)
-            String defaultBranch = git.getRepository().getFullBranch(); // e.g., refs/heads/main
-            if (defaultBranch == null) {
-                // Fallback if HEAD is detached or no default branch found easily
-                // Try to find 'main' or 'master'
-                List<Ref> branches = git.branchList().call();
-                Ref mainRef = branches.stream().filter(b -> b.getName().endsWith("/main")).findFirst().orElse(null);
-                if (mainRef == null) {
-                    mainRef = branches.stream().filter(b -> b.getName().endsWith("/master")).findFirst().orElse(null);
-                }
-                if (mainRef != null) {
-                    defaultBranch = mainRef.getName();
-                } else if (!branches.isEmpty()){
-                    defaultBranch = branches.get(0).getName(); // last resort, pick first local branch
-                } else {
-                    return "No branches found to determine latest commit.";
+        try (Repository repository = repositoryCache.open(repoPath); RevWalk revWalk = new RevWalk(repository)) {
+            RefSnapshot snapshot = refSnapshotService.snapshot(repository);
+            // The default branch (e.g., refs/heads/main) HEAD points at
+            Ref branch = snapshot.head() != null && snapshot.head().isSymbolic()
+                    ? snapshot.exactRef(snapshot.head().getTarget().getName()) : null;
+            if (branch == null) {
+                // Fallback if HEAD is detached or unborn: 'main', then 'master', then the first local branch
+                branch = snapshot.exactRef(Constants.R_HEADS + "main");
+                if (branch == null) {
+                    branch = snapshot.exactRef(Constants.R_HEADS + Constants.MASTER);
+                }
+                if (branch == null) {
+                    List<Ref> branches = snapshot.byPrefix(Constants.R_HEADS);
+                    if (branches.isEmpty()) {
+                        return "No branches found to determine latest commit.";
+                    }
+                    branch = branches.get(0);
                 }
             }
+            if (branch.getObjectId() == null) {
+                return "No commits found on default branch.";
+            }
+            return revWalk.parseCommit(branch.getObjectId()).getName(); // .getName() gives the SHA-1 hash
+        }
+    }
+
+    /**
+     * A ref as listed by the REST API.
+     *
+     * @param peeledObjectId Object an annotated tag points at, or null.
+     * @param target         Target of a symbolic ref, or null.
+     */
+    public record RefEntry(String name, String objectId, String peeledObjectId, String target) {
+
+        static RefEntry of(Ref ref) {
+            return new RefEntry(ref.getName(),
+                    ref.getObjectId() != null ? ref.getObjectId().name() : null,
+                    ref.getPeeledObjectId() != null ? ref.getPeeledObjectId().name() : null,
+                    ref.isSymbolic() ? ref.getTarget().getName() : null);
+        }
+    }
+
+    /**
+     * One page of refs, sorted by name.
+     *
+     * @param nextCursor Pass as {@code after} to get the next page; null on the last page.
+     */
+    public record RefPage(int total, List<RefEntry> refs, String nextCursor) {
+    }
+
+    /**
+     * Lists refs under a prefix (e.g. {@code refs/heads/}, {@code refs/tags/v1.}) one page at a time, from the
+     * repository's cached ref snapshot.
+     *
+     * @param after Name of the last ref of the previous page, or null for the first page.
+     */
+    public RefPage listRefs(String repoName, String prefix, String after, int limit) throws IOException {
+        try (Repository repository = openRepository(repoName);
+             GitMetrics.Timing timing = gitMetrics.time("refs.list")) {
+            RefSnapshot snapshot = refSnapshotService.snapshot(repository);
+            String refPrefix = prefix != null ? prefix : "";
+            RefSnapshot.Page page = snapshot.page(refPrefix, after, limit);
+            int total = refPrefix.isEmpty() ? snapshot.size() : snapshot.byPrefix(refPrefix).size();
+            return new RefPage(total, page.refs().stream().map(RefEntry::of).toList(), page.nextCursor());
+        }
+    }
+
+    /**
+     * Ref storage format of a repository: {@code files} (loose refs and packed-refs) or {@code reftable}.
+     */
+    public String getRefStorage(String repoName) throws IOException {
+        try (Repository repository = openRepository(repoName)) {
+            return refStorage(repository);
+        }
+    }
 
-            Iterable<RevCommit> logs = git.log().add(git.getRepository().resolve(defaultBranch)).setMaxCount(1).call();
-            RevCommit latestCommit = logs.iterator().hasNext() ? logs.iterator().next() : null;
+    private static String refStorage(Repository repository) {
+        String storage = repository.getConfig().getString(ConfigConstants.CONFIG_EXTENSIONS_SECTION, null,
+                ConfigConstants.CONFIG_KEY_REF_STORAGE);
+        return ConfigConstants.CONFIG_REF_STORAGE_REFTABLE.equalsIgnoreCase(storage) ? REF_STORAGE_REFTABLE : REF_STORAGE_FILES;
+    }
 
-            if (latestCommit != null) {
-                return latestCommit.getId().getName(); // .getName() gives the SHA-1 hash
+    /**
+     * Converts a repository's refs to {@code reftable} or back to {@code files} storage, keeping reflogs.
+     * Reftable keeps all refs in a few sorted, binary-searchable files instead of one file per loose ref plus a
+     * packed-refs file that is rewritten on every pack-refs, which makes reads and updates cheap with very many
+     * refs. The conversion rewrites the ref database, so it should run while the repository is not being pushed to.
+     *
+     * @return The previous and new storage format.
+     */
+    public Map<String, Object> convertRefStorage(String repoName, String format) throws IOException {
+        String target = normalizeRefStorage(format);
+        getLocalRepoPath(repoName); // Validates the name
+        RepositoryInfo info = repositoryRegistry.get(repoName);
+        if (info == null) {
+            throw new ResourceNotFoundException("Repository '" + repoName + "' not found or is not a valid Git repository.");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        // Shared handles keep the old ref database open; drop them so the conversion works on a private handle
+        repositoryCache.invalidate(info.path());
+        try (GitMetrics.Timing timing = gitMetrics.time("refs.convert");
+             Repository repository = new FileRepositoryBuilder().setGitDir(info.gitDir().toFile()).setMustExist(true).build()) {
+            String previous = refStorage(repository);
+            result.put("previous", previous);
+            if (!previous.equals(target)) {
+                convertRefStorage(repository, target);
+                logger.info("Converted refs of repository {} from {} to {} storage", repoName, previous, target);
             }
-            return "No commits found on default branch.";
+        } finally {
+            repositoryCache.invalidate(info.path());
+            refSnapshotService.invalidate(info.gitDir());
+        }
+        result.put("refStorage", target);
+        return result;
+    }
+
+    private static void convertRefStorage(Repository repository, String target) throws IOException {
+        if (!(repository instanceof FileRepository fileRepository)) {
+            throw new IllegalStateException("Ref storage can only be converted for file based repositories.");
+        }
+        // JGit's name for the files backend is "refdir"
+        fileRepository.convertRefStorage(REF_STORAGE_REFTABLE.equals(target)
+                ? ConfigConstants.CONFIG_REF_STORAGE_REFTABLE : "refdir", true, false);
+    }
+
+    private String normalizeRefStorage(String format) {
+        String storage = format == null || format.isBlank() ? defaultRefStorage : format.trim().toLowerCase(Locale.ROOT);
+        if (!storage.equals(REF_STORAGE_FILES) && !storage.equals(REF_STORAGE_REFTABLE)) {
+            throw new IllegalArgumentException("Unknown ref storage '" + format + "', expected 'files' or 'reftable'.");
         }
+        return storage;
     }
 
-    private String extractRepoNameFromUrl(String repoUrl) {
+    /**
+     * Returns the local path of an already cloned repository, or null if it has not been cloned yet.
+     */
+    public Path findLocalRepository(String repoUrl) {
+        RepositoryInfo info = repositoryRegistry.get(extractRepoNameFromUrl(repoUrl));
+        return info != null ? info.path() : null;
+    }
+
+    String extractRepoNameFromUrl(String repoUrl) {
         String name = repoUrl.substring(repoUrl.lastIndexOf('/') + 1);
         if (name.endsWith(".git")) {
             name = name.substring(0, name.length() - 4);
@@ -163,6 +426,9 @@ public class GitService {
             return;
         }
         logger.info("Deleting directory: {}", directoryToBeDeleted.getAbsolutePath());
+        // Drop any cached handle first so it does not keep pointing at deleted packs
+        repositoryCache.invalidate(directoryToBeDeleted.toPath());
+        workingTreeStatusService.forget(directoryToBeDeleted.toPath());
         try {
             Files.walk(directoryToBeDeleted.toPath())
                     .sorted(Comparator.reverseOrder())
@@ -171,9 +437,19 @@ public class GitService {
         } catch (IOException e) {
             logger.error("Error deleting directory {}: {}", directoryToBeDeleted.getAbsolutePath(), e.getMessage());
         }
+        repositoryRegistry.refresh(directoryToBeDeleted.getName()); // Unregisters it unless the delete failed
     }
 
     public Path createLocalEmptyRepository(String repoName) throws IOException, GitAPIException {
+        return createLocalEmptyRepository(repoName, null);
+    }
+
+    /**
+     * Same as {@link #createLocalEmptyRepository(String)}, with {@code files} or {@code reftable} ref storage
+     * ({@code git.refs.default-storage} if null).
+     */
+    public Path createLocalEmptyRepository(String repoName, String refStorage) throws IOException, GitAPIException {
+        String storage = normalizeRefStorage(refStorage);
         Path localRepoPath = Paths.get(repositoriesBasePath, repoName);
 
         if (Files.exists(localRepoPath)) {
@@ -192,8 +468,14 @@ public class GitService {
         Files.createDirectories(localRepoPath); // This will create the 'repoName' directory
 
         logger.info("Initializing new empty Git repository '{}' at {}", repoName, localRepoPath);
+        repositoryCache.invalidate(localRepoPath); // In case a previous repository with this name was cached
         try (Git git = Git.init().setDirectory(localRepoPath.toFile()).call()) {
             logger.info("Successfully initialized empty repository: {}", git.getRepository().getDirectory());
+            commitGraphService.enableCommitGraph(git.getRepository()); // The graph itself is written on first push
+            if (REF_STORAGE_REFTABLE.equals(storage)) {
+                convertRefStorage(git.getRepository(), REF_STORAGE_REFTABLE);
+            }
+            repositoryRegistry.refresh(repoName);
             return localRepoPath;
         } catch (GitAPIException e) {
             logger.error("Failed to initialize Git repository '{}': {}", repoName, e.getMessage());
@@ -203,39 +485,31 @@ public class GitService {
         }
     }
 
-    public List<String> listLocalRepositories() throws IOException {
-        Path basePath = Paths.get(repositoriesBasePath);
-        List<String> repoNames = new ArrayList<>();
-
-        if (!Files.exists(basePath) || !Files.isDirectory(basePath)) {
-            logger.warn("Repositories base path '{}' does not exist or is not a directory. No local repositories to list.", repositoriesBasePath);
-            return repoNames; // Return empty list if base path is invalid
-        }
+    public List<String> listLocalRepositories() {
+        // Served from the registry; no directory scan per call
+        return repositoryRegistry.names();
+    }
 
-        logger.info("Scanning for local repositories in: {}", basePath.toAbsolutePath());
-        try (Stream<Path> stream = Files.list(basePath)) {
-            repoNames = stream
-                    .filter(Files::isDirectory)         // Consider only directories
-                    .filter(this::isValidGitRepository) // Check if it's a valid Git repo (has .git folder)
-                    .map(path -> path.getFileName().toString()) // Extract the directory name
-                    .sorted() // Optional: sort alphabetically
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            logger.error("Error listing local repositories in '{}': {}", repositoriesBasePath, e.getMessage(), e);
-            throw e; // Re-throw to be handled by the controller
+    /**
+     * Lists registered repositories with their metadata, filtered by name and bare flag, one page at a time.
+     */
+    public RepositoryRegistry.Page findLocalRepositories(String query, Boolean bare, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative.");
         }
-
-        logger.info("Found {} local repositories: {}", repoNames.size(), repoNames);
-        return repoNames;
+        return repositoryRegistry.find(query, bare, offset, limit);
     }
 
-    // --- Helper to get Git object for a repo name ---
-    private Git openRepository(String repoName) throws IOException {
-        Path localRepoPath = getLocalRepoPath(repoName);
-        if (!Files.exists(localRepoPath) || !isValidGitRepository(localRepoPath)) {
-            throw new ResourceNotFoundException("Repository '" + repoName + "' not found or is not a valid Git repository.");
+    // --- Helper to get a (cached) Repository for a repo name; callers must close it ---
+    private Repository openRepository(String repoName) throws IOException {
+        getLocalRepoPath(repoName); // Validates the name
+        try (GitMetrics.Timing timing = gitMetrics.time("open")) {
+            RepositoryInfo info = repositoryRegistry.get(repoName);
+            if (info == null) {
+                throw new ResourceNotFoundException("Repository '" + repoName + "' not found or is not a valid Git repository.");
+            }
+            return repositoryCache.open(info.path());
         }
-        return Git.open(localRepoPath.toFile());
     }
 
     private Path getLocalRepoPath(String repoName) {
@@ -250,13 +524,16 @@ public class GitService {
      * 1. Get Repository Status
      */
     public Map<String, Object> getRepositoryStatus(String repoName) throws IOException, GitAPIException {
-        try (Git git = openRepository(repoName)) {
-            Repository repository = git.getRepository();
+        try (Repository repository = openRepository(repoName)) {
             if (repository.isBare()) {
                 throw new UnsupportedOperationException("Cannot get status for a bare repository: " + repoName);
             }
 
-            Status status = git.status().call();
+            // Incremental: only paths changed since the previous request are re-checked
+            WorkingTreeStatus status;
+            try (GitMetrics.Timing timing = gitMetrics.time("status")) {
+                status = workingTreeStatusService.getStatus(repository);
+            }
             Map<String, Object> statusMap = new LinkedHashMap<>(); // Use LinkedHashMap to preserve order
 
             statusMap.put("repository", repoName);
@@ -283,82 +560,909 @@ public class GitService {
      * 2. List Commits (Log)
      */
     public List<Map<String, String>> getCommitLog(String repoName, String branchOrRefName, int maxCount, int skip) throws IOException, GitAPIException {
-        try (Git git = openRepository(repoName)) {
-            Repository repository = git.getRepository();
-            List<Map<String, String>> commits = new ArrayList<>();
+        List<Map<String, String>> commits = new ArrayList<>();
+        walkCommitLog(repoName, branchOrRefName, null, maxCount, skip, commits::add);
+        return commits;
+    }
 
-            LogCommand logCommand = git.log();
+    /**
+     * Receives commits one at a time as they are walked, so callers can stream them.
+     */
+    @FunctionalInterface
+    public interface CommitSink {
+        void accept(Map<String, String> commit) throws IOException;
+    }
 
-            ObjectId branchObjectId = repository.resolve(branchOrRefName);
-            if (branchObjectId == null) {
-                throw new ResourceNotFoundException("Branch or reference '" + branchOrRefName + "' not found in repository '" + repoName + "'.");
-            }
-            logCommand.add(branchObjectId);
+    /**
+     * Walks the commit log page by page using keyset cursors instead of skip/offset.
+     * <p>
+     * The cursor returned for a page is the walk frontier at the point the page ended: the commits that
+     * were queued but not yet emitted, joined with {@code ','}. For linear history that is a single commit id
+     * (the parent of the last emitted commit). Resuming from the cursor marks those commits as walk starts,
+     * so a deep page costs the same as the first one, and merged side branches are not lost across pages.
+     *
+     * @param after    Cursor from a previous page, or null to start at {@code branchOrRefName}.
+     * @param maxCount Page size; 0 or less means unlimited.
+     * @param skip     Legacy offset, applied after the cursor.
+     * @param sink     Receives each commit as it is walked.
+     * @return The cursor for the next page, or null when the history is exhausted.
+     */
+    public String walkCommitLog(String repoName, String branchOrRefName, String after, int maxCount, int skip, CommitSink sink) throws IOException {
+        return walkCommitLog(repoName, resolveLogStarts(repoName, branchOrRefName, after), maxCount, skip, sink);
+    }
 
-            if (maxCount > 0) {
-                logCommand.setMaxCount(maxCount);
+    /**
+     * Resolves where a log walk starts: the commits of a cursor, or the commit of a ref. Lets callers that stream
+     * the log report an unknown repository, ref or commit, or an invalid cursor, before anything is written.
+     *
+     * @throws IllegalArgumentException  If the cursor is malformed.
+     * @throws ResourceNotFoundException If the repository, ref or a cursor commit does not exist.
+     */
+    public List<ObjectId> resolveLogStarts(String repoName, String branchOrRefName, String after) throws IOException {
+        try (Repository repository = openRepository(repoName); RevWalk revWalk = new RevWalk(repository)) {
+            Set<ObjectId> starts = new LinkedHashSet<>();
+            if (after != null && !after.isBlank()) {
+                for (String id : after.split(",")) {
+                    if (!ObjectId.isId(id.trim())) {
+                        throw new IllegalArgumentException("Invalid log cursor: " + after);
+                    }
+                    starts.add(ObjectId.fromString(id.trim()));
+                }
+            } else {
+                ObjectId branchObjectId = resolve(repository, branchOrRefName);
+                if (branchObjectId == null) {
+                    throw new ResourceNotFoundException("Branch or reference '" + branchOrRefName + "' not found in repository '" + repoName + "'.");
+                }
+                starts.add(branchObjectId);
             }
-            if (skip > 0) {
-                logCommand.setSkip(skip);
+            List<ObjectId> commits = new ArrayList<>(starts.size());
+            for (ObjectId start : starts) {
+                try {
+                    commits.add(revWalk.parseCommit(start).copy());
+                } catch (MissingObjectException e) {
+                    throw new ResourceNotFoundException("Commit '" + start.name() + "' not found in repository '" + repoName + "'.", e);
+                }
             }
+            return commits;
+        }
+    }
 
-            Iterable<RevCommit> logs = logCommand.call();
-            for (RevCommit rev : logs) {
-                Map<String, String> commitDetails = new LinkedHashMap<>();
-                commitDetails.put("hash", rev.getId().getName());
-                commitDetails.put("shortMessage", rev.getShortMessage());
-                commitDetails.put("fullMessage", rev.getFullMessage());
-
-                PersonIdent authorIdent = rev.getAuthorIdent();
-                commitDetails.put("authorName", authorIdent.getName());
-                commitDetails.put("authorEmail", authorIdent.getEmailAddress());
-                commitDetails.put("authorDate", dateFormat.format(authorIdent.getWhen()));
+    /**
+     * Same as {@link #walkCommitLog(String, String, String, int, int, CommitSink)}, from starts resolved by
+     * {@link #resolveLogStarts}.
+     */
+    public String walkCommitLog(String repoName, List<ObjectId> starts, int maxCount, int skip, CommitSink sink) throws IOException {
+        try (Repository repository = openRepository(repoName); RevWalk revWalk = new RevWalk(repository)) {
+            for (ObjectId start : starts) {
+                try {
+                    revWalk.markStart(revWalk.parseCommit(start));
+                } catch (MissingObjectException e) {
+                    throw new ResourceNotFoundException("Commit '" + start.name() + "' not found in repository '" + repoName + "'.", e);
+                }
+            }
 
-                PersonIdent committerIdent = rev.getCommitterIdent();
-                commitDetails.put("committerName", committerIdent.getName());
-                commitDetails.put("committerEmail", committerIdent.getEmailAddress());
-                commitDetails.put("committerDate", dateFormat.format(committerIdent.getWhen()));
+            // Frontier = walk starts plus parents of emitted commits, minus emitted commits
+            RevFlag emittedFlag = revWalk.newFlag("EMITTED");
+            Set<ObjectId> frontier = new LinkedHashSet<>(starts);
+            int skipped = 0;
+            int emitted = 0;
+            RevCommit rev;
+            try (GitMetrics.Timing timing = gitMetrics.time("walk")) { // Includes handing commits to the sink
+                while ((maxCount <= 0 || emitted < maxCount) && (rev = revWalk.next()) != null) {
+                    frontier.remove(rev);
+                    for (RevCommit parent : rev.getParents()) {
+                        if (!parent.has(emittedFlag)) {
+                            frontier.add(parent.copy());
+                        }
+                    }
+                    rev.add(emittedFlag);
+                    if (skipped < skip) {
+                        skipped++;
+                        continue;
+                    }
+                    sink.accept(toCommitMap(rev));
+                    emitted++;
+                }
+            }
 
-                commits.add(commitDetails);
+            if (maxCount <= 0 || frontier.isEmpty()) {
+                return null;
             }
-            return commits;
+            return frontier.stream().map(ObjectId::getName).collect(Collectors.joining(","));
         }
     }
 
+    private Map<String, String> toCommitMap(RevCommit rev) {
+        Map<String, String> commitDetails = new LinkedHashMap<>();
+        commitDetails.put("hash", rev.getId().getName());
+        commitDetails.put("shortMessage", rev.getShortMessage());
+        commitDetails.put("fullMessage", rev.getFullMessage());
+
+        PersonIdent authorIdent = rev.getAuthorIdent();
+        commitDetails.put("authorName", authorIdent.getName());
+        commitDetails.put("authorEmail", authorIdent.getEmailAddress());
+        commitDetails.put("authorDate", dateFormat.format(authorIdent.getWhenAsInstant()));
+
+        PersonIdent committerIdent = rev.getCommitterIdent();
+        commitDetails.put("committerName", committerIdent.getName());
+        commitDetails.put("committerEmail", committerIdent.getEmailAddress());
+        commitDetails.put("committerDate", dateFormat.format(committerIdent.getWhenAsInstant()));
+        return commitDetails;
+    }
 
     /**
      * 3. Get File Content at a Specific Commit/Branch
      */
     public String getFileContent(String repoName, String filePath, String refName) throws IOException, GitAPIException {
-        try (Git git = openRepository(repoName)) {
-            Repository repository = git.getRepository();
+        try (Repository repository = openRepository(repoName)) {
+            return withLazyFetch(repository, () -> {
+                ObjectId objectId = findBlobId(repository, repoName, filePath, refName);
+                ByteBuffer cached = blobCache.get(objectId);
+                if (cached != null) {
+                    return StandardCharsets.UTF_8.decode(cached).toString();
+                }
+                try (GitMetrics.Timing timing = gitMetrics.time("blob.load")) {
+                    ObjectLoader loader = repository.open(objectId, Constants.OBJ_BLOB);
+                    byte[] bytes = loader.getBytes();
+                    blobCache.put(objectId, bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            });
+        }
+    }
 
-            ObjectId refObjectId = repository.resolve(refName);
+    /**
+     * One file matched by {@link #readFiles}.
+     */
+    public record FileEntry(String path, ObjectId blobId, FileMode mode, long size) {
+    }
+
+    /**
+     * Outcome of {@link #readFiles}: requested paths that matched nothing or whose blob is not available locally,
+     * and whether the walk stopped at the file limit.
+     */
+    public record FileBatchResult(List<String> missing, boolean truncated) {
+    }
+
+    /**
+     * Receives the files of a batch read in tree order. The loader is only valid during the call.
+     */
+    @FunctionalInterface
+    public interface FileSink {
+        void accept(FileEntry file, ObjectLoader content) throws IOException;
+    }
+
+    /**
+     * Reads many files at one ref: the ref and commit are resolved once and the tree is walked once, restricted to
+     * the requested paths and to the directory prefixes of the globs.
+     * <p>
+     * A path names a file, or a directory whose files are all read. Globs match whole paths, with {@code *} and
+     * {@code ?} staying within one directory and {@code **} crossing directories ({@code docs/**}{@code /*.md}).
+     * Blobs left out of a partial clone are reported as missing rather than fetched.
+     *
+     * @param maxFiles Stop after this many files.
+     */
+    public FileBatchResult readFiles(String repoName, String refName, Collection<String> paths, Collection<String> globs,
+                                     int maxFiles, FileSink sink) throws IOException {
+        if (paths.isEmpty() && globs.isEmpty()) {
+            throw new IllegalArgumentException("At least one path or glob is required.");
+        }
+        Set<String> exact = new LinkedHashSet<>();
+        for (String path : paths) {
+            exact.add(normalizeTreePath(path));
+        }
+        List<Pattern> patterns = new ArrayList<>();
+        Set<String> prefixes = new LinkedHashSet<>(exact);
+        boolean walkAll = false;
+        for (String glob : globs) {
+            String normalized = normalizeTreePath(glob);
+            patterns.add(globToPattern(normalized));
+            String prefix = globPrefix(normalized);
+            if (prefix.isEmpty()) {
+                walkAll = true;
+            } else {
+                prefixes.add(prefix);
+            }
+        }
+
+        try (Repository repository = openRepository(repoName)) {
+            ObjectId refObjectId = resolve(repository, refName);
             if (refObjectId == null) {
                 throw new ResourceNotFoundException("Reference '" + refName + "' not found in repository '" + repoName + "'.");
             }
+            Set<String> unmatched = new LinkedHashSet<>(exact);
+            List<String> missing = new ArrayList<>();
+            boolean truncated = false;
+            try (RevWalk revWalk = new RevWalk(repository);
+                 TreeWalk treeWalk = new TreeWalk(repository);
+                 GitMetrics.Timing timing = gitMetrics.time("tree.batch")) {
+                treeWalk.addTree(revWalk.parseCommit(refObjectId).getTree());
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(walkAll ? TreeFilter.ALL : PathFilterGroup.createFromStrings(prefixes));
+                ObjectReader reader = treeWalk.getObjectReader();
+
+                int emitted = 0;
+                while (treeWalk.next()) {
+                    FileMode mode = treeWalk.getFileMode(0);
+                    if (mode.getObjectType() != Constants.OBJ_BLOB) {
+                        continue; // Submodule
+                    }
+                    String path = treeWalk.getPathString();
+                    String requested = matchRequested(exact, path);
+                    if (requested == null && patterns.stream().noneMatch(pattern -> pattern.matcher(path).matches())) {
+                        continue;
+                    }
+                    if (requested != null) {
+                        unmatched.remove(requested);
+                    }
+                    if (emitted == maxFiles) {
+                        truncated = true;
+                        break;
+                    }
+
+                    ObjectId blobId = treeWalk.getObjectId(0);
+                    ObjectLoader loader;
+                    ByteBuffer cached = blobCache.get(blobId);
+                    if (cached != null) {
+                        byte[] bytes = new byte[cached.remaining()];
+                        cached.get(bytes);
+                        loader = new ObjectLoader.SmallObject(Constants.OBJ_BLOB, bytes);
+                    } else {
+                        try {
+                            loader = reader.open(blobId, Constants.OBJ_BLOB);
+                        } catch (MissingObjectException e) {
+                            missing.add(path);
+                            continue;
+                        }
+                        if (!loader.isLarge() && blobCache.admits(loader.getSize())) {
+                            blobCache.put(blobId, loader.getCachedBytes());
+                        }
+                    }
+                    sink.accept(new FileEntry(path, blobId.copy(), mode, loader.getSize()), loader);
+                    emitted++;
+                }
+            }
+            if (!truncated) {
+                missing.addAll(0, unmatched); // Paths after the limit were never reached
+            }
+            return new FileBatchResult(missing, truncated);
+        }
+    }
+
+    /**
+     * Returns the requested path that {@code path} is, or lies under, or null.
+     */
+    private static String matchRequested(Set<String> exact, String path) {
+        if (exact.contains(path)) {
+            return path;
+        }
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            String parent = path.substring(0, slash);
+            if (exact.contains(parent)) {
+                return parent;
+            }
+        }
+        return null;
+    }
 
-            try (RevWalk revWalk = new RevWalk(repository)) {
-                RevCommit commit = revWalk.parseCommit(refObjectId);
-                org.eclipse.jgit.lib.ObjectId treeId = commit.getTree().getId(); // Use fully qualified name
+    private static String normalizeTreePath(String path) {
+        String normalized = path.trim();
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("Empty path in file batch.");
+        }
+        return normalized;
+    }
 
-                try (TreeWalk treeWalk = new TreeWalk(repository)) {
-                    treeWalk.addTree(treeId);
-                    treeWalk.setRecursive(true); // Important if filePath is nested
-                    treeWalk.setFilter(PathFilter.create(filePath));
+    /**
+     * Leading directories of a glob that contain no wildcard, used to prune the tree walk.
+     */
+    private static String globPrefix(String glob) {
+        int wildcard = -1;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                wildcard = i;
+                break;
+            }
+        }
+        if (wildcard < 0) {
+            return glob;
+        }
+        int slash = glob.lastIndexOf('/', wildcard);
+        return slash < 0 ? "" : glob.substring(0, slash);
+    }
+
+    private static Pattern globToPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                i++;
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                    i++;
+                    regex.append("(?:.*/)?"); // "**/" also matches no directory at all
+                } else {
+                    regex.append(".*");
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
 
-                    if (!treeWalk.next()) {
-                        throw new ResourceNotFoundException("File '" + filePath + "' not found in reference '" + refName + "' of repository '" + repoName + "'.");
+    /**
+     * One entry of a directory listing.
+     *
+     * @param type       blob, tree or commit (submodule).
+     * @param size       Blob size, null for trees, submodules and blobs missing from a partial clone.
+     * @param lastCommit Last commit changing the entry, when requested and found.
+     */
+    public record TreeEntry(String name, String path, String type, String mode, String objectId, Long size,
+                            LastCommitService.LastCommit lastCommit) {
+    }
+
+    /**
+     * One page of a directory listing.
+     *
+     * @param nextCursor Pass as {@code after} to get the next page, null on the last page.
+     */
+    public record TreePage(String commitId, String path, String treeId, List<TreeEntry> entries, String nextCursor) {
+    }
+
+    /**
+     * Lists one level of a directory at a ref, in Git's tree order, without descending into subdirectories.
+     * <p>
+     * Pages are keyed on the last entry returned: the cursor is its name, with a trailing {@code /} for trees,
+     * which is exactly the key Git sorts tree entries by. A page after the cursor only costs a scan of the
+     * directory's own (already loaded) entries.
+     *
+     * @param dirPath    Directory path, empty or null for the root.
+     * @param after      Cursor from a previous page, or null for the first page.
+     * @param lastCommit Also find the last commit changing each entry of the page, see {@link LastCommitService}.
+     */
+    public TreePage listTree(String repoName, String refName, String dirPath, String after, int limit,
+                             boolean lastCommit) throws IOException {
+        String path = dirPath == null ? "" : dirPath.replaceAll("^/+|/+$", "");
+        try (Repository repository = openRepository(repoName);
+             RevWalk revWalk = new RevWalk(repository);
+             GitMetrics.Timing timing = gitMetrics.time("tree.list")) {
+            ObjectId commitId = resolveCommitId(repository, repoName, refName);
+            RevCommit commit = revWalk.parseCommit(commitId);
+            ObjectId treeId;
+            if (path.isEmpty()) {
+                treeId = commit.getTree();
+            } else {
+                try (TreeWalk dirWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+                    if (dirWalk == null) {
+                        throw new ResourceNotFoundException("Path '" + path + "' not found in reference '" + refName + "' of repository '" + repoName + "'.");
+                    }
+                    if (!dirWalk.isSubtree()) {
+                        throw new IllegalArgumentException("Path '" + path + "' is not a directory.");
+                    }
+                    treeId = dirWalk.getObjectId(0);
+                }
+            }
+
+            List<TreeEntry> entries = new ArrayList<>();
+            String nextCursor = null;
+            String lastKey = null;
+            byte[] cursor = after != null && !after.isEmpty() ? after.getBytes(StandardCharsets.UTF_8) : null;
+            try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                treeWalk.addTree(treeId);
+                treeWalk.setRecursive(false);
+                ObjectReader reader = treeWalk.getObjectReader();
+                while (treeWalk.next()) {
+                    FileMode mode = treeWalk.getFileMode(0);
+                    String name = treeWalk.getNameString();
+                    String key = mode == FileMode.TREE ? name + "/" : name;
+                    if (cursor != null && Arrays.compareUnsigned(key.getBytes(StandardCharsets.UTF_8), cursor) <= 0) {
+                        continue;
+                    }
+                    if (entries.size() == limit) {
+                        nextCursor = lastKey;
+                        break;
                     }
+                    lastKey = key;
 
                     ObjectId objectId = treeWalk.getObjectId(0);
-                    ObjectLoader loader = repository.open(objectId, Constants.OBJ_BLOB);
-                    byte[] bytes = loader.getBytes();
-                    return new String(bytes, StandardCharsets.UTF_8);
-                } finally {
-                    revWalk.dispose(); // Explicitly dispose RevWalk if not in try-with-resources for it
+                    String type;
+                    Long size = null;
+                    if (mode == FileMode.TREE) {
+                        type = "tree";
+                    } else if (mode == FileMode.GITLINK) {
+                        type = "commit";
+                    } else {
+                        type = "blob";
+                        try {
+                            size = reader.getObjectSize(objectId, Constants.OBJ_BLOB);
+                        } catch (MissingObjectException e) {
+                            // Left out by a partial clone filter
+                        }
+                    }
+                    entries.add(new TreeEntry(name, path.isEmpty() ? name : path + "/" + name, type, mode.toString(),
+                            objectId.name(), size, null));
+                }
+            }
+
+            if (lastCommit && !entries.isEmpty()) {
+                Map<String, LastCommitService.LastCommit> lastCommits = lastCommitService.lastCommits(repository, commitId, path,
+                        entries.stream().map(TreeEntry::name).toList());
+                entries.replaceAll(entry -> new TreeEntry(entry.name(), entry.path(), entry.type(), entry.mode(),
+                        entry.objectId(), entry.size(), lastCommits.get(entry.name())));
+            }
+            return new TreePage(commitId.name(), path, treeId.name(), entries, nextCursor);
+        }
+    }
+
+    /**
+     * Describes a blob resolved from a (ref, path) pair, without loading its content.
+     */
+    public record BlobInfo(String path, ObjectId blobId, long size) {
+    }
+
+    /**
+     * Resolves a file at a ref to its blob id and size, for streaming downloads.
+     */
+    public BlobInfo resolveBlob(String repoName, String filePath, String refName) throws IOException {
+        try (Repository repository = openRepository(repoName)) {
+            return withLazyFetch(repository, () -> {
+                ObjectId objectId = findBlobId(repository, repoName, filePath, refName);
+                try (ObjectReader reader = repository.newObjectReader()) {
+                    long size = reader.getObjectSize(objectId, Constants.OBJ_BLOB);
+                    return new BlobInfo(filePath, objectId, size);
+                }
+            });
+        }
+    }
+
+    /**
+     * Streams {@code length} bytes of a blob starting at {@code offset} to the given output stream.
+     * Large blobs are read through {@link ObjectLoader#openStream()}, so only a constant-size buffer
+     * is held in memory regardless of the blob size.
+     */
+    public void writeBlob(String repoName, ObjectId blobId, long offset, long length, OutputStream out) throws IOException {
+        ByteBuffer cached = blobCache.get(blobId);
+        if (cached != null && offset + length <= cached.remaining()) {
+            cached.position((int) offset).limit((int) (offset + length));
+            byte[] buffer = new byte[(int) Math.min(STREAM_BUFFER_SIZE, length)];
+            while (cached.hasRemaining()) {
+                int chunk = Math.min(buffer.length, cached.remaining());
+                cached.get(buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+            }
+            return;
+        }
+        try (Repository repository = openRepository(repoName);
+             GitMetrics.Timing timing = gitMetrics.time("blob.stream");
+             InputStream in = repository.open(blobId, Constants.OBJ_BLOB).openStream()) {
+            long toSkip = offset;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) {
+                    throw new EOFException("Unexpected end of blob " + blobId.name() + " while seeking to " + offset);
+                }
+                toSkip -= skipped;
+            }
+
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of blob " + blobId.name());
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface RepositoryOperation<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Runs an object read against a repository; if it is a partial clone and an object left out by the clone
+     * filter is missing, fetches that object from origin and retries. A missing tree comes with all the trees below
+     * it but none of their blobs, so a read from a tree:0 clone takes one fetch for the trees and one per blob.
+     */
+    static <T> T withLazyFetch(Repository repository, RepositoryOperation<T> operation) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return operation.run();
+            } catch (MissingObjectException e) {
+                if (attempt >= MAX_LAZY_FETCHES || getPartialCloneFilter(repository) == null) {
+                    throw e;
+                }
+                logger.info("Lazily fetching missing object {} into partial clone {}", e.getObjectId().name(), repository.getDirectory());
+                fetchMissingObject(repository, e.getObjectId());
+            }
+        }
+    }
+
+    /**
+     * Fetches one object of a partial clone from origin, like C git's promisor fetch: filtered with blob:none
+     * (a blob that is asked for by id is still sent) and without negotiation. Sending the clone's commits as
+     * haves would make upload-pack treat every tree and blob reachable from them as present and send nothing, so
+     * the object is fetched into an empty scratch repository and the received pack is moved into the clone.
+     */
+    static void fetchMissingObject(Repository repository, ObjectId objectId) throws IOException {
+        String originUrl = repository.getConfig().getString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME,
+                ConfigConstants.CONFIG_KEY_URL);
+        if (originUrl == null) {
+            throw new IOException("Partial clone " + repository.getDirectory() + " has no origin to fetch " + objectId.name() + " from.");
+        }
+        Path packDir = repository.getDirectory().toPath().resolve(Constants.OBJECTS).resolve("pack");
+        Path scratch = Files.createTempDirectory(repository.getDirectory().toPath(), "lazy-fetch-");
+        try {
+            FilterSpec blobNone = CloneOptions.filterSpec("blob:none");
+            try (Git git = Git.init().setBare(true).setDirectory(scratch.toFile()).call()) {
+                git.fetch()
+                        .setRemote(originUrl)
+                        .setRefSpecs(new RefSpec(objectId.name()))
+                        .setTagOpt(TagOpt.NO_TAGS)
+                        .setTransportConfigCallback(transport -> transport.setFilterSpec(blobNone))
+                        .call();
+            } catch (GitAPIException fetchError) {
+                throw new IOException("Could not fetch missing object " + objectId.name() + " from origin: " + fetchError.getMessage(), fetchError);
+            }
+            List<Path> received;
+            try (Stream<Path> files = Files.list(scratch.resolve(Constants.OBJECTS).resolve("pack"))) {
+                received = files.filter(file -> !file.getFileName().toString().endsWith(".keep")).toList();
+            }
+            Files.createDirectories(packDir);
+            // Index first and pack last, so the object directory never sees a pack without its index
+            for (Path file : received) {
+                if (!file.getFileName().toString().endsWith(".pack")) {
+                    Files.move(file, packDir.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            for (Path file : received) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".pack")) {
+                    // Marks the pack as fetched from the promisor remote, as C git does
+                    Files.write(packDir.resolve(name.substring(0, name.length() - ".pack".length()) + ".promisor"), new byte[0]);
+                    Files.move(file, packDir.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } finally {
+            FileUtils.delete(scratch.toFile(), FileUtils.RECURSIVE | FileUtils.IGNORE_ERRORS);
+        }
+    }
+
+    private static String getPartialCloneFilter(Repository repository) {
+        StoredConfig config = repository.getConfig();
+        if (!config.getBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, CONFIG_KEY_PROMISOR, false)) {
+            return null;
+        }
+        return config.getString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, CONFIG_KEY_PARTIAL_CLONE_FILTER);
+    }
+
+    // --- Helper to resolve ref + path to a blob id ---
+    private ObjectId findBlobId(Repository repository, String repoName, String filePath, String refName) throws IOException {
+        ObjectId refObjectId = resolve(repository, refName);
+        if (refObjectId == null) {
+            throw new ResourceNotFoundException("Reference '" + refName + "' not found in repository '" + repoName + "'.");
+        }
+
+        // Keyed on the object the ref points at: a commit's tree never changes, so the lookup is only done once
+        ObjectId memoized = blobCache.getPath(refObjectId, filePath);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            RevCommit commit = revWalk.parseCommit(refObjectId);
+
+            try (GitMetrics.Timing timing = gitMetrics.time("tree.lookup"); TreeWalk treeWalk = new TreeWalk(repository)) {
+                treeWalk.addTree(commit.getTree().getId());
+                treeWalk.setRecursive(true); // Important if filePath is nested
+                treeWalk.setFilter(PathFilter.create(filePath));
+
+                if (!treeWalk.next()) {
+                    throw new ResourceNotFoundException("File '" + filePath + "' not found in reference '" + refName + "' of repository '" + repoName + "'.");
+                }
+                ObjectId blobId = treeWalk.getObjectId(0);
+                blobCache.putPath(refObjectId, filePath, blobId);
+                return blobId;
+            }
+        }
+    }
+
+    /**
+     * The two sides of a diff, resolved before any output is written.
+     */
+    public record DiffTrees(ObjectId baseCommit, ObjectId headCommit, ObjectId baseTree, ObjectId headTree) {
+    }
+
+    /**
+     * Options of {@link #diff}.
+     *
+     * @param patch       Include the unified diff of each file, not just its stats.
+     * @param renames     Detect renames and copies, up to {@code renameLimit} added/deleted file pairs.
+     * @param context     Lines of context around each hunk.
+     * @param maxFiles    Stop after this many files.
+     * @param maxBytes    Stop before the patch text exceeds this many bytes.
+     */
+    public record DiffOptions(boolean patch, boolean renames, int renameLimit, int context, int maxFiles, long maxBytes) {
+    }
+
+    /**
+     * One changed file. Paths and ids are null on the side where the file does not exist.
+     *
+     * @param score Similarity for renames and copies, 0 otherwise.
+     * @param patch Unified diff of the file, or null if not requested.
+     */
+    public record DiffFile(String changeType, String oldPath, String newPath, String oldId, String newId, int score,
+                           int additions, int deletions, boolean binary, byte[] patch) {
+    }
+
+    /**
+     * Totals of a diff.
+     *
+     * @param truncated True if the file or byte limit stopped the diff early.
+     * @param cached    True if the result was served from the {@link DiffCache}.
+     */
+    public record DiffSummary(String baseCommit, String headCommit, int files, int additions, int deletions,
+                              boolean truncated, boolean renameLimitExceeded, boolean cached) {
+    }
+
+    /**
+     * Receives changed files one at a time as they are diffed, so callers can stream them.
+     */
+    @FunctionalInterface
+    public interface DiffSink {
+        void accept(DiffFile file) throws IOException;
+    }
+
+    /**
+     * Resolves the commits and trees to compare. With {@code mergeBase}, the base side is the merge base of the
+     * two commits, so only the changes made on {@code head} show up (like {@code git diff base...head}).
+     */
+    public DiffTrees resolveDiffTrees(String repoName, String base, String head, boolean mergeBase) throws IOException {
+        try (Repository repository = openRepository(repoName); RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId baseId = resolveCommitId(repository, repoName, base);
+            ObjectId headId = resolveCommitId(repository, repoName, head);
+            if (mergeBase) {
+                List<ObjectId> bases = commitGraphService.findMergeBases(repository, baseId, headId);
+                if (bases.isEmpty()) {
+                    throw new ResourceNotFoundException("Commits '" + base + "' and '" + head + "' have no merge base in repository '" + repoName + "'.");
                 }
+                baseId = bases.get(0);
             }
+            return new DiffTrees(baseId.copy(), headId.copy(), revWalk.parseCommit(baseId).getTree().copy(),
+                    revWalk.parseCommit(headId).getTree().copy());
+        }
+    }
+
+    /**
+     * Diffs two trees file by file, handing each file to the sink as soon as it is diffed rather than building
+     * the whole patch first. Results are cached by the pair of tree ids and the options, see {@link DiffCache}.
+     */
+    public DiffSummary diff(String repoName, DiffTrees trees, DiffOptions options, DiffSink sink) throws IOException {
+        DiffCache.Key key = new DiffCache.Key(trees.baseTree(), trees.headTree(), options);
+        DiffSummary cached = diffCache.replay(key, sink);
+        if (cached != null) {
+            return new DiffSummary(trees.baseCommit().name(), trees.headCommit().name(), cached.files(),
+                    cached.additions(), cached.deletions(), cached.truncated(), cached.renameLimitExceeded(), true);
+        }
+
+        try (Repository repository = openRepository(repoName);
+             GitMetrics.Timing timing = gitMetrics.time("diff");
+             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+             DiffFormatter formatter = new DiffFormatter(buffer)) {
+            formatter.setRepository(repository);
+            formatter.setContext(options.context());
+            formatter.setDetectRenames(options.renames());
+            if (options.renames()) {
+                formatter.getRenameDetector().setRenameLimit(options.renameLimit());
+            }
+            List<DiffEntry> entries = formatter.scan(trees.baseTree(), trees.headTree());
+            boolean renameLimitExceeded = options.renames() && formatter.getRenameDetector().isOverRenameLimit();
+
+            List<DiffFile> collected = new ArrayList<>();
+            long collectedBytes = 0;
+            int files = 0;
+            int additions = 0;
+            int deletions = 0;
+            long patchBytes = 0;
+            boolean truncated = false;
+            for (DiffEntry entry : entries) {
+                if (files == options.maxFiles()) {
+                    truncated = true;
+                    break;
+                }
+                buffer.reset();
+                formatter.format(entry);
+                formatter.flush();
+                byte[] patch = buffer.toByteArray();
+                if (options.patch() && patchBytes + patch.length > options.maxBytes()) {
+                    truncated = true;
+                    break;
+                }
+
+                int[] stats = countChangedLines(patch);
+                boolean binary = stats[2] == 0 && contains(patch, BINARY_PATCH_MARKER);
+                DiffFile file = new DiffFile(entry.getChangeType().name(),
+                        entry.getChangeType() == DiffEntry.ChangeType.ADD ? null : entry.getOldPath(),
+                        entry.getChangeType() == DiffEntry.ChangeType.DELETE ? null : entry.getNewPath(),
+                        entry.getChangeType() == DiffEntry.ChangeType.ADD ? null : entry.getOldId().name(),
+                        entry.getChangeType() == DiffEntry.ChangeType.DELETE ? null : entry.getNewId().name(),
+                        entry.getScore(), stats[0], stats[1], binary, options.patch() ? patch : null);
+                sink.accept(file);
+                files++;
+                additions += stats[0];
+                deletions += stats[1];
+                if (options.patch()) {
+                    patchBytes += patch.length;
+                }
+
+                // Keep the result for the cache while it stays small enough to be cached
+                if (collected != null) {
+                    collectedBytes += 256 + (options.patch() ? patch.length : 0);
+                    if (collectedBytes > diffCache.getMaxEntryBytes()) {
+                        collected = null;
+                    } else {
+                        collected.add(file);
+                    }
+                }
+            }
+
+            DiffSummary summary = new DiffSummary(trees.baseCommit().name(), trees.headCommit().name(), files,
+                    additions, deletions, truncated, renameLimitExceeded, false);
+            if (collected != null) {
+                diffCache.put(key, collected, summary, collectedBytes);
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * Counts added and removed lines in the hunks of a one-file patch.
+     *
+     * @return Additions, deletions and number of hunks.
+     */
+    private static int[] countChangedLines(byte[] patch) {
+        int[] stats = new int[3];
+        boolean inHunk = false;
+        int lineStart = 0;
+        while (lineStart < patch.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < patch.length && patch[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd > lineStart + 1 && patch[lineStart] == '@' && patch[lineStart + 1] == '@') {
+                inHunk = true; // Header lines ("--- a/...", "+++ b/...") only come before the first hunk
+                stats[2]++;
+            } else if (inHunk && lineEnd > lineStart) {
+                if (patch[lineStart] == '+') {
+                    stats[0]++;
+                } else if (patch[lineStart] == '-') {
+                    stats[1]++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return stats;
+    }
+
+    private static boolean contains(byte[] data, byte[] marker) {
+        outer:
+        for (int i = 0; i + marker.length <= data.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (data[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The commit and file a blame request resolved to.
+     */
+    public record BlameTarget(ObjectId commit, String path) {
+    }
+
+    /**
+     * Resolves the commit of a blame request and checks the path is a file there.
+     */
+    public BlameTarget resolveBlameTarget(String repoName, String refName, String filePath) throws IOException {
+        String path = filePath == null ? "" : filePath.replaceAll("^/+|/+$", "");
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("A file path is required.");
+        }
+        try (Repository repository = openRepository(repoName); RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId commitId = resolveCommitId(repository, repoName, refName);
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, revWalk.parseCommit(commitId).getTree())) {
+                if (treeWalk == null) {
+                    throw new ResourceNotFoundException("File '" + path + "' not found in reference '" + refName + "' of repository '" + repoName + "'.");
+                }
+                if (treeWalk.isSubtree()) {
+                    throw new IllegalArgumentException("Path '" + path + "' is a directory.");
+                }
+            }
+            return new BlameTarget(commitId.copy(), path);
+        }
+    }
+
+    /**
+     * Blames a file, handing line ranges to the sink as they are attributed. See {@link BlameService} for the
+     * caching and incremental reuse of earlier results.
+     */
+    public BlameService.BlameSummary blame(String repoName, BlameTarget target, BlameService.RegionSink sink) throws IOException {
+        try (Repository repository = openRepository(repoName);
+             GitMetrics.Timing timing = gitMetrics.time("blame")) {
+            return blameService.blame(repository, target.commit(), target.path(), sink);
+        }
+    }
+
+    /**
+     * Computes the merge base(s) of two commits, using commit-graph generation numbers when available.
+     */
+    public Map<String, Object> getMergeBase(String repoName, String first, String second) throws IOException {
+        try (Repository repository = openRepository(repoName)) {
+            ObjectId firstId = resolveCommitId(repository, repoName, first);
+            ObjectId secondId = resolveCommitId(repository, repoName, second);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("repository", repoName);
+            result.put("first", firstId.getName());
+            result.put("second", secondId.getName());
+            try (GitMetrics.Timing timing = gitMetrics.time("merge-base")) {
+                result.put("mergeBases", commitGraphService.findMergeBases(repository, firstId, secondId).stream()
+                        .map(ObjectId::getName)
+                        .collect(Collectors.toList()));
+            }
+            result.put("commitGraph", commitGraphService.hasCommitGraph(repository));
+            return result;
+        }
+    }
+
+    /**
+     * Checks whether one commit is an ancestor of (reachable from) another.
+     */
+    public Map<String, Object> isAncestor(String repoName, String ancestor, String descendant) throws IOException {
+        try (Repository repository = openRepository(repoName)) {
+            ObjectId ancestorId = resolveCommitId(repository, repoName, ancestor);
+            ObjectId descendantId = resolveCommitId(repository, repoName, descendant);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("repository", repoName);
+            result.put("ancestor", ancestorId.getName());
+            result.put("descendant", descendantId.getName());
+            try (GitMetrics.Timing timing = gitMetrics.time("is-ancestor")) {
+                result.put("isAncestor", commitGraphService.isAncestor(repository, ancestorId, descendantId));
+            }
+            result.put("commitGraph", commitGraphService.hasCommitGraph(repository));
+            return result;
+        }
+    }
+
+    private ObjectId resolve(Repository repository, String revision) throws IOException {
+        try (GitMetrics.Timing timing = gitMetrics.time("resolve")) {
+            return repository.resolve(revision);
+        }
+    }
+
+    private ObjectId resolveCommitId(Repository repository, String repoName, String refName) throws IOException {
+        ObjectId objectId = resolve(repository, refName + "^{commit}");
+        if (objectId == null) {
+            throw new ResourceNotFoundException("Commit or reference '" + refName + "' not found in repository '" + repoName + "'.");
         }
+        return objectId;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,195 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the last commit that changed each entry of a directory, for the tree browsing API.
+ * <p>
+ * History is followed along first parents, so a change made on a merged branch is attributed to the merge. The
+ * walk only compares the directory's own tree between a commit and its parent, and only reads the directory's
+ * entries for commits where that tree changed, so it never walks the whole tree. It stops as soon as the
+ * requested entries are all attributed, so a page of a huge directory only pays for its own entries.
+ * <p>
+ * Results are cached per directory tree id and the commit that introduced that tree: new commits elsewhere in the
+ * repository resolve to the same cache entry, which fills up incrementally as more pages are requested.
+ */
+@Service
+public class LastCommitService {
+
+    @Value("${git.tree.last-commit-cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${git.tree.last-commit-max-commits:20000}")
+    private int maxCommits;
+
+    /**
+     * Summary of the commit that last changed an entry.
+     */
+    public record LastCommit(String hash, String shortMessage, String authorName, String authorDate) {
+
+        static LastCommit of(RevCommit commit) {
+            return new LastCommit(commit.getName(), commit.getShortMessage(), commit.getAuthorIdent().getName(),
+                    commit.getAuthorIdent().getWhenAsInstant().toString());
+        }
+    }
+
+    private record Key(ObjectId introducedBy, ObjectId treeId, String path) {
+    }
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<Key, Map<String, LastCommit>> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong commitsWalked = new AtomicLong();
+
+    /**
+     * Returns the last commit changing each of {@code names} in directory {@code dirPath} as of {@code start}.
+     * Names that could not be attributed within {@code git.tree.last-commit-max-commits} commits are left out.
+     *
+     * @param dirPath Directory path, empty for the root.
+     */
+    public Map<String, LastCommit> lastCommits(Repository repository, ObjectId start, String dirPath,
+                                               Collection<String> names) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(start);
+            ObjectId treeId = directoryTree(walk, commit, dirPath);
+            if (treeId == null) {
+                return Map.of();
+            }
+
+            // Skip commits that left the directory untouched, down to the one that produced its current tree
+            RevCommit parent = firstParent(walk, commit);
+            ObjectId parentTreeId = parent != null ? directoryTree(walk, parent, dirPath) : null;
+            int walked = 0;
+            while (treeId.equals(parentTreeId) && walked++ < maxCommits) {
+                commit = parent;
+                parent = firstParent(walk, commit);
+                parentTreeId = parent != null ? directoryTree(walk, parent, dirPath) : null;
+            }
+
+            Key key = new Key(commit.copy(), treeId.copy(), dirPath);
+            Map<String, LastCommit> known;
+            synchronized (cache) {
+                known = cache.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+                Iterator<Key> it = cache.keySet().iterator();
+                while (cache.size() > cacheSize && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+
+            Set<String> pending = new LinkedHashSet<>();
+            for (String name : names) {
+                if (!known.containsKey(name)) {
+                    pending.add(name);
+                }
+            }
+            if (pending.isEmpty()) {
+                hits.incrementAndGet();
+                return select(known, names);
+            }
+            misses.incrementAndGet();
+
+            Map<String, ObjectId> entries = entries(repository, treeId);
+            pending.retainAll(entries.keySet());
+            while (!pending.isEmpty() && walked++ < maxCommits) {
+                if (!Objects.equals(treeId, parentTreeId)) {
+                    Map<String, ObjectId> parentEntries = parentTreeId != null ? entries(repository, parentTreeId) : Map.of();
+                    for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+                        String name = it.next();
+                        if (!Objects.equals(entries.get(name), parentEntries.get(name))) {
+                            known.put(name, LastCommit.of(commit));
+                            it.remove();
+                        }
+                    }
+                    entries = parentEntries;
+                }
+                if (parent == null) {
+                    break;
+                }
+                commit = parent;
+                treeId = parentTreeId;
+                parent = firstParent(walk, commit);
+                parentTreeId = parent != null ? directoryTree(walk, parent, dirPath) : null;
+            }
+            commitsWalked.addAndGet(walked);
+            return select(known, names);
+        }
+    }
+
+    private static Map<String, LastCommit> select(Map<String, LastCommit> known, Collection<String> names) {
+        Map<String, LastCommit> result = new HashMap<>();
+        for (String name : names) {
+            LastCommit lastCommit = known.get(name);
+            if (lastCommit != null) {
+                result.put(name, lastCommit);
+            }
+        }
+        return result;
+    }
+
+    private static RevCommit firstParent(RevWalk walk, RevCommit commit) throws IOException {
+        return commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)) : null;
+    }
+
+    /**
+     * Tree id of the directory in the commit, or null if it does not exist there.
+     */
+    private static ObjectId directoryTree(RevWalk walk, RevCommit commit, String dirPath) throws IOException {
+        if (dirPath.isEmpty()) {
+            return commit.getTree().copy();
+        }
+        try (TreeWalk treeWalk = TreeWalk.forPath(walk.getObjectReader(), dirPath, commit.getTree())) {
+            if (treeWalk == null || !treeWalk.isSubtree()) {
+                return null;
+            }
+            return treeWalk.getObjectId(0);
+        }
+    }
+
+    /**
+     * Entry name to object id of one directory level.
+     */
+    private static Map<String, ObjectId> entries(Repository repository, ObjectId treeId) throws IOException {
+        Map<String, ObjectId> entries = new HashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(treeId);
+            treeWalk.setRecursive(false);
+            while (treeWalk.next()) {
+                entries.put(treeWalk.getNameString(), treeWalk.getObjectId(0));
+            }
+        }
+        return entries;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (cache) {
+            stats.put("directories", cache.size());
+        }
+        stats.put("maxDirectories", cacheSize);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("commitsWalked", commitsWalked.get());
+        return stats;
+    }
+}
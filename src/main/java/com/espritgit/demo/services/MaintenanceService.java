@@ -0,0 +1,317 @@
+package com.espritgit.demo.services;
+
+import com.espritgit.demo.exception.ResourceNotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Background repository maintenance for hosted repositories: repacks accumulated push packs into one pack with
+ * reachability bitmaps, packs loose objects and prunes unreachable ones, using JGit's {@link GC}.
+ * <p>
+ * A repository is only maintained when its pack or loose object counts cross the configured thresholds, or when
+ * it has packed objects but no bitmap; partial and shallow clones are never maintained. Work is throttled so it
+ * does not compete with live traffic: one repository at a time on a single low-priority thread, a limited number
+ * of packing threads, a quiet period after the last push, and no runs while the system load average is above
+ * {@code git.maintenance.max-load-average}.
+ * <p>
+ * JGit has no geometric repack; a full repack is triggered once {@code git.maintenance.max-packs-since-bitmap}
+ * packs have been added since the last bitmap instead.
+ */
+@Service
+public class MaintenanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MaintenanceService.class);
+
+    @Value("${git.maintenance.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.maintenance.max-pack-files:20}")
+    private long maxPackFiles;
+
+    @Value("${git.maintenance.max-packs-since-bitmap:8}")
+    private long maxPacksSinceBitmap;
+
+    @Value("${git.maintenance.max-loose-objects:6700}")
+    private long maxLooseObjects;
+
+    @Value("${git.maintenance.prune-expire-ms:1209600000}")
+    private long pruneExpireMs;
+
+    @Value("${git.maintenance.pack-threads:1}")
+    private int packThreads;
+
+    @Value("${git.maintenance.quiet-period-ms:60000}")
+    private long quietPeriodMs;
+
+    @Value("${git.maintenance.max-load-average:-1}")
+    private double maxLoadAverage;
+
+    private final RepositoryCache repositoryCache;
+    private final RepositoryRegistry repositoryRegistry;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "repository-maintenance");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Map<Path, Long> lastPushAt = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> reports = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> queued = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MaintenanceService(RepositoryCache repositoryCache, RepositoryRegistry repositoryRegistry) {
+        this.repositoryCache = repositoryCache;
+        this.repositoryRegistry = repositoryRegistry;
+    }
+
+    /**
+     * Records push activity so maintenance waits for the repository to go quiet.
+     *
+     * @param gitDir Git directory of the repository that received the push.
+     */
+    public void recordPush(Path gitDir) {
+        lastPushAt.put(gitDir.toAbsolutePath().normalize(), System.currentTimeMillis());
+    }
+
+    /**
+     * Checks every repository under the base path and queues maintenance for those that need it.
+     */
+    @Scheduled(initialDelayString = "${git.maintenance.initial-delay-ms:120000}",
+            fixedDelayString = "${git.maintenance.interval-ms:600000}")
+    public void scheduleMaintenance() {
+        if (!enabled) {
+            return;
+        }
+        repositoryRegistry.names().forEach(repoName -> queue(repoName, false));
+    }
+
+    /**
+     * Queues maintenance of one repository.
+     *
+     * @param force Run GC even if the repository is below all thresholds.
+     */
+    public void queue(String repoName, boolean force) {
+        if (queued.putIfAbsent(repoName, Boolean.TRUE) != null) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                maintain(repoName, force);
+            } finally {
+                queued.remove(repoName);
+            }
+        });
+    }
+
+    /**
+     * Queues maintenance on request, bypassing thresholds and throttling.
+     */
+    public Map<String, Object> requestMaintenance(String repoName) {
+        if (!repositoryRegistry.contains(repoName)) {
+            throw new ResourceNotFoundException("Repository '" + repoName + "' not found.");
+        }
+        queue(repoName, true);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("repository", repoName);
+        response.put("queued", true);
+        response.put("lastReport", reports.get(repoName));
+        return response;
+    }
+
+    public Map<String, Map<String, Object>> getReports() {
+        return reports;
+    }
+
+    private void maintain(String repoName, boolean force) {
+        RepositoryInfo info = repositoryRegistry.get(repoName);
+        if (info == null) {
+            return; // Deleted since it was queued
+        }
+        try (Repository repository = repositoryCache.open(info.path())) {
+            if (!(repository instanceof FileRepository fileRepository)) {
+                return;
+            }
+            String unsupported = unsupportedReason(repository);
+            if (unsupported != null) {
+                // GC walks every reachable object and fails on the ones these clones never received
+                logger.debug("Skipping maintenance of {}: {}", repoName, unsupported);
+                if (force) {
+                    Map<String, Object> report = new LinkedHashMap<>();
+                    report.put("repository", repoName);
+                    report.put("finishedAt", Instant.now().toString());
+                    report.put("skipped", unsupported);
+                    reports.put(repoName, report);
+                }
+                return;
+            }
+            GC gc = new GC(fileRepository);
+            GC.RepoStatistics before = gc.getStatistics();
+            Path packDir = repository.getDirectory().toPath().resolve(Constants.OBJECTS).resolve("pack");
+            int packsSinceBitmapBefore = packFilesSinceBitmap(packDir);
+
+            String reason = force ? "requested" : needsMaintenance(before, packsSinceBitmapBefore);
+            if (reason == null) {
+                return;
+            }
+            if (!force && isThrottled(repository.getDirectory().toPath())) {
+                logger.debug("Deferring maintenance of {} ({}): repository busy or system loaded", repoName, reason);
+                return;
+            }
+
+            logger.info("Running maintenance on {} ({}): {}", repoName, reason, before);
+            long start = System.currentTimeMillis();
+
+            PackConfig packConfig = new PackConfig(repository);
+            packConfig.setBuildBitmaps(true);
+            packConfig.setThreads(packThreads);
+            gc.setPackConfig(packConfig);
+            gc.setExpire(Date.from(Instant.now().minusMillis(pruneExpireMs)));
+            gc.gc().get();
+
+            GC.RepoStatistics after = gc.getStatistics();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("repository", repoName);
+            report.put("reason", reason);
+            report.put("finishedAt", Instant.now().toString());
+            report.put("durationMs", System.currentTimeMillis() - start);
+            report.put("before", toMap(before, packsSinceBitmapBefore));
+            report.put("after", toMap(after, packFilesSinceBitmap(packDir)));
+            reports.put(repoName, report);
+            logger.info("Maintenance of {} finished in {} ms: {}", repoName, report.get("durationMs"), after);
+        } catch (IOException | ParseException | ExecutionException | RuntimeException e) {
+            logger.warn("Maintenance of {} failed: {}", repoName, e.getMessage());
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("repository", repoName);
+            report.put("finishedAt", Instant.now().toString());
+            report.put("error", e.getMessage());
+            reports.put(repoName, report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Why JGit's GC cannot run on the repository, or null if it can: partial clones (a promisor remote) and
+     * shallow clones lack objects that are reachable from their refs.
+     */
+    static String unsupportedReason(Repository repository) {
+        Config config = repository.getConfig();
+        for (String remote : config.getSubsections(ConfigConstants.CONFIG_REMOTE_SECTION)) {
+            if (config.getBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, remote, "promisor", false)) {
+                return "partial clone";
+            }
+        }
+        if (config.getString("extensions", null, "partialclone") != null) {
+            return "partial clone";
+        }
+        if (Files.exists(repository.getDirectory().toPath().resolve(Constants.SHALLOW))) {
+            return "shallow clone";
+        }
+        return null;
+    }
+
+    /**
+     * Pack files written after the newest bitmap, i.e. packs pushes and fetches added since the last full repack.
+     * Every pack counts when there is no bitmap at all.
+     */
+    static int packFilesSinceBitmap(Path packDir) throws IOException {
+        if (!Files.isDirectory(packDir)) {
+            return 0;
+        }
+        List<Path> packs = new ArrayList<>();
+        long newestBitmap = Long.MIN_VALUE;
+        try (Stream<Path> files = Files.list(packDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".pack")) {
+                    packs.add(file);
+                } else if (name.endsWith(".bitmap")) {
+                    newestBitmap = Math.max(newestBitmap, Files.getLastModifiedTime(file).toMillis());
+                }
+            }
+        }
+        int count = 0;
+        for (Path pack : packs) {
+            if (Files.getLastModifiedTime(pack).toMillis() > newestBitmap) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private String needsMaintenance(GC.RepoStatistics stats, int packsSinceBitmap) {
+        List<String> reasons = new ArrayList<>();
+        if (stats.numberOfPackFiles > maxPackFiles) {
+            reasons.add(stats.numberOfPackFiles + " pack files");
+        }
+        if (packsSinceBitmap > maxPacksSinceBitmap) {
+            reasons.add(packsSinceBitmap + " packs since last bitmap");
+        }
+        if (stats.numberOfLooseObjects > maxLooseObjects) {
+            reasons.add(stats.numberOfLooseObjects + " loose objects");
+        }
+        if (stats.numberOfPackedObjects > 0 && stats.numberOfBitmaps == 0) {
+            reasons.add("no bitmap");
+        }
+        return reasons.isEmpty() ? null : String.join(", ", reasons);
+    }
+
+    private boolean isThrottled(Path gitDir) {
+        Long pushedAt = lastPushAt.get(gitDir.toAbsolutePath().normalize());
+        if (pushedAt != null && System.currentTimeMillis() - pushedAt < quietPeriodMs) {
+            return true;
+        }
+        double threshold = maxLoadAverage > 0 ? maxLoadAverage : Runtime.getRuntime().availableProcessors() * 0.75;
+        double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return loadAverage >= 0 && loadAverage > threshold;
+    }
+
+    private static Map<String, Object> toMap(GC.RepoStatistics stats, int packsSinceBitmap) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("packFiles", stats.numberOfPackFiles);
+        map.put("packFilesSinceBitmap", packsSinceBitmap);
+        map.put("packedObjects", stats.numberOfPackedObjects);
+        map.put("sizeOfPackedObjects", stats.sizeOfPackedObjects);
+        map.put("looseObjects", stats.numberOfLooseObjects);
+        map.put("sizeOfLooseObjects", stats.sizeOfLooseObjects);
+        map.put("bitmaps", stats.numberOfBitmaps);
+        map.put("looseRefs", stats.numberOfLooseRefs);
+        map.put("packedRefs", stats.numberOfPackedRefs);
+        return map;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,244 @@
+package com.espritgit.demo.services;
+
+import com.espritgit.demo.exception.ResourceNotFoundException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps cloned mirrors up to date with incremental fetches from their {@code origin} remote.
+ * <p>
+ * Every repository under the base path with an origin URL is refreshed roughly every
+ * {@code git.mirror-refresh.interval-ms}, with random jitter so that mirrors cloned together do not all fetch
+ * at the same moment. Failures back off exponentially per repository, and at most
+ * {@code git.mirror-refresh.max-concurrent} fetches run at once.
+ */
+@Service
+public class MirrorRefreshService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MirrorRefreshService.class);
+
+    @Value("${git.mirror-refresh.enabled:true}")
+    private boolean enabled;
+
+    @Value("${git.mirror-refresh.interval-ms:900000}")
+    private long intervalMs;
+
+    @Value("${git.mirror-refresh.jitter:0.2}")
+    private double jitter;
+
+    @Value("${git.mirror-refresh.max-backoff-ms:21600000}")
+    private long maxBackoffMs;
+
+    @Value("${git.mirror-refresh.max-concurrent:2}")
+    private int maxConcurrent;
+
+    private final GitService gitService;
+    private final CloneJobService cloneJobService;
+    private final RepositoryRegistry repositoryRegistry;
+
+    private final Map<String, MirrorState> mirrors = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Refresh bookkeeping for one mirror.
+     */
+    static final class MirrorState {
+        final String repoName;
+        volatile String originUrl;
+        volatile long nextDueAt;
+        volatile int consecutiveFailures;
+        volatile boolean running;
+        volatile Instant lastAttempt;
+        volatile Instant lastSuccess;
+        volatile String lastError;
+        volatile Map<String, Object> lastResult;
+
+        MirrorState(String repoName, String originUrl) {
+            this.repoName = repoName;
+            this.originUrl = originUrl;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("repository", repoName);
+            map.put("originUrl", originUrl);
+            map.put("running", running);
+            map.put("nextDueAt", Instant.ofEpochMilli(nextDueAt).toString());
+            map.put("consecutiveFailures", consecutiveFailures);
+            map.put("lastAttempt", lastAttempt != null ? lastAttempt.toString() : null);
+            map.put("lastSuccess", lastSuccess != null ? lastSuccess.toString() : null);
+            map.put("lastError", lastError);
+            map.put("lastResult", lastResult);
+            return map;
+        }
+    }
+
+    @Autowired
+    public MirrorRefreshService(GitService gitService, CloneJobService cloneJobService, RepositoryRegistry repositoryRegistry) {
+        this.gitService = gitService;
+        this.cloneJobService = cloneJobService;
+        this.repositoryRegistry = repositoryRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "mirror-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Discovers mirrors and submits the ones that are due. Runs often; the per-mirror schedule decides how
+     * often each repository is actually fetched.
+     */
+    @Scheduled(initialDelayString = "${git.mirror-refresh.initial-delay-ms:60000}",
+            fixedDelayString = "${git.mirror-refresh.tick-ms:30000}")
+    public void refreshDueMirrors() {
+        if (!enabled) {
+            return;
+        }
+        discoverMirrors();
+        long now = System.currentTimeMillis();
+        for (MirrorState state : mirrors.values()) {
+            if (!state.running && state.nextDueAt <= now && !cloneJobService.isCloneActive(state.originUrl)) {
+                submit(state);
+            }
+        }
+    }
+
+    /**
+     * Fetches a mirror as soon as a worker is free, regardless of its schedule.
+     *
+     * @return The current refresh state of the mirror.
+     */
+    public Map<String, Object> refreshNow(String repoName) {
+        discoverMirrors();
+        MirrorState state = mirrors.get(repoName);
+        if (state == null) {
+            throw new ResourceNotFoundException("Repository '" + repoName + "' is not a mirror (no origin remote).");
+        }
+        if (!state.running) {
+            submit(state);
+        }
+        return state.toMap();
+    }
+
+    public List<Map<String, Object>> listMirrors() {
+        List<MirrorState> states = new ArrayList<>(mirrors.values());
+        states.sort(Comparator.comparing(state -> state.repoName));
+        List<Map<String, Object>> list = new ArrayList<>();
+        states.forEach(state -> list.add(state.toMap()));
+        return list;
+    }
+
+    private void submit(MirrorState state) {
+        synchronized (state) {
+            if (state.running) {
+                return;
+            }
+            state.running = true;
+        }
+        executor.execute(() -> refresh(state));
+    }
+
+    private void refresh(MirrorState state) {
+        RepositoryInfo info = repositoryRegistry.get(state.repoName);
+        state.lastAttempt = Instant.now();
+        try {
+            if (info == null) {
+                throw new IllegalStateException("Repository no longer exists");
+            }
+            Map<String, Object> result = gitService.fetchMirror(info.path());
+            state.lastResult = result;
+            state.lastSuccess = Instant.now();
+            state.lastError = null;
+            state.consecutiveFailures = 0;
+            state.nextDueAt = System.currentTimeMillis() + jittered(intervalMs);
+            logger.info("Refreshed mirror {}: {}", state.repoName, result);
+        } catch (Exception e) {
+            state.consecutiveFailures++;
+            state.lastError = e.getMessage();
+            long backoff = Math.min(maxBackoffMs, intervalMs << Math.min(state.consecutiveFailures, 10));
+            state.nextDueAt = System.currentTimeMillis() + jittered(backoff);
+            logger.warn("Refresh of mirror {} failed ({} in a row), next attempt in {} ms: {}",
+                    state.repoName, state.consecutiveFailures, state.nextDueAt - System.currentTimeMillis(), e.getMessage());
+        } finally {
+            state.running = false;
+        }
+    }
+
+    private long jittered(long delay) {
+        return delay + (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    private void discoverMirrors() {
+        List<String> seen = new ArrayList<>();
+        for (RepositoryInfo info : repositoryRegistry.list()) {
+            String originUrl = readOriginUrl(info.gitDir());
+            if (originUrl == null) {
+                continue;
+            }
+            seen.add(info.name());
+            MirrorState state = mirrors.computeIfAbsent(info.name(), name -> {
+                MirrorState created = new MirrorState(name, originUrl);
+                // Spread the first refresh of newly discovered mirrors over one interval
+                created.nextDueAt = System.currentTimeMillis() + (long) (intervalMs * ThreadLocalRandom.current().nextDouble());
+                return created;
+            });
+            state.originUrl = originUrl;
+        }
+        mirrors.keySet().retainAll(seen);
+    }
+
+    // Reads the config file directly so discovery does not open (and churn) cached repository handles
+    private String readOriginUrl(Path gitDir) {
+        Path configFile = gitDir.resolve(Constants.CONFIG);
+        if (!Files.isRegularFile(configFile)) {
+            return null;
+        }
+        try {
+            FileBasedConfig config = new FileBasedConfig(configFile.toFile(), FS.DETECTED);
+            config.load();
+            return config.getString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, ConfigConstants.CONFIG_KEY_URL);
+        } catch (IOException | ConfigInvalidException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,217 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.file.WindowCacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Configuration and live statistics of JGit's process-wide object storage caches.
+ * <p>
+ * At startup the {@code git.object-cache.*} properties are installed as JGit's {@link WindowCacheConfig}: the pack
+ * window cache (total size, window size, open files, optional memory-mapped pack access), the per-reader delta base
+ * cache and the threshold above which blobs are streamed instead of loaded whole. The window cache limit can be
+ * changed at runtime with {@link #resize(long)}; with {@code git.object-cache.auto-tune.enabled} the limit grows
+ * by itself while the cache is full and the hit ratio over the last interval stays below the target.
+ * <p>
+ * Installing a new configuration replaces the window cache, so the cached windows are dropped and reloaded on
+ * demand, and JGit starts counting hits, misses and evictions from zero. The counters reported here and through
+ * {@code jgit.window.cache.*} add up all installed caches, so they only ever grow.
+ */
+@Service
+public class ObjectStorageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObjectStorageCache.class);
+
+    @Value("${git.object-cache.packed-git-limit:268435456}")
+    private long packedGitLimit;
+
+    @Value("${git.object-cache.packed-git-window-size:65536}")
+    private int packedGitWindowSize;
+
+    @Value("${git.object-cache.packed-git-open-files:512}")
+    private int packedGitOpenFiles;
+
+    @Value("${git.object-cache.packed-git-mmap:false}")
+    private boolean packedGitMmap;
+
+    @Value("${git.object-cache.delta-base-cache-limit:67108864}")
+    private int deltaBaseCacheLimit;
+
+    @Value("${git.object-cache.stream-file-threshold:52428800}")
+    private int streamFileThreshold;
+
+    @Value("${git.object-cache.auto-tune.enabled:false}")
+    private boolean autoTuneEnabled;
+
+    @Value("${git.object-cache.auto-tune.target-hit-ratio:0.95}")
+    private double targetHitRatio;
+
+    @Value("${git.object-cache.auto-tune.max-packed-git-limit:2147483648}")
+    private long maxPackedGitLimit;
+
+    @Value("${git.object-cache.auto-tune.min-requests:10000}")
+    private long minRequests;
+
+    private final GitMetrics gitMetrics;
+
+    private volatile WindowCacheConfig installed;
+
+    // Counts of the caches replaced by install(), which JGit forgets
+    private volatile long retiredHits;
+    private volatile long retiredMisses;
+    private volatile long retiredEvictions;
+
+    // Cumulative counters at the previous auto-tune run, for per-interval ratios
+    private long lastHits;
+    private long lastMisses;
+    private long lastEvictions;
+    private volatile Map<String, Object> lastInterval = Map.of();
+
+    @Autowired
+    public ObjectStorageCache(GitMetrics gitMetrics) {
+        this.gitMetrics = gitMetrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        install(packedGitLimit);
+        gitMetrics.functionCounter("jgit.window.cache.hits", this, ObjectStorageCache::getHitCount);
+        gitMetrics.functionCounter("jgit.window.cache.misses", this, ObjectStorageCache::getMissCount);
+        gitMetrics.functionCounter("jgit.window.cache.evictions", this, ObjectStorageCache::getEvictionCount);
+    }
+
+    /**
+     * Sets a new total size for the pack window cache, keeping the other settings.
+     *
+     * @param limit New limit in bytes; at least the window size.
+     * @return The stats after the change.
+     * @throws IllegalArgumentException If the limit is smaller than one window.
+     */
+    public synchronized Map<String, Object> resize(long limit) {
+        if (limit < packedGitWindowSize) {
+            throw new IllegalArgumentException("packedGitLimit must be at least the window size (" + packedGitWindowSize + " bytes)");
+        }
+        install(limit);
+        return getStats();
+    }
+
+    private synchronized void install(long limit) {
+        if (installed != null) {
+            WindowCacheStats stats = WindowCacheStats.getStats();
+            retiredHits += stats.getHitCount();
+            retiredMisses += stats.getMissCount();
+            retiredEvictions += stats.getEvictionCount();
+        }
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitLimit(limit);
+        config.setPackedGitWindowSize(packedGitWindowSize);
+        config.setPackedGitOpenFiles(packedGitOpenFiles);
+        config.setPackedGitMMAP(packedGitMmap);
+        config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        config.setStreamFileThreshold(streamFileThreshold);
+        config.install(); // Replaces the cache together with its statistics
+        installed = config;
+        lastHits = getHitCount();
+        lastMisses = getMissCount();
+        lastEvictions = getEvictionCount();
+        logger.info("Installed JGit window cache: limit {} bytes, window {} bytes, {} open files, mmap {}, "
+                        + "delta base cache {} bytes, stream threshold {} bytes", limit, packedGitWindowSize,
+                packedGitOpenFiles, packedGitMmap, deltaBaseCacheLimit, streamFileThreshold);
+    }
+
+    /**
+     * Looks at the hit ratio since the previous run and doubles the window cache limit (up to the configured
+     * maximum) when the cache is full and the ratio is below the target. Intervals with too few requests are
+     * skipped, so idle periods don't drive the decision.
+     */
+    @Scheduled(initialDelayString = "${git.object-cache.auto-tune.interval-ms:300000}",
+            fixedDelayString = "${git.object-cache.auto-tune.interval-ms:300000}")
+    public synchronized void autoTune() {
+        WindowCacheStats stats = WindowCacheStats.getStats();
+        long totalHits = retiredHits + stats.getHitCount();
+        long totalMisses = retiredMisses + stats.getMissCount();
+        long totalEvictions = retiredEvictions + stats.getEvictionCount();
+        long hits = totalHits - lastHits;
+        long misses = totalMisses - lastMisses;
+        long evictions = totalEvictions - lastEvictions;
+        lastHits = totalHits;
+        lastMisses = totalMisses;
+        lastEvictions = totalEvictions;
+
+        long requests = hits + misses;
+        double hitRatio = requests == 0 ? 1.0 : (double) hits / requests;
+        Map<String, Object> interval = new LinkedHashMap<>();
+        interval.put("requests", requests);
+        interval.put("hitRatio", hitRatio);
+        interval.put("evictions", evictions);
+        interval.put("evictionRatio", requests == 0 ? 0.0 : (double) evictions / requests);
+        lastInterval = interval;
+
+        if (!autoTuneEnabled || requests < minRequests || hitRatio >= targetHitRatio) {
+            return;
+        }
+        long limit = installed.getPackedGitLimit();
+        // Only a full cache that evicts can be helped by more memory
+        if (stats.getOpenByteCount() < limit * 9 / 10 || evictions == 0 || limit >= maxPackedGitLimit) {
+            return;
+        }
+        long newLimit = Math.min(limit * 2, maxPackedGitLimit);
+        logger.info("Window cache hit ratio {} below target {} with {} evictions; growing limit from {} to {} bytes",
+                String.format("%.3f", hitRatio), targetHitRatio, evictions, limit, newLimit);
+        install(newLimit);
+    }
+
+    /**
+     * Window cache hits since startup, across reconfigurations.
+     */
+    public long getHitCount() {
+        return retiredHits + WindowCacheStats.getStats().getHitCount();
+    }
+
+    public long getMissCount() {
+        return retiredMisses + WindowCacheStats.getStats().getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return retiredEvictions + WindowCacheStats.getStats().getEvictionCount();
+    }
+
+    public Map<String, Object> getStats() {
+        WindowCacheConfig config = installed;
+        WindowCacheStats stats = WindowCacheStats.getStats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("packedGitLimit", config.getPackedGitLimit());
+        result.put("packedGitWindowSize", config.getPackedGitWindowSize());
+        result.put("packedGitOpenFiles", config.getPackedGitOpenFiles());
+        result.put("packedGitMmap", config.isPackedGitMMAP());
+        result.put("deltaBaseCacheLimit", config.getDeltaBaseCacheLimit());
+        result.put("streamFileThreshold", config.getStreamFileThreshold());
+        result.put("autoTune", autoTuneEnabled);
+        result.put("openBytes", stats.getOpenByteCount());
+        result.put("openFiles", stats.getOpenFileCount());
+        result.put("occupancy", config.getPackedGitLimit() == 0 ? 0.0 : (double) stats.getOpenByteCount() / config.getPackedGitLimit());
+        long hits = retiredHits + stats.getHitCount();
+        long misses = retiredMisses + stats.getMissCount();
+        long evictions = retiredEvictions + stats.getEvictionCount();
+        long requests = hits + misses;
+        result.put("hits", hits);
+        result.put("misses", misses);
+        result.put("evictions", evictions);
+        result.put("hitRatio", requests == 0 ? 1.0 : (double) hits / requests);
+        result.put("evictionRatio", requests == 0 ? 0.0 : (double) evictions / requests);
+        result.put("averageLoadTimeNanos", stats.getAverageLoadTime());
+        result.put("lastInterval", lastInterval);
+        result.put("openBytesPerRepository", new TreeMap<>(stats.getOpenByteCountPerRepository()));
+        return result;
+    }
+}
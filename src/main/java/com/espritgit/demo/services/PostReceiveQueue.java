@@ -0,0 +1,133 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers pushes to the work that follows them (cache invalidation, commit-graph and search index updates,
+ * maintenance bookkeeping) off the push request thread.
+ * <p>
+ * Subscribers are called one event at a time, in push order, on a single background thread; a failing subscriber
+ * is logged and does not keep the others from running. The queue holds at most
+ * {@code git.post-receive.queue-capacity} events; when it is full the pushing thread delivers its event itself, so
+ * a burst of pushes slows down instead of losing follow-up work.
+ */
+@Service
+public class PostReceiveQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostReceiveQueue.class);
+
+    @Value("${git.post-receive.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * A push whose ref updates have been applied.
+     *
+     * @param gitDir     Git directory of the repository that received the push.
+     * @param commands   Ref updates that succeeded.
+     * @param receivedAt Time the push finished, in epoch milliseconds.
+     */
+    public record PushEvent(Path gitDir, List<ReceiveCommand> commands, long receivedAt) {
+    }
+
+    public interface Subscriber {
+        void onPush(PushEvent event) throws Exception;
+    }
+
+    private record Subscription(String name, Subscriber subscriber) {
+    }
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private ThreadPoolExecutor executor;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong deliveredInline = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "post-receive");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    // Queue full: deliver on the pushing thread rather than drop the event
+                    if (!pool.isShutdown()) {
+                        deliveredInline.incrementAndGet();
+                        task.run();
+                    }
+                });
+    }
+
+    /**
+     * Registers work to run after every push.
+     *
+     * @param name Name of the subscriber, used in logs and stats.
+     */
+    public void subscribe(String name, Subscriber subscriber) {
+        subscriptions.add(new Subscription(name, subscriber));
+    }
+
+    /**
+     * Queues a push for delivery to all subscribers and returns immediately.
+     */
+    public void publish(PushEvent event) {
+        published.incrementAndGet();
+        executor.execute(() -> deliver(event));
+    }
+
+    private void deliver(PushEvent event) {
+        lagMillis.addAndGet(Math.max(0, System.currentTimeMillis() - event.receivedAt()));
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.subscriber().onPush(event);
+            } catch (Exception e) {
+                failures.computeIfAbsent(subscription.name(), key -> new AtomicLong()).incrementAndGet();
+                logger.warn("Post-receive subscriber {} failed for {}: {}", subscription.name(), event.gitDir(), e.getMessage());
+            }
+        }
+        delivered.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long deliveredCount = delivered.get();
+        stats.put("subscribers", subscriptions.stream().map(Subscription::name).toList());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("published", published.get());
+        stats.put("delivered", deliveredCount);
+        stats.put("deliveredInline", deliveredInline.get());
+        stats.put("avgLagMillis", deliveredCount == 0 ? 0 : lagMillis.get() / deliveredCount);
+        Map<String, Long> failed = new LinkedHashMap<>();
+        failures.forEach((name, count) -> failed.put(name, count.get()));
+        stats.put("failures", failed);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,147 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of all refs of a repository at one point in time, see {@link RefSnapshotService}.
+ * <p>
+ * Refs are kept sorted by name, so exact lookups and prefix queries are binary searches and a page of a prefix
+ * only costs the refs on that page. Names sort in git's order, by UTF-8 bytes, which is not the order of
+ * {@link String#compareTo} once names contain characters outside the Basic Multilingual Plane.
+ */
+public final class RefSnapshot {
+
+    /**
+     * Orders names by code point, which is the same as ordering their UTF-8 encodings byte by byte.
+     */
+    static final Comparator<String> NAME_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    };
+
+    private final Ref head;
+    private final Ref[] refs;
+    private final String[] names;
+    private final Map<String, Ref> map;
+    private final long createdAt;
+
+    /**
+     * One page of a prefix query.
+     *
+     * @param nextCursor Name of the last ref of the page, to pass as {@code after} for the next page; null on the
+     *                   last page.
+     */
+    public record Page(List<Ref> refs, String nextCursor) {
+    }
+
+    RefSnapshot(Collection<Ref> allRefs, long createdAt) {
+        Ref headRef = null;
+        List<Ref> sorted = new ArrayList<>(allRefs.size());
+        for (Ref ref : allRefs) {
+            if (Constants.HEAD.equals(ref.getName())) {
+                headRef = ref;
+            } else {
+                sorted.add(ref);
+            }
+        }
+        sorted.sort(Comparator.comparing(Ref::getName, NAME_ORDER));
+        this.head = headRef;
+        this.refs = sorted.toArray(new Ref[0]);
+        this.names = sorted.stream().map(Ref::getName).toArray(String[]::new);
+        Map<String, Ref> byName = new LinkedHashMap<>(allRefs.size() * 4 / 3 + 1);
+        if (headRef != null) {
+            byName.put(Constants.HEAD, headRef);
+        }
+        for (Ref ref : this.refs) {
+            byName.put(ref.getName(), ref);
+        }
+        this.map = Collections.unmodifiableMap(byName);
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * HEAD, usually symbolic, or null if the repository has none.
+     */
+    public Ref head() {
+        return head;
+    }
+
+    public Ref exactRef(String name) {
+        return map.get(name);
+    }
+
+    /**
+     * All refs including HEAD, by name.
+     */
+    public Map<String, Ref> asMap() {
+        return map;
+    }
+
+    public int size() {
+        return refs.length;
+    }
+
+    long createdAt() {
+        return createdAt;
+    }
+
+    /**
+     * Refs whose name starts with {@code prefix}, sorted by name.
+     */
+    public List<Ref> byPrefix(String prefix) {
+        int from = lowerBound(prefix);
+        int to = from;
+        while (to < names.length && names[to].startsWith(prefix)) {
+            to++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(refs).subList(from, to));
+    }
+
+    /**
+     * Up to {@code limit} refs starting with {@code prefix} and sorted after {@code after}.
+     */
+    public Page page(String prefix, String after, int limit) {
+        int from = lowerBound(prefix);
+        if (after != null && NAME_ORDER.compare(after, prefix) >= 0) {
+            from = lowerBound(after);
+            if (from < names.length && names[from].equals(after)) {
+                from++;
+            }
+        }
+        List<Ref> page = new ArrayList<>(Math.min(limit, 256));
+        int i = from;
+        while (i < names.length && names[i].startsWith(prefix) && page.size() < limit) {
+            page.add(refs[i++]);
+        }
+        boolean more = i < names.length && names[i].startsWith(prefix);
+        return new Page(page, more && !page.isEmpty() ? page.get(page.size() - 1).getName() : null);
+    }
+
+    /**
+     * Index of the first name not sorting before {@code key}.
+     */
+    private int lowerBound(String key) {
+        int index = Arrays.binarySearch(names, key, NAME_ORDER);
+        return index >= 0 ? index : -index - 1;
+    }
+}
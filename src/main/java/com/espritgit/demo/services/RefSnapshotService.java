@@ -0,0 +1,131 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.lib.Repository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-repository cache of {@link RefSnapshot}s.
+ * <p>
+ * Reading all refs means scanning loose refs and parsing packed-refs (or merging reftables), which is slow for
+ * repositories with hundreds of thousands of refs. A snapshot is read once and then served to branch listings,
+ * ref queries and upload-pack advertisements until the next ref update. Updates made through JGit in this
+ * process fire a {@code RefsChangedEvent}, which drops the snapshot; pushes also drop it explicitly from the
+ * post-receive hook. Changes made on disk behind the application's back are picked up after
+ * {@code git.refs.snapshot-max-age-ms}.
+ * <p>
+ * A snapshot read while an update is in flight is returned to its caller but not cached, so an invalidation is
+ * never undone by a slow reader.
+ */
+@Service
+public class RefSnapshotService {
+
+    @Value("${git.refs.snapshot-cache-size:256}")
+    private int cacheSize;
+
+    @Value("${git.refs.snapshot-max-age-ms:300000}")
+    private long maxAgeMs;
+
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<Path, RefSnapshot> snapshots = new LinkedHashMap<>(64, 0.75f, true);
+    // Bumped on every invalidation; guarded by snapshots
+    private final Map<Path, Long> generations = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong refsRead = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+
+    private ListenerHandle refsChangedListener;
+
+    @PostConstruct
+    public void init() {
+        refsChangedListener = Repository.getGlobalListenerList().addRefsChangedListener(
+                event -> invalidate(event.getRepository().getDirectory().toPath()));
+    }
+
+    /**
+     * Returns the current ref snapshot of the repository, reading all refs only if there is no valid cached one.
+     */
+    public RefSnapshot snapshot(Repository repository) throws IOException {
+        Path key = key(repository.getDirectory().toPath());
+        long generation;
+        synchronized (snapshots) {
+            RefSnapshot snapshot = snapshots.get(key);
+            if (snapshot != null && System.currentTimeMillis() - snapshot.createdAt() < maxAgeMs) {
+                hits.incrementAndGet();
+                return snapshot;
+            }
+            generation = generations.getOrDefault(key, 0L);
+        }
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        RefSnapshot snapshot = new RefSnapshot(repository.getRefDatabase().getRefs(), System.currentTimeMillis());
+        readNanos.addAndGet(System.nanoTime() - start);
+        refsRead.addAndGet(snapshot.size());
+        synchronized (snapshots) {
+            if (generations.getOrDefault(key, 0L) == generation) {
+                snapshots.put(key, snapshot);
+                Iterator<Path> it = snapshots.keySet().iterator();
+                while (snapshots.size() > cacheSize && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshot of a repository whose refs changed.
+     *
+     * @param gitDir Git directory of the repository.
+     */
+    public void invalidate(Path gitDir) {
+        Path key = key(gitDir);
+        synchronized (snapshots) {
+            snapshots.remove(key);
+            generations.merge(key, 1L, Long::sum);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    private static Path key(Path gitDir) {
+        return gitDir.toAbsolutePath().normalize();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (snapshots) {
+            stats.put("snapshots", snapshots.size());
+            stats.put("cachedRefs", snapshots.values().stream().mapToLong(RefSnapshot::size).sum());
+        }
+        stats.put("maxSnapshots", cacheSize);
+        stats.put("maxAgeMs", maxAgeMs);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("refsRead", refsRead.get());
+        stats.put("readMillis", readNanos.get() / 1_000_000);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refsChangedListener != null) {
+            refsChangedListener.remove();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache.FileKey;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, shared cache of open JGit {@link Repository} handles.
+ * <p>
+ * Both the REST {@link GitService} and the GitServlet repository resolver go through this cache,
+ * so config, refs and pack lists are only read once per repository instead of once per request.
+ * Handles are reference counted with JGit's own use counter: {@link #open(Path)} increments it and
+ * the caller must {@link Repository#close()} the returned repository when done. The cache holds one
+ * reference of its own, which it drops on LRU eviction, idle eviction or {@link #invalidate(Path)};
+ * the repository is only really closed once the last caller has released it.
+ */
+@Service
+public class RepositoryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryCache.class);
+
+    @Value("${git.repository-cache.max-size:64}")
+    private int maxSize;
+
+    @Value("${git.repository-cache.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    // Guards entries and loading; a ReentrantLock so virtual threads waiting for it do not pin their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Repositories being read by one thread; other threads opening the same repository wait on its future
+    private final Map<File, CompletableFuture<Void>> loading = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static final class Entry {
+        final Repository repository;
+        volatile long lastAccess;
+
+        Entry(Repository repository) {
+            this.repository = repository;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Opens (or reuses) the repository at the given path. The path may be a working tree containing a
+     * {@code .git} directory or a bare repository directory.
+     *
+     * @param repoPath The repository path.
+     * @return The repository, with its use count incremented. Callers must close it.
+     * @throws IOException If the path is not a Git repository or cannot be opened.
+     */
+    public Repository open(Path repoPath) throws IOException {
+        File gitDir = resolveGitDir(repoPath);
+        if (gitDir == null) {
+            throw new IOException("Not a valid Git repository: " + repoPath);
+        }
+
+        while (true) {
+            CompletableFuture<Void> pending;
+            boolean owner = false;
+            lock.lock();
+            try {
+                Entry entry = entries.get(gitDir);
+                if (entry != null) {
+                    hits.incrementAndGet();
+                    entry.lastAccess = System.currentTimeMillis();
+                    entry.repository.incrementOpen();
+                    return entry.repository;
+                }
+                pending = loading.get(gitDir);
+                if (pending == null) {
+                    misses.incrementAndGet();
+                    pending = new CompletableFuture<>();
+                    loading.put(gitDir, pending);
+                    owner = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (owner) {
+                return load(gitDir, pending);
+            }
+            // Another thread is reading this repository; wait for it and look again
+            try {
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while opening " + gitDir);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new IOException("Cannot open repository " + gitDir, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Reads the repository outside the lock, so opening one repository never blocks lookups of the others, then
+     * publishes it to the cache unless it was invalidated in the meantime.
+     */
+    private Repository load(File gitDir, CompletableFuture<Void> pending) throws IOException {
+        Repository repository;
+        try {
+            repository = new FileRepositoryBuilder()
+                    .setGitDir(gitDir)
+                    .setMustExist(true)
+                    .build();
+        } catch (IOException | RuntimeException e) {
+            lock.lock();
+            try {
+                loading.remove(gitDir, pending);
+            } finally {
+                lock.unlock();
+            }
+            pending.completeExceptionally(e);
+            throw e;
+        }
+
+        List<Repository> evicted = new ArrayList<>();
+        int size;
+        lock.lock();
+        try {
+            if (loading.remove(gitDir, pending)) {
+                entries.put(gitDir, new Entry(repository));
+                repository.incrementOpen(); // One reference for the cache, one for the caller
+
+                Iterator<Entry> it = entries.values().iterator();
+                while (entries.size() > maxSize && it.hasNext()) {
+                    Entry eldest = it.next();
+                    it.remove();
+                    evictions.incrementAndGet();
+                    evicted.add(eldest.repository);
+                }
+            }
+            // Otherwise it was invalidated while loading, and the caller gets an uncached handle
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        pending.complete(null);
+
+        evicted.forEach(this::release);
+        logger.debug("Opened repository {} into cache ({} entries)", gitDir, size);
+        return repository;
+    }
+
+    /**
+     * Drops the cached handle for a repository, e.g. after it has been deleted or re-created on disk.
+     * Callers still holding the repository keep a valid handle until they close it.
+     */
+    public void invalidate(Path repoPath) {
+        File gitDir = resolveGitDir(repoPath);
+        Entry removed = null;
+        lock.lock();
+        try {
+            if (gitDir != null) {
+                removed = entries.remove(gitDir);
+                loading.remove(gitDir);
+            } else {
+                // The directory may already be gone; match on the absolute path instead
+                File absolute = repoPath.toAbsolutePath().normalize().toFile();
+                Iterator<Map.Entry<File, Entry>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<File, Entry> e = it.next();
+                    if (e.getKey().equals(absolute) || e.getKey().getParentFile().equals(absolute)) {
+                        removed = e.getValue();
+                        it.remove();
+                        break;
+                    }
+                }
+                loading.keySet().removeIf(key -> key.equals(absolute) || key.getParentFile().equals(absolute));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (removed != null) {
+            invalidations.incrementAndGet();
+            logger.info("Invalidated cached repository handle for {}", repoPath);
+            release(removed.repository);
+        }
+    }
+
+    /**
+     * Periodically drops handles that have not been used for the configured idle timeout.
+     */
+    @Scheduled(fixedDelayString = "${git.repository-cache.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        List<Repository> idle = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.lastAccess < cutoff) {
+                    it.remove();
+                    evictions.incrementAndGet();
+                    idle.add(entry.repository);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!idle.isEmpty()) {
+            logger.info("Evicted {} idle repository handle(s)", idle.size());
+            idle.forEach(this::release);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("size", entries.size());
+            stats.put("loading", loading.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("idleTimeoutMs", idleTimeoutMs);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        List<Repository> all = new ArrayList<>();
+        lock.lock();
+        try {
+            entries.values().forEach(e -> all.add(e.repository));
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+        all.forEach(this::release);
+    }
+
+    private void release(Repository repository) {
+        try {
+            repository.close();
+        } catch (RuntimeException e) {
+            logger.warn("Error closing repository {}: {}", repository.getDirectory(), e.getMessage());
+        }
+    }
+
+    private static File resolveGitDir(Path repoPath) {
+        File resolved = FileKey.resolve(repoPath.toAbsolutePath().normalize().toFile(), FS.DETECTED);
+        return resolved != null ? resolved.getAbsoluteFile() : null;
+    }
+}
@@ -0,0 +1,39 @@
+package com.espritgit.demo.services;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry entry of a hosted repository, see {@link RepositoryRegistry}.
+ *
+ * @param name          Repository name, relative to the base path.
+ * @param path          Working tree (or bare repository) directory.
+ * @param gitDir        Git directory.
+ * @param bare          True for bare repositories.
+ * @param defaultBranch Branch HEAD points at, or null for a detached HEAD.
+ * @param sizeBytes     Size of the object database, or -1 if not measured yet.
+ * @param lastPushAt    Time of the last push through the Git server, or null.
+ */
+public record RepositoryInfo(String name, Path path, Path gitDir, boolean bare, String defaultBranch,
+                             long sizeBytes, Instant lastPushAt) {
+
+    RepositoryInfo withSize(long sizeBytes) {
+        return new RepositoryInfo(name, path, gitDir, bare, defaultBranch, sizeBytes, lastPushAt);
+    }
+
+    RepositoryInfo withLastPush(Instant lastPushAt) {
+        return new RepositoryInfo(name, path, gitDir, bare, defaultBranch, sizeBytes, lastPushAt);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("name", name);
+        map.put("bare", bare);
+        map.put("defaultBranch", defaultBranch);
+        map.put("sizeBytes", sizeBytes);
+        map.put("lastPushAt", lastPushAt != null ? lastPushAt.toString() : null);
+        return map;
+    }
+}
@@ -0,0 +1,365 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.lib.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the repositories under {@code git.repositories.base-path}.
+ * <p>
+ * Built once at startup by probing the base path in parallel, then kept current by the operations that create or
+ * delete repositories ({@link GitService}), by pushes through the Git server, and by a watcher on the base path for
+ * changes made behind the application's back. A periodic reconcile rescans the base path as a safety net and
+ * measures object database sizes off the request path. Listing and name resolution are map lookups.
+ */
+@Service
+public class RepositoryRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryRegistry.class);
+
+    @Value("${git.repositories.base-path}")
+    private String repositoriesBasePath;
+
+    @Value("${git.repository-registry.watch-enabled:true}")
+    private boolean watchEnabled;
+
+    private Path basePath;
+    private final ConcurrentSkipListMap<String, RepositoryInfo> repositories = new ConcurrentSkipListMap<>();
+    private final Set<String> staleSizes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong probesOnMiss = new AtomicLong();
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    /**
+     * One page of a filtered listing.
+     *
+     * @param total Number of repositories matching the filter, across all pages.
+     * @param items Repositories on this page, sorted by name.
+     */
+    public record Page(int total, List<RepositoryInfo> items) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        basePath = Paths.get(repositoriesBasePath).toAbsolutePath().normalize();
+        Files.createDirectories(basePath);
+        long start = System.currentTimeMillis();
+        List<Path> candidates;
+        try (Stream<Path> stream = Files.list(basePath)) {
+            candidates = stream.filter(Files::isDirectory).toList();
+        }
+        candidates.parallelStream()
+                .map(path -> probe(path.getFileName().toString(), path))
+                .filter(info -> info != null)
+                .forEach(info -> {
+                    repositories.put(info.name(), info);
+                    staleSizes.add(info.name());
+                });
+        logger.info("Registered {} repositories under {} in {} ms", repositories.size(), basePath, System.currentTimeMillis() - start);
+        if (watchEnabled) {
+            startWatching();
+        }
+    }
+
+    /**
+     * Looks up a repository by name. Names not in the registry are probed once on disk, which picks up
+     * repositories created out of band before the watcher or reconcile noticed them.
+     *
+     * @return The registry entry, or null if there is no valid repository with that name.
+     */
+    public RepositoryInfo get(String name) {
+        String key = normalizeName(name);
+        if (key == null) {
+            return null;
+        }
+        RepositoryInfo info = repositories.get(key);
+        if (info == null) {
+            probesOnMiss.incrementAndGet();
+            info = refresh(key);
+        }
+        return info;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * Re-reads one repository from disk and updates or removes its entry. Names that are not a directory directly
+     * under the base path are never registered.
+     */
+    public RepositoryInfo refresh(String name) {
+        name = normalizeName(name);
+        if (name == null) {
+            return null;
+        }
+        RepositoryInfo info = probe(name, basePath.resolve(name));
+        if (info == null) {
+            unregister(name);
+            return null;
+        }
+        RepositoryInfo previous = repositories.get(name);
+        if (previous != null) {
+            info = info.withSize(previous.sizeBytes()).withLastPush(previous.lastPushAt());
+        }
+        repositories.put(name, info);
+        staleSizes.add(name);
+        return info;
+    }
+
+    public void unregister(String name) {
+        name = normalizeName(name);
+        if (name == null) {
+            return;
+        }
+        if (repositories.remove(name) != null) {
+            logger.info("Unregistered repository {}", name);
+        }
+        staleSizes.remove(name);
+    }
+
+    /**
+     * Records a push received by the Git server.
+     *
+     * @param gitDir Git directory of the repository that received the push.
+     */
+    public void recordPush(Path gitDir) {
+        String name = nameOf(gitDir);
+        RepositoryInfo info = name != null ? refresh(name) : null;
+        if (info != null) {
+            repositories.put(name, info.withLastPush(Instant.now()));
+        }
+    }
+
+    public List<RepositoryInfo> list() {
+        return new ArrayList<>(repositories.values());
+    }
+
+    public List<String> names() {
+        return new ArrayList<>(repositories.keySet());
+    }
+
+    /**
+     * Lists repositories matching an optional name filter and bare flag, one page at a time.
+     *
+     * @param query  Case-insensitive substring of the name, or null for all.
+     * @param bare   Only bare (true) or non-bare (false) repositories, or null for both.
+     * @param offset Index of the first matching repository to return.
+     * @param limit  Maximum number of repositories to return, or 0 for no limit.
+     */
+    public Page find(String query, Boolean bare, int offset, int limit) {
+        String needle = query != null && !query.isBlank() ? query.toLowerCase(Locale.ROOT) : null;
+        List<RepositoryInfo> items = new ArrayList<>();
+        int total = 0;
+        for (RepositoryInfo info : repositories.values()) {
+            if (needle != null && !info.name().toLowerCase(Locale.ROOT).contains(needle)) {
+                continue;
+            }
+            if (bare != null && info.bare() != bare) {
+                continue;
+            }
+            if (total >= offset && (limit <= 0 || items.size() < limit)) {
+                items.add(info);
+            }
+            total++;
+        }
+        return new Page(total, items);
+    }
+
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "repositories", repositories.size(),
+                "pendingSizeMeasurements", staleSizes.size(),
+                "probesOnMiss", probesOnMiss.get(),
+                "watching", watcherThread != null && watcherThread.isAlive());
+    }
+
+    /**
+     * Rescans the base path for changes the watcher missed and measures object database sizes.
+     */
+    @Scheduled(initialDelayString = "${git.repository-registry.initial-delay-ms:30000}",
+            fixedDelayString = "${git.repository-registry.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        try (Stream<Path> stream = Files.list(basePath)) {
+            stream.filter(Files::isDirectory).toList().parallelStream().forEach(path -> {
+                String name = path.getFileName().toString();
+                seen.add(name);
+                if (!repositories.containsKey(name)) {
+                    refresh(name);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not rescan '{}': {}", basePath, e.getMessage());
+            return;
+        }
+        for (String name : names()) {
+            if (!seen.contains(name)) {
+                unregister(name);
+            }
+        }
+        for (String name : staleSizes.toArray(new String[0])) {
+            staleSizes.remove(name);
+            RepositoryInfo info = repositories.get(name);
+            if (info != null) {
+                repositories.computeIfPresent(name, (key, current) -> current.withSize(measure(info.gitDir())));
+            }
+        }
+    }
+
+    private void startWatching() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            basePath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.warn("Could not watch {}, relying on periodic reconcile: {}", basePath, e.getMessage());
+            return;
+        }
+        watcherThread = new Thread(this::watchLoop, "repository-registry-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        reconcile();
+                        continue;
+                    }
+                    // A new directory is usually not a repository yet (clone or init in progress); GitService
+                    // registers its own repositories when they are complete, and lookups probe on a miss
+                    refresh(((Path) event.context()).toString());
+                }
+                if (!key.reset()) {
+                    logger.warn("Base path {} is no longer watchable, relying on periodic reconcile", basePath);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Name of the repository with the given git directory or working tree, or null if it is not a directory
+     * directly under the base path.
+     */
+    public String nameOf(Path gitDir) {
+        Path dir = gitDir.toAbsolutePath().normalize();
+        if (dir.getFileName() != null && dir.getFileName().toString().equals(Constants.DOT_GIT)) {
+            dir = dir.getParent();
+        }
+        if (dir == null || !basePath.equals(dir.getParent())) {
+            return null;
+        }
+        return dir.getFileName().toString();
+    }
+
+    /**
+     * Maps a requested name to the key the startup scan would register it under: the name of a directory directly
+     * under the base path. A trailing {@code /} or {@code /.git} is dropped, so {@code foo/} and {@code foo/.git}
+     * both name {@code foo}.
+     *
+     * @return The registry key, or null if the name cannot be a registered repository (empty, nested, {@code .}
+     * or {@code ..}).
+     */
+    static String normalizeName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String normalized = name.replace('\\', '/');
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        if (normalized.endsWith("/" + Constants.DOT_GIT)) {
+            normalized = normalized.substring(0, normalized.length() - Constants.DOT_GIT.length() - 1);
+            while (normalized.endsWith("/")) {
+                normalized = normalized.substring(0, normalized.length() - 1);
+            }
+        }
+        if (normalized.isEmpty() || normalized.contains("/") || normalized.equals(".") || normalized.equals("..")
+                || normalized.equals(Constants.DOT_GIT)) {
+            return null;
+        }
+        return normalized;
+    }
+
+    static RepositoryInfo probe(String name, Path path) {
+        if (!Files.isDirectory(path)) {
+            return null;
+        }
+        Path dotGit = path.resolve(Constants.DOT_GIT);
+        boolean bare = !Files.isDirectory(dotGit);
+        Path gitDir = bare ? path : dotGit;
+        if (bare && !(Files.exists(path.resolve(Constants.HEAD))
+                && Files.isDirectory(path.resolve(Constants.OBJECTS))
+                && (Files.isDirectory(path.resolve("refs")) || Files.isDirectory(path.resolve(Constants.REFTABLE))))) {
+            return null;
+        }
+        return new RepositoryInfo(name, path, gitDir, bare, readDefaultBranch(gitDir), -1, null);
+    }
+
+    private static String readDefaultBranch(Path gitDir) {
+        try {
+            String head = Files.readString(gitDir.resolve(Constants.HEAD), StandardCharsets.UTF_8).trim();
+            if (head.startsWith("ref: ")) {
+                String target = head.substring("ref: ".length());
+                if (target.equals(Constants.R_HEADS + ".invalid")) {
+                    return null; // Placeholder HEAD of a reftable repository; the real one is in the reftable
+                }
+                return target.startsWith(Constants.R_HEADS) ? target.substring(Constants.R_HEADS.length()) : target;
+            }
+        } catch (IOException e) {
+            // Unreadable HEAD; reported as no default branch
+        }
+        return null;
+    }
+
+    private static long measure(Path gitDir) {
+        try (Stream<Path> stream = Files.walk(gitDir.resolve(Constants.OBJECTS))) {
+            return stream.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
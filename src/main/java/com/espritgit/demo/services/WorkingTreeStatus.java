@@ -0,0 +1,137 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.IndexDiff;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Working tree status kept by {@link WorkingTreeStatusService}: the same path sets as JGit's {@link Status}, but
+ * mutable so a snapshot can be patched for just the paths that changed.
+ */
+public class WorkingTreeStatus {
+
+    final Set<String> added = new TreeSet<>();
+    final Set<String> changed = new TreeSet<>();
+    final Set<String> removed = new TreeSet<>();
+    final Set<String> missing = new TreeSet<>();
+    final Set<String> modified = new TreeSet<>();
+    final Set<String> untracked = new TreeSet<>();
+    final Set<String> untrackedFolders = new TreeSet<>();
+    final Set<String> conflicting = new TreeSet<>();
+    final Map<String, IndexDiff.StageState> conflictingStageState = new TreeMap<>();
+
+    WorkingTreeStatus() {
+    }
+
+    WorkingTreeStatus(WorkingTreeStatus other) {
+        added.addAll(other.added);
+        changed.addAll(other.changed);
+        removed.addAll(other.removed);
+        missing.addAll(other.missing);
+        modified.addAll(other.modified);
+        untracked.addAll(other.untracked);
+        untrackedFolders.addAll(other.untrackedFolders);
+        conflicting.addAll(other.conflicting);
+        conflictingStageState.putAll(other.conflictingStageState);
+    }
+
+    /**
+     * Replaces everything at or below {@code prefixes} with the result of a status limited to those paths.
+     */
+    void merge(Set<String> prefixes, Status status) {
+        for (Set<String> set : allSets()) {
+            set.removeIf(path -> isUnder(path, prefixes));
+        }
+        conflictingStageState.keySet().removeIf(path -> isUnder(path, prefixes));
+        add(status);
+    }
+
+    void add(Status status) {
+        added.addAll(status.getAdded());
+        changed.addAll(status.getChanged());
+        removed.addAll(status.getRemoved());
+        missing.addAll(status.getMissing());
+        modified.addAll(status.getModified());
+        untracked.addAll(status.getUntracked());
+        untrackedFolders.addAll(status.getUntrackedFolders());
+        conflicting.addAll(status.getConflicting());
+        conflictingStageState.putAll(status.getConflictingStageState());
+    }
+
+    private Set<String>[] allSets() {
+        @SuppressWarnings("unchecked")
+        Set<String>[] sets = new Set[]{added, changed, removed, missing, modified, untracked, untrackedFolders, conflicting};
+        return sets;
+    }
+
+    private static boolean isUnder(String path, Set<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getChanged() {
+        return changed;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public Set<String> getMissing() {
+        return missing;
+    }
+
+    public Set<String> getModified() {
+        return modified;
+    }
+
+    public Set<String> getUntracked() {
+        return untracked;
+    }
+
+    public Set<String> getUntrackedFolders() {
+        return untrackedFolders;
+    }
+
+    public Set<String> getConflicting() {
+        return conflicting;
+    }
+
+    public Map<String, IndexDiff.StageState> getConflictingStageState() {
+        return conflictingStageState;
+    }
+
+    /**
+     * Same definition as {@link Status#getUncommittedChanges()}.
+     */
+    public Set<String> getUncommittedChanges() {
+        Set<String> uncommitted = new TreeSet<>();
+        uncommitted.addAll(added);
+        uncommitted.addAll(changed);
+        uncommitted.addAll(removed);
+        uncommitted.addAll(missing);
+        uncommitted.addAll(modified);
+        uncommitted.addAll(conflicting);
+        return uncommitted;
+    }
+
+    public boolean hasUncommittedChanges() {
+        return !getUncommittedChanges().isEmpty();
+    }
+
+    public boolean isClean() {
+        return !hasUncommittedChanges() && untracked.isEmpty();
+    }
+}
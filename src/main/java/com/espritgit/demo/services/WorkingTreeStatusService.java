@@ -0,0 +1,380 @@
+package com.espritgit.demo.services;
+
+import jakarta.annotation.PreDestroy;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.StatusCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental working tree status for {@code /{repoName}/status}.
+ * <p>
+ * The first request for a repository runs a full {@code git status} and registers a {@link WatchService} on every
+ * directory of its working tree, except directories the repository ignores and tracks nothing in (build output,
+ * {@code node_modules/}), which would otherwise use up the system's watch limit on large checkouts; changes to a
+ * {@code .gitignore} re-register the watches. Later requests only re-run status for the paths the watcher reported as changed
+ * and patch the previous snapshot. A full status is still run when the index or HEAD changed (that affects every
+ * path), when the watcher overflowed or could not be registered, when too many paths changed at once, and every
+ * {@code git.status.full-reconcile-ms} as a safety net. Repositories whose status is not requested for
+ * {@code git.status.idle-unwatch-ms} stop being watched.
+ */
+@Service
+public class WorkingTreeStatusService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkingTreeStatusService.class);
+
+    @Value("${git.status.watch-enabled:true}")
+    private boolean watchEnabled;
+
+    @Value("${git.status.full-reconcile-ms:300000}")
+    private long fullReconcileMs;
+
+    @Value("${git.status.max-incremental-paths:500}")
+    private int maxIncrementalPaths;
+
+    @Value("${git.status.idle-unwatch-ms:1800000}")
+    private long idleUnwatchMs;
+
+    private final Map<Path, WatchedTree> trees = new ConcurrentHashMap<>();
+    private final Map<WatchKey, WatchedTree> treesByKey = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+    private Thread watcherThread;
+
+    /**
+     * Status snapshot and watcher state of one working tree.
+     */
+    private static final class WatchedTree {
+        final Path workTree;
+        final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+        final Set<String> dirtyPaths = ConcurrentHashMap.newKeySet();
+        volatile File gitDir;
+        volatile boolean needsFullRefresh = true;
+        volatile boolean ignoreRulesChanged;
+        volatile boolean watching;
+        volatile long lastAccess = System.currentTimeMillis();
+        WorkingTreeStatus snapshot;
+        long snapshotAt;
+        long indexModified;
+        long indexSize;
+        ObjectId headId;
+        String headTarget;
+
+        WatchedTree(Path workTree) {
+            this.workTree = workTree;
+        }
+    }
+
+    /**
+     * Returns the status of the repository's working tree, recomputing only what changed since the last call.
+     */
+    public WorkingTreeStatus getStatus(Repository repository) throws IOException, GitAPIException {
+        Path workTree = repository.getWorkTree().toPath().toAbsolutePath().normalize();
+        WatchedTree tree = trees.computeIfAbsent(workTree, WatchedTree::new);
+        tree.lastAccess = System.currentTimeMillis();
+
+        synchronized (tree) {
+            tree.gitDir = repository.getDirectory();
+            drainEvents();
+            if (tree.ignoreRulesChanged) {
+                // Directories may have become (un)ignored; watch the new set
+                tree.ignoreRulesChanged = false;
+                stopWatching(tree);
+            }
+            if (!tree.watching && watchEnabled) {
+                startWatching(repository, tree);
+            }
+
+            File indexFile = repository.getIndexFile();
+            ObjectId headId = repository.resolve(Constants.HEAD);
+            String headTarget = repository.getFullBranch();
+            boolean full = tree.snapshot == null
+                    || tree.needsFullRefresh
+                    || !tree.watching
+                    || indexFile.lastModified() != tree.indexModified
+                    || indexFile.length() != tree.indexSize
+                    || !Objects.equals(headId, tree.headId)
+                    || !Objects.equals(headTarget, tree.headTarget)
+                    || System.currentTimeMillis() - tree.snapshotAt > fullReconcileMs
+                    || tree.dirtyPaths.size() > maxIncrementalPaths;
+            Set<String> prefixes = full ? Set.of() : takeDirtyPrefixes(tree);
+            if (prefixes.contains("")) {
+                full = true; // Root .gitignore changed
+            }
+
+            try (Git git = Git.wrap(repository)) {
+                if (full) {
+                    tree.needsFullRefresh = false;
+                    tree.dirtyPaths.clear();
+                    WorkingTreeStatus snapshot = new WorkingTreeStatus();
+                    snapshot.add(git.status().call());
+                    tree.snapshot = snapshot;
+                    tree.snapshotAt = System.currentTimeMillis();
+                    tree.indexModified = indexFile.lastModified();
+                    tree.indexSize = indexFile.length();
+                    tree.headId = headId;
+                    tree.headTarget = headTarget;
+                } else if (!prefixes.isEmpty()) {
+                    StatusCommand command = git.status();
+                    prefixes.forEach(command::addPath);
+                    tree.snapshot.merge(prefixes, command.call());
+                    logger.debug("Refreshed status of {} for {} changed path(s)", workTree, prefixes.size());
+                }
+            }
+            return new WorkingTreeStatus(tree.snapshot);
+        }
+    }
+
+    /**
+     * Drops the snapshot and watches of a working tree, e.g. before its repository is deleted.
+     */
+    public void forget(Path workTree) {
+        WatchedTree tree = trees.remove(workTree.toAbsolutePath().normalize());
+        if (tree != null) {
+            stopWatching(tree);
+        }
+    }
+
+    private Set<String> takeDirtyPrefixes(WatchedTree tree) {
+        Set<String> prefixes = new TreeSet<>();
+        for (String path : tree.dirtyPaths.toArray(new String[0])) {
+            tree.dirtyPaths.remove(path);
+            prefixes.add(recomputeRoot(tree.snapshot, path));
+        }
+        // Drop paths already covered by a parent prefix
+        Set<String> roots = new TreeSet<>(prefixes);
+        roots.removeIf(path -> prefixes.stream().anyMatch(other -> other.isEmpty() ? !path.isEmpty() : path.startsWith(other + "/")));
+        return roots;
+    }
+
+    // An untracked folder is reported as a whole, so a change anywhere inside it re-evaluates the folder
+    private static String recomputeRoot(WorkingTreeStatus snapshot, String path) {
+        for (String folder : snapshot.untrackedFolders) {
+            if (path.startsWith(folder + "/")) {
+                return folder;
+            }
+        }
+        // A .gitignore change can flip the untracked state of everything next to and below it
+        if (path.equals(Constants.DOT_GIT_IGNORE) || path.endsWith("/" + Constants.DOT_GIT_IGNORE)) {
+            int slash = path.lastIndexOf('/');
+            return slash < 0 ? "" : path.substring(0, slash);
+        }
+        return path;
+    }
+
+    private void startWatching(Repository repository, WatchedTree tree) {
+        try {
+            WatchService service = watchService();
+            for (Path dir : watchableDirectories(repository, tree.workTree, "")) {
+                register(service, tree, dir);
+            }
+            tree.watching = true;
+            tree.needsFullRefresh = true;
+            logger.info("Watching {} directories of {} for status changes", tree.directories.size(), tree.workTree);
+        } catch (IOException e) {
+            // Typically the inotify watch limit; status falls back to full recomputation
+            logger.warn("Could not watch {} for status changes, using full status: {}", tree.workTree, e.getMessage());
+            stopWatching(tree);
+        }
+    }
+
+    /**
+     * Directories of the working tree worth watching, at and below {@code under} ("" for all): everything except
+     * the {@code .git} directory and ignored directories that hold no tracked files. Symbolic links are not
+     * followed.
+     */
+    static List<Path> watchableDirectories(Repository repository, Path workTree, String under) throws IOException {
+        List<Path> dirs = new ArrayList<>();
+        if (under.isEmpty()) {
+            dirs.add(workTree);
+        }
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.addTree(new DirCacheIterator(repository.readDirCache()));
+            walk.addTree(new FileTreeIterator(repository));
+            walk.setRecursive(false);
+            if (!under.isEmpty()) {
+                walk.setFilter(PathFilter.create(under));
+            }
+            while (walk.next()) {
+                if (!walk.isSubtree()) {
+                    continue;
+                }
+                FileTreeIterator file = walk.getTree(1, FileTreeIterator.class);
+                if (file == null) {
+                    continue; // Tracked, but not on disk
+                }
+                if (walk.getTree(0, DirCacheIterator.class) == null && file.isEntryIgnored()) {
+                    continue;
+                }
+                String path = walk.getPathString();
+                if (under.isEmpty() || path.equals(under) || path.startsWith(under + "/")) {
+                    dirs.add(workTree.resolve(path));
+                }
+                walk.enterSubtree();
+            }
+        }
+        return dirs;
+    }
+
+    private void register(WatchService service, WatchedTree tree, Path dir) throws IOException {
+        WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        tree.directories.put(key, dir);
+        treesByKey.put(key, tree);
+    }
+
+    private void stopWatching(WatchedTree tree) {
+        tree.watching = false;
+        tree.needsFullRefresh = true;
+        for (WatchKey key : tree.directories.keySet()) {
+            key.cancel();
+            treesByKey.remove(key);
+        }
+        tree.directories.clear();
+    }
+
+    private synchronized WatchService watchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            watcherThread = new Thread(this::watchLoop, "status-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+        }
+        return watchService;
+    }
+
+    private void watchLoop() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                handle(key);
+                drainEvents();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    // Also called on the request path, so a status request sees every event the kernel has delivered so far
+    private void drainEvents() {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        WatchKey key;
+        while ((key = service.poll()) != null) {
+            handle(key);
+        }
+    }
+
+    private void handle(WatchKey key) {
+        WatchedTree tree = treesByKey.get(key);
+        Path dir = tree != null ? tree.directories.get(key) : null;
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                tree.needsFullRefresh = true;
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            String relative = tree.workTree.relativize(child).toString().replace(File.separatorChar, '/');
+            if (relative.equals(Constants.DOT_GIT) || relative.startsWith(Constants.DOT_GIT + "/")) {
+                continue;
+            }
+            tree.dirtyPaths.add(relative);
+            if (relative.equals(Constants.DOT_GIT_IGNORE) || relative.endsWith("/" + Constants.DOT_GIT_IGNORE)) {
+                tree.ignoreRulesChanged = true;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                registerNewDirectory(tree, child);
+            }
+        }
+        if (!key.reset()) {
+            // Directory was deleted; its parent reported the deletion
+            tree.directories.remove(key);
+            treesByKey.remove(key);
+        }
+    }
+
+    private void registerNewDirectory(WatchedTree tree, Path dir) {
+        File gitDir = tree.gitDir;
+        if (gitDir == null) {
+            tree.needsFullRefresh = true;
+            return;
+        }
+        String relative = tree.workTree.relativize(dir).toString().replace(File.separatorChar, '/');
+        try (Repository repository = new FileRepositoryBuilder()
+                .setGitDir(gitDir)
+                .setWorkTree(tree.workTree.toFile())
+                .setMustExist(true)
+                .build()) {
+            WatchService service = watchService;
+            for (Path subDir : watchableDirectories(repository, tree.workTree, relative)) {
+                register(service, tree, subDir);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not watch new directory {}, status of {} falls back to full: {}", dir, tree.workTree, e.getMessage());
+            tree.needsFullRefresh = true;
+        }
+    }
+
+    /**
+     * Stops watching working trees nobody has asked about for a while.
+     */
+    @Scheduled(fixedDelayString = "${git.status.cleanup-interval-ms:300000}")
+    public void unwatchIdleTrees() {
+        long cutoff = System.currentTimeMillis() - idleUnwatchMs;
+        trees.values().removeIf(tree -> {
+            if (tree.lastAccess < cutoff) {
+                synchronized (tree) {
+                    stopWatching(tree);
+                }
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.espritgit.demo.gitserver;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.http.server.ServletUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShallowCutoffFilterTest {
+
+    private static final String WANT = "want 1111111111111111111111111111111111111111 multi_ack_detailed side-band-64k";
+    private static final String FLUSH = "0000";
+
+    @TempDir
+    Path tempDir;
+
+    private Repository repository;
+    private ShallowCutoffFilter filter;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = Git.init().setBare(true).setDirectory(tempDir.resolve("repo.git").toFile()).call().getRepository();
+        GitUploadPackFactory factory = new GitUploadPackFactory(null, null);
+        ReflectionTestUtils.setField(factory, "protocolV2", true);
+        ReflectionTestUtils.setField(factory, "allowFilter", true);
+        ReflectionTestUtils.setField(factory, "allowedFilters", "blob:none");
+        ReflectionTestUtils.setField(factory, "allowShallow", true);
+        ReflectionTestUtils.setField(factory, "sidebandAll", true);
+        filter = new ShallowCutoffFilter(factory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void rejectsProtocolV0ShallowSinceWhenShallowIsForbidden() throws Exception {
+        configure("allowShallow", "false");
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(null, WANT, "deepen-since 1700000000", FLUSH, "done"), response, chain);
+
+        assertThat(chain.getRequest()).as("upload-pack must not run").isNull();
+        assertThat(response.getStatus()).isEqualTo(403);
+        assertThat(response.getContentAsString() + response.getErrorMessage()).contains("Shallow fetches are not allowed");
+    }
+
+    @Test
+    void rejectsProtocolV0ShallowExcludeWhenDepthIsLimited() throws Exception {
+        configure("maxDepth", "10");
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(null, WANT, "deepen-not refs/heads/main", FLUSH, "done"), response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getContentAsString() + response.getErrorMessage()).contains("--shallow-exclude");
+    }
+
+    @Test
+    void rejectsProtocolV2ShallowSince() throws Exception {
+        configure("allowShallow", "false");
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request("version=2", "command=fetch", "0001", "want 1111111111111111111111111111111111111111",
+                "deepen-since 1700000000", "done", FLUSH), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    void replaysAllowedRequests() throws Exception {
+        configure("allowShallow", "false");
+        MockHttpServletRequest plain = request(null, WANT, FLUSH, "done");
+        byte[] body = plain.getContentAsByteArray();
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(plain, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(chain.getRequest().getInputStream().readAllBytes()).isEqualTo(body);
+    }
+
+    @Test
+    void passesThroughWhenPolicyAllowsShallowCutoff() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request(null, WANT, "deepen-since 1700000000", FLUSH, "done"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    void findsLinesByPrefix() {
+        byte[] body = pktLines(WANT, "deepen-not refs/heads/main", FLUSH, "done");
+
+        assertThat(ShallowCutoffFilter.hasLine(body, "deepen-not ")).isTrue();
+        assertThat(ShallowCutoffFilter.hasLine(body, "deepen-since ")).isFalse();
+        assertThat(ShallowCutoffFilter.hasLine("zzzzdeepen-since 1".getBytes(StandardCharsets.US_ASCII), "deepen-since "))
+                .as("malformed").isFalse();
+    }
+
+    private void configure(String key, String value) throws Exception {
+        StoredConfig config = repository.getConfig();
+        config.setString(GitUploadPackFactory.CONFIG_SECTION, null, key, value);
+        config.save();
+    }
+
+    private MockHttpServletRequest request(String gitProtocol, String... lines) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/gitserver/repo.git/git-upload-pack");
+        request.setPathInfo("/repo.git/git-upload-pack");
+        request.setContentType("application/x-git-upload-pack-request");
+        if (gitProtocol != null) {
+            request.addHeader("Git-Protocol", gitProtocol);
+        }
+        request.setContent(pktLines(lines));
+        request.setAttribute(ServletUtils.ATTRIBUTE_REPOSITORY, repository);
+        return request;
+    }
+
+    /**
+     * pkt-line encodes each line; {@code 0000} and {@code 0001} are passed through as flush / delimiter packets.
+     */
+    private static byte[] pktLines(String... lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String line : lines) {
+            if (line.equals(FLUSH) || line.equals("0001")) {
+                out.writeBytes(line.getBytes(StandardCharsets.US_ASCII));
+            } else {
+                byte[] payload = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                out.writeBytes(String.format("%04x", payload.length + 4).getBytes(StandardCharsets.US_ASCII));
+                out.writeBytes(payload);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+package com.espritgit.demo.gitserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadPackCacheFilterTest {
+
+    private static final String WANT = "want 1111111111111111111111111111111111111111";
+    private static final String FLUSH = "0000";
+    private static final String DELIM = "0001";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void normalizesCloneRequestWithoutAgent() {
+        String first = UploadPackCacheFilter.normalizeRequest(
+                request(WANT + " multi_ack_detailed side-band-64k ofs-delta agent=git/2.40.0", FLUSH, "done"), null);
+        String second = UploadPackCacheFilter.normalizeRequest(
+                request(WANT + " multi_ack_detailed side-band-64k ofs-delta agent=git/2.45.1", FLUSH, "done"), null);
+
+        assertThat(first).isNotNull().doesNotContain("agent=").contains("side-band-64k");
+        assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    void keepsFilterAndDeepenLinesInTheKey() {
+        String full = UploadPackCacheFilter.normalizeRequest(request(WANT, FLUSH, "done"), null);
+        String filtered = UploadPackCacheFilter.normalizeRequest(request(WANT, "filter blob:none", FLUSH, "done"), null);
+        String deepened = UploadPackCacheFilter.normalizeRequest(request(WANT, "deepen 1", FLUSH, "done"), null);
+
+        assertThat(filtered).isNotNull().isNotEqualTo(full).contains("filter blob:none");
+        assertThat(deepened).isNotNull().isNotEqualTo(full).contains("deepen 1");
+    }
+
+    @Test
+    void refusesNegotiationState() {
+        assertThat(UploadPackCacheFilter.normalizeRequest(
+                request(WANT, FLUSH, "have 2222222222222222222222222222222222222222", "done"), null)).isNull();
+        assertThat(UploadPackCacheFilter.normalizeRequest(
+                request(WANT, "shallow 2222222222222222222222222222222222222222", FLUSH, "done"), null)).isNull();
+        assertThat(UploadPackCacheFilter.normalizeRequest(request(WANT, FLUSH), null)).isNull();
+    }
+
+    @Test
+    void handlesProtocolV2Commands() {
+        String fetch = UploadPackCacheFilter.normalizeRequest(
+                request("command=fetch", "agent=git/2.45.1", "object-format=sha1", DELIM, "thin-pack", WANT, "done", FLUSH),
+                "version=2");
+        assertThat(fetch).isNotNull().startsWith("version=2\n").contains("command=fetch");
+
+        assertThat(UploadPackCacheFilter.normalizeRequest(
+                request("command=ls-refs", DELIM, "ref-prefix refs/heads/", "done", FLUSH), "version=2")).isNull();
+    }
+
+    @Test
+    void refusesMalformedRequests() {
+        byte[] truncated = "0032want 1111".getBytes(StandardCharsets.US_ASCII);
+        assertThat(UploadPackCacheFilter.normalizeRequest(truncated, null)).isNull();
+        assertThat(UploadPackCacheFilter.normalizeRequest("zzzzwant".getBytes(StandardCharsets.US_ASCII), null)).isNull();
+        assertThat(UploadPackCacheFilter.normalizeRequest(new byte[0], null)).isNull();
+    }
+
+    @Test
+    void acceptsCompleteSideBandResponse() throws IOException {
+        Path file = write(response(line("NAK\n"), sideBand(1, "PACK"), sideBand(2, "Counting objects\n"), FLUSH.getBytes()));
+        assertThat(UploadPackCacheFilter.isCompleteResponse(file)).isTrue();
+    }
+
+    @Test
+    void rejectsIncompleteOrFailedResponses() throws IOException {
+        assertThat(UploadPackCacheFilter.isCompleteResponse(write(response(line("NAK\n"), sideBand(1, "PACK")))))
+                .as("no final flush").isFalse();
+        assertThat(UploadPackCacheFilter.isCompleteResponse(write(response(sideBand(3, "fatal\n"), FLUSH.getBytes()))))
+                .as("side-band error").isFalse();
+        assertThat(UploadPackCacheFilter.isCompleteResponse(write(response(line("ERR upload-pack: not our ref\n"), FLUSH.getBytes()))))
+                .as("ERR line").isFalse();
+        assertThat(UploadPackCacheFilter.isCompleteResponse(write(response("0100PACK".getBytes(StandardCharsets.US_ASCII)))))
+                .as("truncated packet").isFalse();
+        assertThat(UploadPackCacheFilter.isCompleteResponse(write(response("PACK\0\0\0\2".getBytes(StandardCharsets.US_ASCII)))))
+                .as("raw pack").isFalse();
+    }
+
+    private Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile(tempDir, "response", ".pack");
+        Files.write(file, content);
+        return file;
+    }
+
+    /**
+     * pkt-line encodes each line; {@code 0000} and {@code 0001} are passed through as flush / delimiter packets.
+     */
+    private static byte[] request(String... lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String line : lines) {
+            if (line.equals(FLUSH) || line.equals(DELIM)) {
+                out.writeBytes(line.getBytes(StandardCharsets.US_ASCII));
+            } else {
+                out.writeBytes(line(line + "\n"));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] line(String text) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        return packet(payload);
+    }
+
+    private static byte[] sideBand(int channel, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[data.length + 1];
+        payload[0] = (byte) channel;
+        System.arraycopy(data, 0, payload, 1, data.length);
+        return packet(payload);
+    }
+
+    private static byte[] packet(byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(String.format("%04x", payload.length + 4).getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(payload);
+        return out.toByteArray();
+    }
+
+    private static byte[] response(byte[]... packets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] packet : packets) {
+            out.writeBytes(packet);
+        }
+        return out.toByteArray();
+    }
+}
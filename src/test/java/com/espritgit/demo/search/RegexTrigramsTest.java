@@ -0,0 +1,86 @@
+package com.espritgit.demo.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegexTrigramsTest {
+
+    @Test
+    void plainTextNeedsAllItsTrigrams() {
+        List<int[]> plan = RegexTrigrams.plan("hello", 0);
+
+        assertThat(plan).hasSize(1);
+        assertThat(plan.get(0)).containsExactly(trigram("hel"), trigram("ell"), trigram("llo"));
+    }
+
+    @Test
+    void foldsAsciiCase() {
+        assertThat(RegexTrigrams.plan("HeLLo", 0).get(0)).containsExactly(RegexTrigrams.plan("hello", 0).get(0));
+        assertThat(RegexTrigrams.plan("hello", Pattern.CASE_INSENSITIVE).get(0))
+                .containsExactly(RegexTrigrams.plan("hello", 0).get(0));
+    }
+
+    @Test
+    void splitsTopLevelAlternatives() {
+        List<int[]> plan = RegexTrigrams.plan("foo|barbaz", 0);
+
+        assertThat(plan).hasSize(2);
+        assertThat(plan.get(0)).containsExactly(trigram("foo"));
+        assertThat(plan.get(1)).containsExactly(trigram("bar"), trigram("arb"), trigram("rba"), trigram("baz"));
+        // Alternatives inside a group are not top-level
+        assertThat(RegexTrigrams.plan("foo(bar|baz)qux", 0)).hasSize(1);
+    }
+
+    @Test
+    void unconstrainedExpressionsMatchEveryDocument() {
+        assertThat(RegexTrigrams.plan(".*", 0)).isNull();
+        assertThat(RegexTrigrams.plan("ab", 0)).isNull();
+        assertThat(RegexTrigrams.plan("\\w+Service", 0)).isNotNull();
+        assertThat(RegexTrigrams.plan("foo|.*", 0)).as("one unconstrained alternative").isNull();
+        assertThat(RegexTrigrams.plan("[a-z]+", 0)).isNull();
+    }
+
+    @Test
+    void dropsOptionalCharacters() {
+        assertThat(RegexTrigrams.plan("colou?r", 0).get(0)).containsExactly(trigram("col"), trigram("olo"));
+        assertThat(RegexTrigrams.plan("abcd*", 0).get(0)).containsExactly(trigram("abc"));
+        assertThat(RegexTrigrams.plan("abcd{0,3}", 0).get(0)).containsExactly(trigram("abc"));
+        assertThat(RegexTrigrams.plan("abcd{2}", 0).get(0)).containsExactly(trigram("abc"), trigram("bcd"));
+    }
+
+    @Test
+    void skipsClassesGroupsAndEscapes() {
+        assertThat(RegexTrigrams.plan("a[xyz]bcd", 0).get(0)).containsExactly(trigram("bcd"));
+        assertThat(RegexTrigrams.plan("foo(bar|baz)qux", 0).get(0)).containsExactly(trigram("foo"), trigram("qux"));
+        assertThat(RegexTrigrams.plan("foo\\dbar", 0).get(0)).containsExactly(trigram("foo"), trigram("bar"));
+        assertThat(RegexTrigrams.plan("a\\.bc", 0).get(0)).containsExactly(trigram("a.b"), trigram(".bc"));
+    }
+
+    @Test
+    void readsQuotedAndLiteralText() {
+        assertThat(RegexTrigrams.plan("\\Qa.b*\\E", 0).get(0)).containsExactly(trigram("a.b"), trigram(".b*"));
+        assertThat(RegexTrigrams.plan("a.b*", Pattern.LITERAL).get(0)).containsExactly(trigram("a.b"), trigram(".b*"));
+    }
+
+    @Test
+    void givesUpOnCommentsMode() {
+        assertThat(RegexTrigrams.plan("foo bar", Pattern.COMMENTS)).isNull();
+        assertThat(RegexTrigrams.plan("(?x)foo bar", 0)).isNull();
+    }
+
+    @Test
+    void ignoresNonAsciiText() {
+        assertThat(RegexTrigrams.plan("héllo", 0).get(0)).containsExactly(trigram("llo"));
+        assertThat(RegexTrigrams.plan("日本語", 0)).isNull();
+    }
+
+    private static int trigram(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return (RegexTrigrams.fold(bytes[0]) << 16) | (RegexTrigrams.fold(bytes[1]) << 8) | RegexTrigrams.fold(bytes[2]);
+    }
+}
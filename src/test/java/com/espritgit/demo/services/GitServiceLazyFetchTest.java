@@ -0,0 +1,80 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitServiceLazyFetchTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsFileFromBlobNoneClone() throws Exception {
+        Path origin = tempDir.resolve("origin");
+        try (Git git = Git.init().setDirectory(origin.toFile()).call()) {
+            Files.createDirectories(origin.resolve("src/main"));
+            Files.writeString(origin.resolve("README.md"), "readme\n");
+            Files.writeString(origin.resolve("src/main/App.java"), "class App {}\n");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").setAuthor("Test", "test@example.com")
+                    .setCommitter("Test", "test@example.com").call();
+            StoredConfig config = git.getRepository().getConfig();
+            config.setBoolean("uploadpack", null, "allowfilter", true);
+            config.setBoolean("uploadpack", null, "allowanysha1inwant", true);
+            config.save();
+        }
+
+        Path clone = tempDir.resolve("clone");
+        try (Git git = Git.cloneRepository()
+                .setURI(origin.toUri().toString())
+                .setDirectory(clone.toFile())
+                .setNoCheckout(true)
+                .setTransportConfigCallback(transport -> transport.setFilterSpec(CloneOptions.filterSpec("blob:none")))
+                .call()) {
+            // Same markers GitService.prepareLocalRepository writes
+            StoredConfig config = git.getRepository().getConfig();
+            config.setBoolean(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, "promisor", true);
+            config.setString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, "partialclonefilter", "blob:none");
+            config.save();
+
+            Repository repository = git.getRepository();
+            assertThatThrownBy(() -> readFile(repository, "src/main/App.java"))
+                    .isInstanceOf(MissingObjectException.class);
+
+            assertThat(GitService.withLazyFetch(repository, () -> readFile(repository, "src/main/App.java")))
+                    .isEqualTo("class App {}\n");
+            assertThat(GitService.withLazyFetch(repository, () -> readFile(repository, "README.md")))
+                    .isEqualTo("readme\n");
+            // Fetched once, now local
+            assertThat(readFile(repository, "src/main/App.java")).isEqualTo("class App {}\n");
+        }
+    }
+
+    private static String readFile(Repository repository, String path) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(repository.resolve(Constants.HEAD));
+            try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+                ObjectId blobId = treeWalk.getObjectId(0);
+                return new String(repository.open(blobId, Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
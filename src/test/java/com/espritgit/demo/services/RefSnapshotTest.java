@@ -0,0 +1,115 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.SymbolicRef;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefSnapshotTest {
+
+    private static final ObjectId ID = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+    @Test
+    void listsRefsByPrefix() {
+        RefSnapshot snapshot = snapshot("refs/tags/v1", "refs/heads/c", "refs/heads/a", "refs/heads/b");
+
+        assertThat(names(snapshot.byPrefix(Constants.R_HEADS))).containsExactly("refs/heads/a", "refs/heads/b", "refs/heads/c");
+        assertThat(names(snapshot.byPrefix(Constants.R_TAGS))).containsExactly("refs/tags/v1");
+        assertThat(snapshot.byPrefix("refs/notes/")).isEmpty();
+        assertThat(snapshot.size()).as("HEAD is not counted").isEqualTo(4);
+        assertThat(snapshot.head().getTarget().getName()).isEqualTo("refs/heads/a");
+    }
+
+    @Test
+    void pagesThroughPrefix() {
+        RefSnapshot snapshot = snapshot("refs/heads/a", "refs/heads/b", "refs/heads/c", "refs/tags/v1");
+
+        RefSnapshot.Page first = snapshot.page(Constants.R_HEADS, null, 2);
+        assertThat(names(first.refs())).containsExactly("refs/heads/a", "refs/heads/b");
+        assertThat(first.nextCursor()).isEqualTo("refs/heads/b");
+
+        RefSnapshot.Page second = snapshot.page(Constants.R_HEADS, first.nextCursor(), 2);
+        assertThat(names(second.refs())).containsExactly("refs/heads/c");
+        assertThat(second.nextCursor()).isNull();
+
+        RefSnapshot.Page exact = snapshot.page(Constants.R_HEADS, null, 3);
+        assertThat(exact.refs()).hasSize(3);
+        assertThat(exact.nextCursor()).as("no empty trailing page").isNull();
+    }
+
+    @Test
+    void ignoresCursorBeforePrefix() {
+        RefSnapshot snapshot = snapshot("refs/heads/a", "refs/heads/zzz", "refs/tags/v1", "refs/tags/v2");
+
+        RefSnapshot.Page page = snapshot.page(Constants.R_TAGS, "refs/heads/zzz", 10);
+        assertThat(names(page.refs())).containsExactly("refs/tags/v1", "refs/tags/v2");
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void returnsEmptyPages() {
+        RefSnapshot snapshot = snapshot("refs/heads/a", "refs/heads/b", "refs/tags/v1");
+
+        RefSnapshot.Page missingPrefix = snapshot.page("refs/notes/", null, 10);
+        assertThat(missingPrefix.refs()).isEmpty();
+        assertThat(missingPrefix.nextCursor()).isNull();
+
+        RefSnapshot.Page afterLast = snapshot.page(Constants.R_HEADS, "refs/heads/b", 10);
+        assertThat(afterLast.refs()).isEmpty();
+        assertThat(afterLast.nextCursor()).isNull();
+
+        RefSnapshot.Page pastPrefix = snapshot.page(Constants.R_HEADS, "refs/heads/zzz", 10);
+        assertThat(pastPrefix.refs()).isEmpty();
+        assertThat(pastPrefix.nextCursor()).isNull();
+
+        assertThat(snapshot(new String[0]).page("", null, 10).refs()).isEmpty();
+    }
+
+    @Test
+    void sortsNonAsciiNamesInGitByteOrder() {
+        String accented = "refs/heads/é"; // UTF-8 C3 A9
+        String fullwidth = "refs/heads/Ａ"; // UTF-8 EF BC A1, sorts after the emoji in UTF-16
+        String emoji = "refs/heads/😀"; // UTF-8 F0 9F 98 80
+        RefSnapshot snapshot = snapshot(emoji, fullwidth, accented, "refs/heads/z");
+
+        List<String> expected = List.of("refs/heads/z", accented, fullwidth, emoji);
+        assertThat(names(snapshot.byPrefix(Constants.R_HEADS))).containsExactlyElementsOf(expected);
+        assertThat(expected).isSortedAccordingTo((a, b) -> Arrays.compareUnsigned(
+                a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8)));
+
+        RefSnapshot.Page first = snapshot.page(Constants.R_HEADS, null, 2);
+        assertThat(names(first.refs())).containsExactly("refs/heads/z", accented);
+        RefSnapshot.Page second = snapshot.page(Constants.R_HEADS, first.nextCursor(), 1);
+        assertThat(names(second.refs())).containsExactly(fullwidth);
+        RefSnapshot.Page third = snapshot.page(Constants.R_HEADS, second.nextCursor(), 1);
+        assertThat(names(third.refs())).containsExactly(emoji);
+        assertThat(third.nextCursor()).isNull();
+
+        assertThat(snapshot.exactRef(emoji)).isNotNull();
+    }
+
+    private static RefSnapshot snapshot(String... names) {
+        List<Ref> refs = new ArrayList<>();
+        for (String name : names) {
+            refs.add(new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, name, ID));
+        }
+        if (names.length > 0) {
+            Ref target = refs.stream().min((a, b) -> a.getName().compareTo(b.getName())).get();
+            refs.add(new SymbolicRef(Constants.HEAD, target));
+        }
+        return new RefSnapshot(refs, System.currentTimeMillis());
+    }
+
+    private static List<String> names(List<Ref> refs) {
+        return refs.stream().map(Ref::getName).toList();
+    }
+}
@@ -0,0 +1,47 @@
+package com.espritgit.demo.services;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkingTreeStatusServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void skipsIgnoredDirectoriesWhenWatching() throws Exception {
+        Path workTree = tempDir.resolve("repo");
+        try (Git git = Git.init().setDirectory(workTree.toFile()).call()) {
+            // Tracked before the ignore rule was added
+            Files.createDirectories(workTree.resolve("build"));
+            Files.writeString(workTree.resolve("build/keep.txt"), "tracked despite the ignore rule\n");
+            git.add().addFilepattern("build/keep.txt").call();
+
+            Files.writeString(workTree.resolve(".gitignore"), "node_modules/\ntarget/\nbuild/\n");
+            Files.createDirectories(workTree.resolve("src/main"));
+            Files.createDirectories(workTree.resolve("node_modules/left-pad/lib"));
+            Files.createDirectories(workTree.resolve("target/classes"));
+            Files.writeString(workTree.resolve("src/main/App.java"), "class App {}\n");
+            git.add().addFilepattern(".gitignore").addFilepattern("src").call();
+
+            Repository repository = git.getRepository();
+            Path root = workTree.toAbsolutePath().normalize();
+            List<Path> all = WorkingTreeStatusService.watchableDirectories(repository, root, "");
+            assertThat(all).containsExactlyInAnyOrder(root, root.resolve("src"), root.resolve("src/main"),
+                    root.resolve("build"));
+
+            assertThat(WorkingTreeStatusService.watchableDirectories(repository, root, "src"))
+                    .containsExactlyInAnyOrder(root.resolve("src"), root.resolve("src/main"));
+            assertThat(WorkingTreeStatusService.watchableDirectories(repository, root, "node_modules/left-pad"))
+                    .as("new directory inside an ignored one").isEmpty();
+        }
+    }
+}